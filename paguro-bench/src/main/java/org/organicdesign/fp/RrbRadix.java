@@ -0,0 +1,156 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.organicdesign.fp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.organicdesign.fp.collections.RrbTree;
+import org.organicdesign.fp.collections.RrbTree.ImRrbt;
+
+import java.util.Random;
+
+import static org.organicdesign.fp.collections.RrbTree.empty;
+
+/**
+ Compares RrbTree branching factors of 16, 32, and 64.  The branching factor is fixed for each JVM
+ (see RrbTree.NODE_LENGTH_POW_2_PROPERTY) so each variant forks its own JVM with the property set.
+ Run just these with:
+
+ java -jar target/benchmarks.jar RrbRadix
+ */
+@SuppressWarnings("WeakerAccess")
+public class RrbRadix {
+
+    private static final String PROP = "-D" + RrbTree.NODE_LENGTH_POW_2_PROPERTY + "=";
+
+    @State(Scope.Thread) public static class Trees {
+        @Param({"1000", "100000", "1000000"})
+        public int size;
+
+        ImRrbt<Integer> strict;
+        ImRrbt<Integer> relaxed;
+        int[] randomIndices;
+
+        @Setup public void setup() {
+            Random rnd = new Random(size);
+            ImRrbt<Integer> s = empty();
+            ImRrbt<Integer> r = empty();
+            for (int i = 0; i < size; i++) {
+                s = s.append(i);
+                r = r.insert(i > 1 ? rnd.nextInt(i) : 0, i);
+            }
+            strict = s;
+            relaxed = r;
+            randomIndices = new int[1024];
+            for (int i = 0; i < randomIndices.length; i++) {
+                randomIndices[i] = rnd.nextInt(size);
+            }
+        }
+    }
+
+    static int getEach(ImRrbt<Integer> rrb) {
+        int sum = 0;
+        int size = rrb.size();
+        for (int i = 0; i < size; i++) {
+            sum += rrb.get(i);
+        }
+        return sum;
+    }
+
+    static int getRandom(ImRrbt<Integer> rrb, int[] indices) {
+        int sum = 0;
+        for (int idx : indices) {
+            sum += rrb.get(idx);
+        }
+        return sum;
+    }
+
+    static ImRrbt<Integer> replaceRandom(ImRrbt<Integer> rrb, int[] indices) {
+        for (int idx : indices) {
+            rrb = rrb.replace(idx, idx);
+        }
+        return rrb;
+    }
+
+    static ImRrbt<Integer> insertRandom(ImRrbt<Integer> rrb, int[] indices) {
+        for (int idx : indices) {
+            rrb = rrb.insert(idx, idx);
+        }
+        return rrb;
+    }
+
+    @Benchmark @Fork(jvmArgsAppend = PROP + "4")
+    public int GetEachStrict16(Trees t) {
+        return getEach(t.strict);
+    }
+
+    @Benchmark @Fork(jvmArgsAppend = PROP + "5")
+    public int GetEachStrict32(Trees t) {
+        return getEach(t.strict);
+    }
+
+    @Benchmark @Fork(jvmArgsAppend = PROP + "6")
+    public int GetEachStrict64(Trees t) {
+        return getEach(t.strict);
+    }
+
+    @Benchmark @Fork(jvmArgsAppend = PROP + "4")
+    public int GetRandomRelaxed16(Trees t) {
+        return getRandom(t.relaxed, t.randomIndices);
+    }
+
+    @Benchmark @Fork(jvmArgsAppend = PROP + "5")
+    public int GetRandomRelaxed32(Trees t) {
+        return getRandom(t.relaxed, t.randomIndices);
+    }
+
+    @Benchmark @Fork(jvmArgsAppend = PROP + "6")
+    public int GetRandomRelaxed64(Trees t) {
+        return getRandom(t.relaxed, t.randomIndices);
+    }
+
+    @Benchmark @Fork(jvmArgsAppend = PROP + "4")
+    public ImRrbt<Integer> ReplaceRandom16(Trees t) {
+        return replaceRandom(t.strict, t.randomIndices);
+    }
+
+    @Benchmark @Fork(jvmArgsAppend = PROP + "5")
+    public ImRrbt<Integer> ReplaceRandom32(Trees t) {
+        return replaceRandom(t.strict, t.randomIndices);
+    }
+
+    @Benchmark @Fork(jvmArgsAppend = PROP + "6")
+    public ImRrbt<Integer> ReplaceRandom64(Trees t) {
+        return replaceRandom(t.strict, t.randomIndices);
+    }
+
+    @Benchmark @Fork(jvmArgsAppend = PROP + "4")
+    public ImRrbt<Integer> InsertRandom16(Trees t) {
+        return insertRandom(t.relaxed, t.randomIndices);
+    }
+
+    @Benchmark @Fork(jvmArgsAppend = PROP + "5")
+    public ImRrbt<Integer> InsertRandom32(Trees t) {
+        return insertRandom(t.relaxed, t.randomIndices);
+    }
+
+    @Benchmark @Fork(jvmArgsAppend = PROP + "6")
+    public ImRrbt<Integer> InsertRandom64(Trees t) {
+        return insertRandom(t.relaxed, t.randomIndices);
+    }
+}
@@ -0,0 +1,231 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.organicdesign.fp.collections;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.organicdesign.fp.collections.PersistentHashMap.MutableHashMap;
+import org.organicdesign.fp.function.Atom;
+import org.organicdesign.fp.function.Fn0;
+import org.organicdesign.fp.function.Fn1;
+
+/**
+ A {@link PersistentHashMap} shared between threads.  {@link #get()} returns the current version
+ and never blocks.  There are two ways to change it:
+
+ <ul>
+ <li>{@link #swap(Fn1)} works like {@link Atom#swap(Fn1)}: it applies a function to the current
+ version and stores the result, retrying (with backoff) if another thread got there first.</li>
+ <li>{@link #update(Fn1)}, {@link #assoc(Object, Object)} and {@link #without(Object)} are
+ batched.  Each one is queued, and one of the waiting threads applies every queued change to a
+ single {@link MutableHashMap}, then stores the result once for all of them.  So when many threads
+ write at once, they don't each copy the path to the root and fight over who gets to store it.</li>
+ </ul>
+
+ <p>A batched change may be applied more than once (if a swap() happens during the batch), so
+ like the function passed to swap(), it must be free from side effects, and must not keep the
+ MutableHashMap it is given.  If it throws an exception, the caller gets the exception and the
+ rest of the batch is applied without it.  If the batch can't be stored for some other reason
+ (like running out of memory), every change in it fails with that exception.</p>
+
+ <pre><code>AtomicHashMap&lt;String,Long&gt; counts = AtomicHashMap.of(PersistentHashMap.empty());
+counts.update(m -&gt; m.assoc(word, m.getOrElse(word, 0L) + 1));</code></pre>
+ */
+public final class AtomicHashMap<K,V> implements Fn0<PersistentHashMap<K,V>> {
+    // The most batches one thread applies for others before it goes back to its own work.
+    private static final int MAX_BATCHES = 64;
+    // How long a waiting thread parks before checking whether it should apply a batch itself.
+    private static final long WAIT_NANOS = 50000;
+
+    // One queued change and its result.
+    private static final class Request<K,V> {
+        final Fn1<? super MutableHashMap<K,V>,?> change;
+        final Thread thread = Thread.currentThread();
+        volatile boolean done = false;
+        // Set before done
+        PersistentHashMap<K,V> result;
+        Throwable failure;
+
+        Request(Fn1<? super MutableHashMap<K,V>,?> f) { change = f; }
+    }
+
+    private final Atom<PersistentHashMap<K,V>> atom;
+    private final ConcurrentLinkedQueue<Request<K,V>> queue = new ConcurrentLinkedQueue<>();
+    // Held by the thread applying a batch.
+    private final ReentrantLock combiner = new ReentrantLock();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedChanges = new LongAdder();
+
+    private AtomicHashMap(PersistentHashMap<K,V> initial) { atom = Atom.of(initial); }
+
+    /** Returns a new AtomicHashMap starting with the given map. */
+    public static <K,V> AtomicHashMap<K,V> of(PersistentHashMap<K,V> initial) {
+        if (initial == null) {
+            throw new IllegalArgumentException("Initial map can't be null");
+        }
+        return new AtomicHashMap<>(initial);
+    }
+
+    /** Returns the current version of the map. */
+    @Override public PersistentHashMap<K,V> get() { return atom.get(); }
+
+    /** Returns the current version of the map. */
+    @Override public PersistentHashMap<K,V> applyEx() { return get(); }
+
+    /** Sets the map to newValue if the current version is (==) expected.  Returns true if set. */
+    public boolean compareAndSet(PersistentHashMap<K,V> expected,
+                                 PersistentHashMap<K,V> newValue) {
+        if (newValue == null) {
+            throw new IllegalArgumentException("New map can't be null");
+        }
+        return atom.compareAndSet(expected, newValue);
+    }
+
+    /**
+     Applies the given function to the current version and stores the result, retrying until no
+     other thread changed the map in the meantime.  Returns the new version.
+     */
+    public PersistentHashMap<K,V> swap(Fn1<? super PersistentHashMap<K,V>,
+                                           ? extends PersistentHashMap<K,V>> f) {
+        return atom.swap(m -> {
+            PersistentHashMap<K,V> ret = f.apply(m);
+            if (ret == null) {
+                throw new IllegalArgumentException("swap function returned null");
+            }
+            return ret;
+        });
+    }
+
+    /**
+     Queues a change to be applied to a MutableHashMap along with any other changes queued at the
+     same time, and waits for it to be stored.
+
+     @param change a side-effect-free function which changes the given MutableHashMap.  Its
+     return value is ignored.
+
+     @return the version of the map which this change (and the rest of its batch) produced.
+     */
+    public PersistentHashMap<K,V> update(Fn1<? super MutableHashMap<K,V>,?> change) {
+        if (change == null) {
+            throw new IllegalArgumentException("Can't update with a null function");
+        }
+        Request<K,V> req = new Request<>(change);
+        queue.add(req);
+        while (!req.done) {
+            if (combiner.tryLock()) {
+                try {
+                    for (int i = 0; (i < MAX_BATCHES) && !queue.isEmpty(); i++) {
+                        applyBatch();
+                    }
+                } finally {
+                    combiner.unlock();
+                }
+            } else {
+                LockSupport.parkNanos(this, WAIT_NANOS);
+            }
+        }
+        if (req.failure instanceof RuntimeException) {
+            throw (RuntimeException) req.failure;
+        }
+        if (req.failure instanceof Error) {
+            throw (Error) req.failure;
+        }
+        return req.result;
+    }
+
+    /** Associates the key with the value in a batch (see {@link #update(Fn1)}). */
+    public PersistentHashMap<K,V> assoc(K key, V val) { return update(m -> m.assoc(key, val)); }
+
+    /** Removes the key in a batch (see {@link #update(Fn1)}). */
+    public PersistentHashMap<K,V> without(K key) { return update(m -> m.without(key)); }
+
+    // Takes everything in the queue, applies it to one MutableHashMap, stores the result, and
+    // wakes up the threads waiting for it.  Only called while holding the combiner lock.
+    private void applyBatch() {
+        ArrayList<Request<K,V>> batch = new ArrayList<>();
+        for (Request<K,V> req = queue.poll(); req != null; req = queue.poll()) {
+            batch.add(req);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        PersistentHashMap<K,V> result = null;
+        // Set if something other than one of the changes failed (like running out of memory).
+        Throwable batchFailure = null;
+        try {
+            // Start over whenever a change fails (leaving out the failed one, since it may have
+            // partly changed the map) or a swap() stores a new version before we do.
+            while (true) {
+                PersistentHashMap<K,V> current = get();
+                MutableHashMap<K,V> mu = current.mutable();
+                boolean failed = false;
+                for (Request<K,V> req : batch) {
+                    if (req.failure != null) {
+                        continue;
+                    }
+                    try {
+                        req.change.apply(mu);
+                    } catch (Throwable t) {
+                        req.failure = t;
+                        failed = true;
+                        break;
+                    }
+                }
+                if (failed) {
+                    continue;
+                }
+                result = mu.immutable();
+                if (atom.compareAndSet(current, result)) {
+                    break;
+                }
+            }
+            batches.increment();
+            batchedChanges.add(batch.size());
+        } catch (Throwable t) {
+            batchFailure = t;
+        } finally {
+            // Every request we took off the queue has to be finished, or its thread waits forever.
+            for (Request<K,V> req : batch) {
+                if ( (batchFailure != null) && (req.failure == null) ) {
+                    req.failure = batchFailure;
+                }
+                req.result = result;
+                req.done = true;
+                LockSupport.unpark(req.thread);
+            }
+        }
+    }
+
+    /** The number of batches stored by update(), assoc(), and without() so far. */
+    public long batches() { return batches.sum(); }
+
+    /**
+     The number of changes made by update(), assoc(), and without() so far.  Divide by
+     {@link #batches()} for the average batch size.
+     */
+    public long batchedChanges() { return batchedChanges.sum(); }
+
+    /** The number of successful calls to swap() so far. */
+    public long swaps() { return atom.swaps(); }
+
+    /** The number of times swap() had to try again because another thread changed the map. */
+    public long retries() { return atom.retries(); }
+
+    /** Shows the current version. */
+    @Override public String toString() { return "AtomicHashMap(" + get() + ")"; }
+}
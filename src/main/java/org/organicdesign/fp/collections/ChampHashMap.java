@@ -0,0 +1,763 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.organicdesign.fp.collections;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.organicdesign.fp.collections.PersistentTreeMap.Box;
+import org.organicdesign.fp.function.Fn2;
+import org.organicdesign.fp.oneOf.Option;
+import org.organicdesign.fp.tuple.Tuple2;
+
+/**
+ An immutable hash map using Michael Steindorfer's Compressed Hash-Array Mapped Prefix-tree
+ (CHAMP) encoding.  It has the same interface and semantics as {@link PersistentHashMap}, but
+ each node keeps two bitmaps: one for the key/value pairs stored directly in the node, and one for
+ sub-nodes.  The key/value pairs are packed at the front of the node's array and the sub-nodes at
+ the back, so there are no empty slots or null-key markers, and no 32-slot ArrayNodes.  Deleting
+ an entry always puts the tree back into its smallest (canonical) shape, so a map that grew and
+ shrank is the same size as one that was built directly.
+
+ <p>Iteration visits all the entries in a node before descending into its sub-nodes, which makes
+ it faster and more cache-friendly than iterating a PersistentHashMap.
+
+ <p>Use {@link HashMapEngine#CHAMP} to choose between this and {@link PersistentHashMap}, or call
+ the static factory methods on this class directly.
+ */
+public class ChampHashMap<K,V> extends AbstractUnmodMap<K,V>
+        implements ImMap<K,V>, Serializable {
+
+    private static final int BITS = 5;
+    private static final int BIT_MASK = (1 << BITS) - 1;
+    // After this many bits of hash, only a CollisionNode can tell keys apart.
+    private static final int HASH_CODE_LENGTH = 32;
+    // Seven BitmapNode levels (shift 0 through 30) plus one CollisionNode.
+    private static final int MAX_DEPTH = 8;
+
+    private static int mask(int hash, int shift) { return (hash >>> shift) & BIT_MASK; }
+
+    private static int bitpos(int mask) { return 1 << mask; }
+
+    // A method call is slow, but it keeps the cast localized.
+    @SuppressWarnings("unchecked")
+    private static <K> K k(Object[] array, int i) { return (K) array[i]; }
+
+    // A method call is slow, but it keeps the cast localized.
+    @SuppressWarnings("unchecked")
+    private static <V> V v(Object[] array, int i) { return (V) array[i]; }
+
+    private static final ChampHashMap<Object,Object> EMPTY =
+            new ChampHashMap<>(null, 0, BitmapNode.emptyNode(), false, null);
+
+    /** Returns the empty map with the default Equator (there only needs to be one) */
+    @SuppressWarnings("unchecked")
+    public static <K,V> ChampHashMap<K,V> empty() { return (ChampHashMap<K,V>) EMPTY; }
+
+    /** Works around some type inference limitations of Java 8. */
+    public static <K,V> MutableChampMap<K,V> emptyMutable() {
+        return ChampHashMap.<K,V>empty().mutable();
+    }
+
+    /** Returns an empty map which uses the given Equator for hashing and comparing keys. */
+    public static <K,V> ChampHashMap<K,V> empty(Equator<K> e) {
+        return new ChampHashMap<>(e, 0, BitmapNode.emptyNode(), false, null);
+    }
+
+    /** Works around some type inference limitations of Java 8. */
+    public static <K,V> MutableChampMap<K,V> emptyMutable(Equator<K> e) {
+        return ChampHashMap.<K,V>empty(e).mutable();
+    }
+
+    /**
+     Returns a new ChampHashMap of the given keys and their paired values, skipping any null
+     Entries.
+     */
+    public static <K,V> ChampHashMap<K,V> ofEq(Equator<K> eq, Iterable<Map.Entry<K,V>> es) {
+        if (es == null) { return empty(eq); }
+        MutableChampMap<K,V> map = emptyMutable(eq);
+        for (Map.Entry<K,V> entry : es) {
+            if (entry != null) {
+                map.assoc(entry.getKey(), entry.getValue());
+            }
+        }
+        return map.immutable();
+    }
+
+    /**
+     Returns a new ChampHashMap of the given keys and their paired values.  In the case of a
+     duplicate key, later values in the input list overwrite the earlier ones.  Null k/v pairs
+     will be silently ignored.
+     */
+    public static <K,V> ChampHashMap<K,V> of(Iterable<Map.Entry<K,V>> kvPairs) {
+        return ofEq(null, kvPairs);
+    }
+
+    // ==================================== Instance Variables ====================================
+    private final Equator<K> equator;
+    private final int size;
+    private transient final Node<K,V> root;
+    private final boolean hasNull;
+    private final V nullValue;
+
+    // ======================================== Constructor ========================================
+    private ChampHashMap(Equator<K> eq, int sz, Node<K,V> root, boolean hasNull, V nullValue) {
+        this.equator = (eq == null) ? Equator.defaultEquator() : eq;
+        this.size = sz;
+        this.root = root;
+        this.hasNull = hasNull;
+        this.nullValue = nullValue;
+    }
+
+    // ======================================= Serialization =======================================
+    // This class has a custom serialized form designed to be as small as possible.  It does not
+    // have the same internal structure as an instance of this class.
+
+    // For serializable.  Make sure to change whenever internal data format changes.
+    private static final long serialVersionUID = 20261019025600L;
+
+    // Check out Josh Bloch Item 78, p. 312 for an explanation of what's going on here.
+    private static class SerializationProxy<K,V> implements Serializable {
+        // For serializable.  Make sure to change whenever internal data format changes.
+        private static final long serialVersionUID = 20261019025600L;
+
+        private final Equator<K> equator;
+        private final int size;
+        private transient ImMap<K,V> theMap;
+
+        SerializationProxy(ChampHashMap<K,V> m) {
+            equator = m.equator;
+            size = m.size;
+            theMap = m;
+        }
+
+        // Taken from Josh Bloch Item 75, p. 298
+        private void writeObject(ObjectOutputStream s) throws IOException {
+            s.defaultWriteObject();
+            // Write out all elements in the proper order
+            for (UnEntry<K,V> entry : theMap) {
+                s.writeObject(entry.getKey());
+                s.writeObject(entry.getValue());
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException {
+            s.defaultReadObject();
+            MutableChampMap<K,V> tempMap = emptyMutable(equator);
+            for (int i = 0; i < size; i++) {
+                tempMap.assoc((K) s.readObject(), (V) s.readObject());
+            }
+            theMap = tempMap.immutable();
+        }
+
+        private Object readResolve() { return theMap; }
+    }
+
+    private Object writeReplace() { return new SerializationProxy<>(this); }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        throw new InvalidObjectException("Proxy required");
+    }
+
+    // ===================================== Instance Methods =====================================
+
+    /** {@inheritDoc} */
+    @Override public Equator<K> equator() { return equator; }
+
+    /** {@inheritDoc} */
+    @Override public int size() { return size; }
+
+    /** {@inheritDoc} */
+    @Override public ChampHashMap<K,V> assoc(K key, V val) {
+        if (key == null) {
+            if (hasNull && (val == nullValue)) { return this; }
+            return new ChampHashMap<>(equator, hasNull ? size : size + 1, root, true, val);
+        }
+        Box<Boolean> addedLeaf = new Box<>(null);
+        Node<K,V> newRoot = root.assoc(null, key, val, equator.hash(key), 0, equator, addedLeaf);
+        if (newRoot == root) {
+            return this;
+        }
+        return new ChampHashMap<>(equator, (addedLeaf.val == null) ? size : size + 1, newRoot,
+                                  hasNull, nullValue);
+    }
+
+    /** {@inheritDoc} */
+    @Override public ChampHashMap<K,V> without(K key) {
+        if (key == null) {
+            return hasNull ? new ChampHashMap<>(equator, size - 1, root, false, null) : this;
+        }
+        Box<Boolean> removedLeaf = new Box<>(null);
+        Node<K,V> newRoot = root.without(null, key, equator.hash(key), 0, equator, removedLeaf);
+        if (removedLeaf.val == null) {
+            return this;
+        }
+        return new ChampHashMap<>(equator, size - 1, newRoot, hasNull, nullValue);
+    }
+
+    /** {@inheritDoc} */
+    @Override public Option<UnEntry<K,V>> entry(K key) {
+        if (key == null) {
+            return hasNull ? Option.some(Tuple2.of(null, nullValue)) : Option.none();
+        }
+        return Option.someOrNullNoneOf(root.find(key, equator.hash(key), 0, equator));
+    }
+
+    /** {@inheritDoc} */
+    @Override public MutableChampMap<K,V> mutable() { return new MutableChampMap<>(this); }
+
+    /** Reports the memory used by this map's internal structure (see {@link Footprint}). */
+    public Footprint footprint() { return Footprint.of(this); }
+
+    void measure(Footprint.Builder b) {
+        // equator, root, nullValue, size, hasNull
+        b.node(this, "ChampHashMap", 0, 0, Footprint.objectBytes(3, 5));
+        measureNode(root, b);
+    }
+
+    // The iterator methods are identical to the Mutable version of this class below.
+    @Override public UnmodIterator<UnEntry<K,V>> iterator() {
+        return new Iter<>(root, Tuple2::of, hasNull, nullValue);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override public UnmodIterator<K> keyIterator() {
+        return new Iter<>(root, Fn2.Singletons.FIRST, hasNull, nullValue);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override public UnmodIterator<V> valIterator() {
+        return new Iter<>(root, Fn2.Singletons.SECOND, hasNull, nullValue);
+    }
+
+    /**
+     A mutable version of {@link ChampHashMap}.  Like the other mutable collections in this
+     package, it shares structure with the immutable map it came from, only copying the nodes it
+     changes (once each), and must not be used after calling {@link #immutable()}.
+     */
+    public static final class MutableChampMap<K,V> extends AbstractUnmodMap<K,V>
+            implements MutableMap<K,V> {
+
+        private final AtomicReference<Thread> edit;
+        private final Equator<K> equator;
+        private Node<K,V> root;
+        private int count;
+        private boolean hasNull;
+        private V nullValue;
+        // Reused to find out whether the last operation changed the size.  This class is not
+        // thread safe, so this doesn't need to be a local variable.
+        private final Box<Boolean> leafFlag = new Box<>(null);
+
+        private MutableChampMap(ChampHashMap<K,V> m) {
+            equator = m.equator;
+            edit = new AtomicReference<>(Thread.currentThread());
+            root = m.root;
+            count = m.size;
+            hasNull = m.hasNull;
+            nullValue = m.nullValue;
+        }
+
+        /** {@inheritDoc} */
+        @Override public Equator<K> equator() { return equator; }
+
+        /** {@inheritDoc} */
+        @Override public int size() {
+            ensureEditable();
+            return count;
+        }
+
+        /** {@inheritDoc} */
+        @Override public MutableChampMap<K,V> assoc(K key, V val) {
+            ensureEditable();
+            if (key == null) {
+                nullValue = val;
+                if (!hasNull) {
+                    count++;
+                    hasNull = true;
+                }
+                return this;
+            }
+            leafFlag.val = null;
+            root = root.assoc(edit, key, val, equator.hash(key), 0, equator, leafFlag);
+            if (leafFlag.val != null) { count++; }
+            return this;
+        }
+
+        /** {@inheritDoc} */
+        @Override public MutableChampMap<K,V> without(K key) {
+            ensureEditable();
+            if (key == null) {
+                if (hasNull) {
+                    hasNull = false;
+                    nullValue = null;
+                    count--;
+                }
+                return this;
+            }
+            leafFlag.val = null;
+            root = root.without(edit, key, equator.hash(key), 0, equator, leafFlag);
+            if (leafFlag.val != null) { count--; }
+            return this;
+        }
+
+        /** {@inheritDoc} */
+        @Override public Option<UnEntry<K,V>> entry(K key) {
+            ensureEditable();
+            if (key == null) {
+                return hasNull ? Option.some(Tuple2.of(null, nullValue)) : Option.none();
+            }
+            return Option.someOrNullNoneOf(root.find(key, equator.hash(key), 0, equator));
+        }
+
+        /** {@inheritDoc} */
+        @Override public ChampHashMap<K,V> immutable() {
+            ensureEditable();
+            edit.set(null);
+            return new ChampHashMap<>(equator, count, root, hasNull, nullValue);
+        }
+
+        // The iterator methods are a duplicate of the same methods in the Persistent version of
+        // this class above.
+        @Override public UnmodIterator<UnEntry<K,V>> iterator() {
+            return new Iter<>(root, Tuple2::of, hasNull, nullValue);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override public UnmodIterator<K> keyIterator() {
+            return new Iter<>(root, Fn2.Singletons.FIRST, hasNull, nullValue);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override public UnmodIterator<V> valIterator() {
+            return new Iter<>(root, Fn2.Singletons.SECOND, hasNull, nullValue);
+        }
+
+        void measure(Footprint.Builder b) {
+            // edit, equator, root, nullValue, leafFlag, count, hasNull
+            b.node(this, "MutableChampMap", 0, 0, Footprint.objectBytes(5, 5));
+            measureNode(root, b);
+        }
+
+        private void ensureEditable() {
+            if (edit.get() == null) {
+                throw new IllegalAccessError("Mutable used after immutable! call");
+            }
+        }
+    }
+
+    // ========================================== Nodes ==========================================
+
+    // Every slot in a CHAMP node is in use, so slots and used are the same.
+    private static void measureNode(Node<?,?> n, Footprint.Builder b) {
+        int slots = n.payloadArity() + n.nodeArity();
+        if (n instanceof CollisionNode) {
+            // edit, array, hash
+            b.node(n, "CollisionNode", slots, slots, Footprint.objectBytes(2, 4) +
+                                                     Footprint.arrayBytes(n.array.length,
+                                                                          Footprint.REF));
+            return;
+        }
+        // edit, array, dataMap, nodeMap
+        if (b.node(n, "BitmapNode", slots, slots,
+                   Footprint.objectBytes(2, 8) +
+                   Footprint.arrayBytes(n.array.length, Footprint.REF))) {
+            for (int i = 0; i < n.nodeArity(); i++) {
+                measureNode(n.getNode(i), b);
+            }
+        }
+    }
+
+    /**
+     Both kinds of node keep their key/value pairs at the front of the array: key at 2*i, value at
+     2*i + 1.  Only a BitmapNode has sub-nodes, which are stored at the back of the array in
+     reverse order.
+
+     A node that belongs to a mutable map (edit == that map's edit token) may be changed in place.
+     Passing a null edit means "persistent" and always copies.
+     */
+    private static abstract class Node<K,V> {
+        final AtomicReference<Thread> edit;
+        Object[] array;
+
+        Node(AtomicReference<Thread> e, Object[] a) { edit = e; array = a; }
+
+        boolean isEditable(AtomicReference<Thread> e) { return (e != null) && (e == edit); }
+
+        /** Number of key/value pairs stored directly in this node. */
+        abstract int payloadArity();
+
+        /** Number of sub-nodes. */
+        abstract int nodeArity();
+
+        abstract Node<K,V> getNode(int i);
+
+        abstract UnEntry<K,V> find(K key, int hash, int shift, Equator<K> eq);
+
+        /** Sets addedLeaf.val to non-null if a new key was added. */
+        abstract Node<K,V> assoc(AtomicReference<Thread> e, K key, V val, int hash, int shift,
+                                 Equator<K> eq, Box<Boolean> addedLeaf);
+
+        /** Sets removedLeaf.val to non-null if the key was found and removed. */
+        abstract Node<K,V> without(AtomicReference<Thread> e, K key, int hash, int shift,
+                                   Equator<K> eq, Box<Boolean> removedLeaf);
+    }
+
+    private static final class BitmapNode<K,V> extends Node<K,V> {
+        private static final BitmapNode<?,?> EMPTY_NODE =
+                new BitmapNode<>(null, 0, 0, new Object[0]);
+
+        @SuppressWarnings("unchecked")
+        static <K,V> BitmapNode<K,V> emptyNode() { return (BitmapNode<K,V>) EMPTY_NODE; }
+
+        int dataMap;
+        int nodeMap;
+
+        BitmapNode(AtomicReference<Thread> e, int dataMap, int nodeMap, Object[] array) {
+            super(e, array);
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+        }
+
+        private int dataIndex(int bit) { return Integer.bitCount(dataMap & (bit - 1)); }
+
+        private int nodeIndex(int bit) { return Integer.bitCount(nodeMap & (bit - 1)); }
+
+        @Override int payloadArity() { return Integer.bitCount(dataMap); }
+
+        @Override int nodeArity() { return Integer.bitCount(nodeMap); }
+
+        @SuppressWarnings("unchecked")
+        @Override Node<K,V> getNode(int i) { return (Node<K,V>) array[array.length - 1 - i]; }
+
+        private Node<K,V> nodeAt(int bit) { return getNode(nodeIndex(bit)); }
+
+        // True if this node holds exactly one entry and no sub-nodes.  The parent of such a node
+        // pulls the entry up into itself to stay canonical.
+        private boolean isSingleton() { return (nodeMap == 0) && (Integer.bitCount(dataMap) == 1); }
+
+        @Override UnEntry<K,V> find(K key, int hash, int shift, Equator<K> eq) {
+            int bit = bitpos(mask(hash, shift));
+            if ((dataMap & bit) != 0) {
+                int idx = 2 * dataIndex(bit);
+                K k = k(array, idx);
+                return eq.eq(key, k) ? Tuple2.of(k, v(array, idx + 1)) : null;
+            }
+            if ((nodeMap & bit) != 0) {
+                return nodeAt(bit).find(key, hash, shift + BITS, eq);
+            }
+            return null;
+        }
+
+        @Override Node<K,V> assoc(AtomicReference<Thread> e, K key, V val, int hash, int shift,
+                                  Equator<K> eq, Box<Boolean> addedLeaf) {
+            int bit = bitpos(mask(hash, shift));
+            if ((dataMap & bit) != 0) {
+                int idx = 2 * dataIndex(bit);
+                K k = k(array, idx);
+                if (eq.eq(key, k)) {
+                    if (array[idx + 1] == val) { return this; }
+                    return copyAndSet(e, idx + 1, val);
+                }
+                // Two different keys in one slot: push them both down into a new sub-node.
+                Node<K,V> sub = mergeTwo(e, k, v(array, idx + 1), eq.hash(k), key, val, hash,
+                                         shift + BITS);
+                addedLeaf.val = Boolean.TRUE;
+                return copyAndMigrateFromInlineToNode(e, bit, sub);
+            }
+            if ((nodeMap & bit) != 0) {
+                Node<K,V> sub = nodeAt(bit);
+                Node<K,V> newSub = sub.assoc(e, key, val, hash, shift + BITS, eq, addedLeaf);
+                if (newSub == sub) { return this; }
+                return copyAndSet(e, array.length - 1 - nodeIndex(bit), newSub);
+            }
+            addedLeaf.val = Boolean.TRUE;
+            return copyAndInsertValue(e, bit, key, val);
+        }
+
+        @Override Node<K,V> without(AtomicReference<Thread> e, K key, int hash, int shift,
+                                    Equator<K> eq, Box<Boolean> removedLeaf) {
+            int bit = bitpos(mask(hash, shift));
+            if ((dataMap & bit) != 0) {
+                int idx = 2 * dataIndex(bit);
+                if (!eq.eq(key, k(array, idx))) { return this; }
+                removedLeaf.val = Boolean.TRUE;
+                return copyAndRemoveValue(e, bit);
+            }
+            if ((nodeMap & bit) != 0) {
+                Node<K,V> sub = nodeAt(bit);
+                // A sub-node of a mutable map can change in place and return itself, so check the
+                // flag, not the identity of the returned node.
+                Node<K,V> newSub = sub.without(e, key, hash, shift + BITS, eq, removedLeaf);
+                if (removedLeaf.val == null) { return this; }
+                if ( (newSub instanceof BitmapNode) && ((BitmapNode) newSub).isSingleton() ) {
+                    Object[] subArray = newSub.array;
+                    if ( (dataMap == 0) && (Integer.bitCount(nodeMap) == 1) ) {
+                        // This node would be left with just the one entry.  Hand it up to our
+                        // parent to inline.  The remaining key shares all the hash bits we've
+                        // used so far with the removed key, so if this is the root, it belongs
+                        // in the root's slot for the removed key's hash.
+                        return new BitmapNode<>(e, bitpos(mask(hash, 0)), 0,
+                                                new Object[] { subArray[0], subArray[1] });
+                    }
+                    return copyAndMigrateFromNodeToInline(e, bit, subArray[0], subArray[1]);
+                }
+                return copyAndSet(e, array.length - 1 - nodeIndex(bit), newSub);
+            }
+            return this;
+        }
+
+        private static <K,V> Node<K,V> mergeTwo(AtomicReference<Thread> e,
+                                                K k0, V v0, int h0, K k1, V v1, int h1,
+                                                int shift) {
+            if (shift >= HASH_CODE_LENGTH) {
+                return new CollisionNode<>(e, h0, new Object[] { k0, v0, k1, v1 });
+            }
+            int m0 = mask(h0, shift);
+            int m1 = mask(h1, shift);
+            if (m0 != m1) {
+                Object[] a = (m0 < m1) ? new Object[] { k0, v0, k1, v1 }
+                                       : new Object[] { k1, v1, k0, v0 };
+                return new BitmapNode<>(e, bitpos(m0) | bitpos(m1), 0, a);
+            }
+            Node<K,V> sub = mergeTwo(e, k0, v0, h0, k1, v1, h1, shift + BITS);
+            return new BitmapNode<>(e, 0, bitpos(m0), new Object[] { sub });
+        }
+
+        // ===================================== Edit Helpers =====================================
+        // Each of these changes this node in place if it belongs to the given edit, or returns a
+        // changed copy if it doesn't.
+
+        private BitmapNode<K,V> copyAndSet(AtomicReference<Thread> e, int i, Object o) {
+            if (isEditable(e)) {
+                array[i] = o;
+                return this;
+            }
+            Object[] newArray = array.clone();
+            newArray[i] = o;
+            return new BitmapNode<>(e, dataMap, nodeMap, newArray);
+        }
+
+        private BitmapNode<K,V> withArray(AtomicReference<Thread> e, int dm, int nm,
+                                          Object[] newArray) {
+            if (isEditable(e)) {
+                dataMap = dm;
+                nodeMap = nm;
+                array = newArray;
+                return this;
+            }
+            return new BitmapNode<>(e, dm, nm, newArray);
+        }
+
+        private BitmapNode<K,V> copyAndInsertValue(AtomicReference<Thread> e, int bit, K key,
+                                                   V val) {
+            int idx = 2 * dataIndex(bit);
+            Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, idx);
+            newArray[idx] = key;
+            newArray[idx + 1] = val;
+            System.arraycopy(array, idx, newArray, idx + 2, array.length - idx);
+            return withArray(e, dataMap | bit, nodeMap, newArray);
+        }
+
+        private BitmapNode<K,V> copyAndRemoveValue(AtomicReference<Thread> e, int bit) {
+            int idx = 2 * dataIndex(bit);
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, idx);
+            System.arraycopy(array, idx + 2, newArray, idx, array.length - idx - 2);
+            return withArray(e, dataMap ^ bit, nodeMap, newArray);
+        }
+
+        private BitmapNode<K,V> copyAndMigrateFromInlineToNode(AtomicReference<Thread> e, int bit,
+                                                               Node<K,V> node) {
+            int idxOld = 2 * dataIndex(bit);
+            int idxNew = array.length - 2 - nodeIndex(bit);
+            Object[] newArray = new Object[array.length - 1];
+            System.arraycopy(array, 0, newArray, 0, idxOld);
+            System.arraycopy(array, idxOld + 2, newArray, idxOld, idxNew - idxOld);
+            newArray[idxNew] = node;
+            System.arraycopy(array, idxNew + 2, newArray, idxNew + 1, array.length - idxNew - 2);
+            return withArray(e, dataMap ^ bit, nodeMap | bit, newArray);
+        }
+
+        private BitmapNode<K,V> copyAndMigrateFromNodeToInline(AtomicReference<Thread> e, int bit,
+                                                               Object key, Object val) {
+            int idxOld = array.length - 1 - nodeIndex(bit);
+            int idxNew = 2 * dataIndex(bit);
+            Object[] newArray = new Object[array.length + 1];
+            System.arraycopy(array, 0, newArray, 0, idxNew);
+            newArray[idxNew] = key;
+            newArray[idxNew + 1] = val;
+            System.arraycopy(array, idxNew, newArray, idxNew + 2, idxOld - idxNew);
+            System.arraycopy(array, idxOld + 1, newArray, idxOld + 2, array.length - idxOld - 1);
+            return withArray(e, dataMap | bit, nodeMap ^ bit, newArray);
+        }
+
+        @Override public String toString() {
+            return "BitmapNode(" + Integer.toBinaryString(dataMap) + "," +
+                   Integer.toBinaryString(nodeMap) + "," + Arrays.toString(array) + ")";
+        }
+    }
+
+    // Holds keys whose entire 32-bit hashes are equal.  Only ever found at the bottom of the tree
+    // and always has at least two entries.
+    private static final class CollisionNode<K,V> extends Node<K,V> {
+        private final int hash;
+
+        CollisionNode(AtomicReference<Thread> e, int hash, Object[] array) {
+            super(e, array);
+            this.hash = hash;
+        }
+
+        @Override int payloadArity() { return array.length / 2; }
+
+        @Override int nodeArity() { return 0; }
+
+        @Override Node<K,V> getNode(int i) { throw new IndexOutOfBoundsException(); }
+
+        private int findIndex(K key, Equator<K> eq) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (eq.eq(key, k(array, i))) { return i; }
+            }
+            return -1;
+        }
+
+        @Override UnEntry<K,V> find(K key, int h, int shift, Equator<K> eq) {
+            int idx = findIndex(key, eq);
+            return (idx < 0) ? null : Tuple2.of(k(array, idx), v(array, idx + 1));
+        }
+
+        @Override Node<K,V> assoc(AtomicReference<Thread> e, K key, V val, int h, int shift,
+                                  Equator<K> eq, Box<Boolean> addedLeaf) {
+            int idx = findIndex(key, eq);
+            Object[] newArray;
+            if (idx >= 0) {
+                if (array[idx + 1] == val) { return this; }
+                if (isEditable(e)) {
+                    array[idx + 1] = val;
+                    return this;
+                }
+                newArray = array.clone();
+                newArray[idx + 1] = val;
+            } else {
+                addedLeaf.val = Boolean.TRUE;
+                newArray = Arrays.copyOf(array, array.length + 2);
+                newArray[array.length] = key;
+                newArray[array.length + 1] = val;
+            }
+            if (isEditable(e)) {
+                array = newArray;
+                return this;
+            }
+            return new CollisionNode<>(e, hash, newArray);
+        }
+
+        @Override Node<K,V> without(AtomicReference<Thread> e, K key, int h, int shift,
+                                    Equator<K> eq, Box<Boolean> removedLeaf) {
+            int idx = findIndex(key, eq);
+            if (idx < 0) { return this; }
+            removedLeaf.val = Boolean.TRUE;
+            if (array.length == 4) {
+                // One entry left: return it as a singleton for our parent to inline.
+                int keep = (idx == 0) ? 2 : 0;
+                return new BitmapNode<>(e, bitpos(mask(hash, 0)), 0,
+                                        new Object[] { array[keep], array[keep + 1] });
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, idx);
+            System.arraycopy(array, idx + 2, newArray, idx, array.length - idx - 2);
+            if (isEditable(e)) {
+                array = newArray;
+                return this;
+            }
+            return new CollisionNode<>(e, hash, newArray);
+        }
+
+        @Override public String toString() {
+            return "CollisionNode(" + hash + "," + Arrays.toString(array) + ")";
+        }
+    }
+
+    // ========================================= Iterator =========================================
+
+    /**
+     Walks the tree with an explicit stack instead of nesting an iterator per node.  All the
+     entries in a node are returned before any of its sub-nodes are visited.
+     */
+    private static final class Iter<K,V,R> implements UnmodIterator<R> {
+        private final Fn2<K,V,R> aFn;
+        @SuppressWarnings("unchecked")
+        private final Node<K,V>[] nodes = (Node<K,V>[]) new Node<?,?>[MAX_DEPTH];
+        // Index of the next sub-node to visit at each level of the stack.
+        private final int[] nodeIdx = new int[MAX_DEPTH];
+        private int depth = -1;
+
+        // Key/value pairs of the node we're currently returning entries from.
+        private Object[] data;
+        private int dataIdx;
+        private int dataEnd;
+
+        private boolean nullPending;
+        private final V nullValue;
+
+        Iter(Node<K,V> root, Fn2<K,V,R> aFn, boolean hasNull, V nullValue) {
+            this.aFn = aFn;
+            this.nullPending = hasNull;
+            this.nullValue = nullValue;
+            push(root);
+        }
+
+        private void push(Node<K,V> node) {
+            depth++;
+            nodes[depth] = node;
+            nodeIdx[depth] = 0;
+            data = node.array;
+            dataIdx = 0;
+            dataEnd = 2 * node.payloadArity();
+        }
+
+        @Override public boolean hasNext() {
+            if (nullPending || (dataIdx < dataEnd)) { return true; }
+            while (depth >= 0) {
+                Node<K,V> node = nodes[depth];
+                if (nodeIdx[depth] < node.nodeArity()) {
+                    push(node.getNode(nodeIdx[depth]++));
+                    if (dataIdx < dataEnd) { return true; }
+                } else {
+                    nodes[depth] = null;
+                    depth--;
+                }
+            }
+            return false;
+        }
+
+        @Override public R next() {
+            if (!hasNext()) { throw new NoSuchElementException(); }
+            if (nullPending) {
+                nullPending = false;
+                return aFn.apply(null, nullValue);
+            }
+            R ret = aFn.apply(k(data, dataIdx), v(data, dataIdx + 1));
+            dataIdx += 2;
+            return ret;
+        }
+    }
+}
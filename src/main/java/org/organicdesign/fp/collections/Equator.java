@@ -14,6 +14,7 @@
 
 package org.organicdesign.fp.collections;
 
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Comparator;
 
@@ -56,6 +57,15 @@ public interface Equator<T> {
                 if (o1 == null) { return (o2 == null); }
                 return o1.equals(o2);
             }
+        },
+        /**
+         Same as DEFAULT, but runs each hashCode() through {@link Equator#spread(int)}.  Use this for hash
+         maps of keys with poorly distributed hash codes.
+         */
+        SPREAD {
+            @Override public int hash(Object o) { return spread(DEFAULT.hash(o)); }
+
+            @Override public boolean eq(Object o1, Object o2) { return DEFAULT.eq(o1, o2); }
 //        },
 //        ARRAY {
 //            @Override public int hash(Object o) {
@@ -75,6 +85,54 @@ public interface Equator<T> {
     @SuppressWarnings("unchecked")
     static <T> Equator<T> defaultEquator() { return (Equator<T>) Equat.DEFAULT; }
 
+    /**
+     Returns an Equator like {@link #defaultEquator()} except that hash codes are mixed with
+     {@link #spread(int)}.  Pass it to a hash map's empty(Equator) method to turn on hash spreading
+     for that map.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Equator<T> spreadingEquator() { return (Equator<T>) Equat.SPREAD; }
+
+    /**
+     The murmur3 32-bit finalizer (fmix32).  Every bit of the input affects every bit of the
+     output, so keys whose hashCode()s only differ in a few bits (sequential Longs, small Integers,
+     Tuples with XOR-ed hash codes) spread evenly through a hash trie instead of making deep, narrow
+     branches and HashCollisionNodes.  It's a one-to-one mapping, so it never makes new collisions,
+     and it maps 0 to 0.
+     */
+    static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     A wrapper that uses another Equator's eq() and spreads its hash() with {@link #spread(int)}.
+     It's only Serializable if the wrapped Equator is.
+     */
+    final class Spreading<T> implements Equator<T>, Serializable {
+        // For serializable.  Make sure to change whenever internal data format changes.
+        private static final long serialVersionUID = 20261019030300L;
+
+        private final Equator<T> inner;
+
+        private Spreading(Equator<T> e) { inner = e; }
+
+        @Override public int hash(T t) { return spread(inner.hash(t)); }
+
+        @Override public boolean eq(T o1, T o2) { return inner.eq(o1, o2); }
+
+        @Override public int hashCode() { return inner.hashCode() + 1; }
+
+        @Override public boolean equals(Object other) {
+            return (this == other) ||
+                   ( (other instanceof Spreading) && inner.equals(((Spreading) other).inner) );
+        }
+    }
+
     // Enums are serializable and lambdas are not.  Therefore enums make better singletons.
     @SuppressWarnings("ConstantConditions")
     enum Comp implements Comparator<Comparable<Object>> {
@@ -141,4 +199,15 @@ public interface Equator<T> {
      @return true if this Equator considers the two objects to NOT be equal.
      */
     default boolean neq(T o1, T o2) { return !eq(o1, o2); }
+
+    /**
+     Returns an Equator with the same eq() as this one, but whose hash() is run through
+     {@link #spread(int)}.  Returns this Equator if it already spreads its hashes.
+     */
+    @SuppressWarnings("unchecked")
+    default Equator<T> spreading() {
+        if (this == Equat.DEFAULT) { return (Equator<T>) Equat.SPREAD; }
+        if ( (this == Equat.SPREAD) || (this instanceof Spreading) ) { return this; }
+        return new Spreading<>(this);
+    }
 }
@@ -0,0 +1,199 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.organicdesign.fp.collections;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ A report of the memory used by the internal structure of one of the persistent collections in
+ this package: how many nodes of each type it has, how full they are, and roughly how many bytes
+ they take.  Get one from the collection's footprint() method, or {@link #of(Object)}.  Use
+ {@link #sharedBytes(Object, Object)} to find out how much of that two versions of a collection
+ share.
+
+ <p>Only the collection's own objects and arrays are counted, not the keys, values, or items you
+ put in it.  Sizes are estimates for a 64-bit JVM with compressed references (the default for
+ heaps under 32GB): a 12-byte object header, 16-byte array header, 4-byte references, with every
+ object padded to a multiple of 8 bytes.  The real numbers depend on your JVM and settings, but
+ these should be close enough for sizing heaps and comparing one collection to another.</p>
+
+ <p>Measuring visits every node, so it's O(n) (or O(n / 32) for the tree-of-arrays
+ collections).</p>
+ */
+public final class Footprint {
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    static final int REF = 4;
+
+    private static long align(long bytes) { return (bytes + 7) & ~7L; }
+
+    /** Estimated shallow size of an object with the given reference fields and primitive bytes. */
+    static long objectBytes(int refs, int primitiveBytes) {
+        return align(OBJECT_HEADER + (refs * REF) + primitiveBytes);
+    }
+
+    /** Estimated size of an array of the given length and element size (REF for Objects). */
+    static long arrayBytes(int length, int elementBytes) {
+        return align(ARRAY_HEADER + ((long) length * elementBytes));
+    }
+
+    /**
+     Collects the numbers as a collection walks its internal structure.  Each collection in this
+     package has a package-private measure(Builder) method which calls
+     {@link #node(Object, String, int, int, long)} for each of its internal objects.
+     */
+    static final class Builder {
+        // Every object we've counted, so shared sub-trees are only counted once.
+        private final IdentityHashMap<Object,Boolean> seen = new IdentityHashMap<>();
+        // When measuring shared structure, the objects from the other collection.
+        private final IdentityHashMap<Object,Boolean> other;
+        private final Map<String,Integer> counts = new TreeMap<>();
+        private int nodes = 0;
+        private long slots = 0;
+        private long usedSlots = 0;
+        private long bytes = 0;
+        private long sharedBytes = 0;
+
+        private Builder(IdentityHashMap<Object,Boolean> o) { other = o; }
+
+        /**
+         Records one internal object.
+         @param node the node (or array, or collection object) itself.
+         @param type what to call it in {@link #nodeCounts()}.
+         @param slotCount how many children or items it has room for (0 if not applicable).
+         @param used how many of those slots are filled.
+         @param size its estimated size in bytes, including any arrays that belong only to it.
+         @return true if this is the first time we've seen this object, false if it was already
+         counted (in which case don't walk its children again).
+         */
+        boolean node(Object node, String type, int slotCount, int used, long size) {
+            if (seen.put(node, Boolean.TRUE) != null) {
+                return false;
+            }
+            Integer count = counts.get(type);
+            counts.put(type, (count == null) ? 1 : count + 1);
+            nodes++;
+            slots += slotCount;
+            usedSlots += used;
+            bytes += size;
+            if ( (other != null) && other.containsKey(node) ) {
+                sharedBytes += size;
+            }
+            return true;
+        }
+
+        private Footprint build() {
+            return new Footprint(PersistentTreeMap.of(counts.entrySet()), nodes, slots, usedSlots,
+                                 bytes);
+        }
+    }
+
+    // Hands the collection to its own measure() method.
+    static void measure(Object coll, Builder b) {
+        if (coll instanceof PersistentHashMap) {
+            ((PersistentHashMap<?,?>) coll).measure(b);
+        } else if (coll instanceof PersistentHashMap.MutableHashMap) {
+            ((PersistentHashMap.MutableHashMap<?,?>) coll).measure(b);
+        } else if (coll instanceof ChampHashMap) {
+            ((ChampHashMap<?,?>) coll).measure(b);
+        } else if (coll instanceof ChampHashMap.MutableChampMap) {
+            ((ChampHashMap.MutableChampMap<?,?>) coll).measure(b);
+        } else if (coll instanceof PersistentHashSet) {
+            ((PersistentHashSet<?>) coll).measure(b);
+        } else if (coll instanceof PersistentHashSet.MutableHashSet) {
+            ((PersistentHashSet.MutableHashSet<?>) coll).measure(b);
+        } else if (coll instanceof PersistentTreeMap) {
+            ((PersistentTreeMap<?,?>) coll).measure(b);
+        } else if (coll instanceof PersistentTreeSet) {
+            ((PersistentTreeSet<?>) coll).measure(b);
+        } else if (coll instanceof PersistentVector) {
+            ((PersistentVector<?>) coll).measure(b);
+        } else if (coll instanceof PersistentVector.MutableVector) {
+            ((PersistentVector.MutableVector<?>) coll).measure(b);
+        } else if (coll instanceof RrbTree) {
+            ((RrbTree<?>) coll).measure(b);
+        } else if (coll instanceof PersistentDeque) {
+            ((PersistentDeque<?>) coll).measure(b);
+        } else {
+            throw new IllegalArgumentException("Don't know how to measure a " +
+                                               ((coll == null) ? "null" : coll.getClass().getName()));
+        }
+    }
+
+    /**
+     Measures the given collection, which must be one of the persistent collections in this
+     package or their mutable versions.
+     @throws IllegalArgumentException if it isn't one of those.
+     */
+    public static Footprint of(Object collection) {
+        Builder b = new Builder(null);
+        measure(collection, b);
+        return b.build();
+    }
+
+    /**
+     Returns the estimated number of bytes of internal structure that two collections share.  This
+     is usually two versions of one collection, where one was made by adding to or removing from the
+     other.  If you keep both, this is how much less memory they take than two separate copies.
+     @throws IllegalArgumentException if either isn't one of the collections in this package.
+     */
+    public static long sharedBytes(Object a, Object b) {
+        Builder first = new Builder(null);
+        measure(a, first);
+        Builder second = new Builder(first.seen);
+        measure(b, second);
+        return second.sharedBytes;
+    }
+
+    // ==================================== Instance Variables ====================================
+    private final ImSortedMap<String,Integer> nodeCounts;
+    private final int nodes;
+    private final long slots;
+    private final long usedSlots;
+    private final long estimatedBytes;
+
+    private Footprint(ImSortedMap<String,Integer> counts, int n, long s, long u, long b) {
+        nodeCounts = counts; nodes = n; slots = s; usedSlots = u; estimatedBytes = b;
+    }
+
+    /**
+     The number of internal objects of each type, by name.  For example, "BitmapIndexedNode",
+     "Relaxed", or "RedBranch".  Includes the collection object itself.
+     */
+    public ImSortedMap<String,Integer> nodeCounts() { return nodeCounts; }
+
+    /** The total number of internal objects. */
+    public int nodes() { return nodes; }
+
+    /** The number of child or item slots all the nodes have room for. */
+    public long slots() { return slots; }
+
+    /** The number of those slots that are filled. */
+    public long usedSlots() { return usedSlots; }
+
+    /** usedSlots() / slots(), or 1.0 if there are no slots. */
+    public double fillRatio() { return (slots == 0) ? 1.0 : ((double) usedSlots) / slots; }
+
+    /** The estimated total size of the internal objects in bytes. */
+    public long estimatedBytes() { return estimatedBytes; }
+
+    /** {@inheritDoc} */
+    @Override public String toString() {
+        return "Footprint(nodes=" + nodes + " estimatedBytes=" + estimatedBytes +
+               " fillRatio=" + fillRatio() + " nodeCounts=" + nodeCounts + ")";
+    }
+}
@@ -0,0 +1,71 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.organicdesign.fp.collections;
+
+import java.util.Map;
+
+/**
+ Chooses which hash trie implementation backs an unsorted {@link ImMap}.  Both have the same
+ semantics, so you can switch between them to compare memory use and speed on your own data:
+
+ <pre><code>HashMapEngine engine = HashMapEngine.CHAMP;
+ImMap&lt;String,Integer&gt; m = engine.&lt;String,Integer&gt;empty().assoc("one", 1);</code></pre>
+ */
+public enum HashMapEngine {
+    /** Rich Hickey's Hash Array Mapped Trie: {@link PersistentHashMap} */
+    HAMT {
+        @Override public <K,V> ImMap<K,V> empty(Equator<K> eq) {
+            return PersistentHashMap.empty(eq);
+        }
+    },
+    /** Michael Steindorfer's Compressed Hash-Array Mapped Prefix-tree: {@link ChampHashMap} */
+    CHAMP {
+        @Override public <K,V> ImMap<K,V> empty(Equator<K> eq) {
+            return ChampHashMap.empty(eq);
+        }
+    };
+
+    /** Returns an empty map using the given Equator (null means the default Equator). */
+    public abstract <K,V> ImMap<K,V> empty(Equator<K> eq);
+
+    /** Returns an empty map using the default Equator. */
+    public <K,V> ImMap<K,V> empty() { return empty(null); }
+
+    /** Returns an empty mutable map using the given Equator. */
+    public <K,V> MutableMap<K,V> emptyMutable(Equator<K> eq) {
+        return this.<K,V>empty(eq).mutable();
+    }
+
+    /** Returns an empty mutable map using the default Equator. */
+    public <K,V> MutableMap<K,V> emptyMutable() { return emptyMutable(null); }
+
+    /**
+     Returns a new map of the given keys and their paired values, skipping any null Entries.  In
+     the case of a duplicate key, later values overwrite earlier ones.
+     */
+    public <K,V> ImMap<K,V> ofEq(Equator<K> eq, Iterable<Map.Entry<K,V>> kvPairs) {
+        MutableMap<K,V> map = emptyMutable(eq);
+        if (kvPairs != null) {
+            for (Map.Entry<K,V> entry : kvPairs) {
+                if (entry != null) {
+                    map.assoc(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return map.immutable();
+    }
+
+    /** Same as {@link #ofEq(Equator, Iterable)} with the default Equator. */
+    public <K,V> ImMap<K,V> of(Iterable<Map.Entry<K,V>> kvPairs) { return ofEq(null, kvPairs); }
+}
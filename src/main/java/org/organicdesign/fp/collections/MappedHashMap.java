@@ -0,0 +1,683 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.organicdesign.fp.collections;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.organicdesign.fp.oneOf.Option;
+import org.organicdesign.fp.tuple.Tuple2;
+
+/**
+ An immutable hash map that lives in a file instead of on the heap.  Write a map to a file once
+ with {@link #write(Path, Iterable, Format, Format)}, then any number of JVMs can
+ {@link #open(Path, Format, Format)} it.  Opening memory-maps the file, which takes milliseconds
+ no matter how big the map is, and the operating system shares the file's pages between every
+ process that maps it.  Lookups read only the few nodes on the path to the key, decoding just the
+ value they return.
+
+ <p>The file holds a hash trie like {@link ChampHashMap}'s, where every pointer is a byte offset
+ from the start of the file.  Keys and values are stored as bytes using a {@link Format}: Strings,
+ Longs, or byte[]s.  String and Long keys hash with the default Equator, so they hash the same way
+ they would in a {@link PersistentHashMap}.  byte[] keys hash and compare by their contents.
+ Null keys are not supported.  Null values are.</p>
+
+ <p>assoc() and without() return a new MappedHashMap which keeps its changes in a small
+ PersistentHashMap on the heap, in front of the same file.  That's fine for a few changes, but
+ if you are going to change a lot, call {@link #mutable()}, which copies every entry onto the
+ heap.</p>
+
+ <p>The file must not change while it's mapped.  Write a new file and open that instead.</p>
+ */
+public class MappedHashMap<K,V> extends AbstractUnmodMap<K,V> implements ImMap<K,V> {
+
+    // "PGRM"
+    private static final int MAGIC = 0x5047524d;
+    private static final int VERSION = 1;
+    // magic, version, segmentBits, keyFormat, valFormat, padding, size, rootOffset
+    private static final int HEADER_LENGTH = 32;
+    // A MappedByteBuffer can't be bigger than 2GB, so we map the file in 1GB segments.  No node
+    // or entry crosses a segment boundary.
+    private static final int DEFAULT_SEGMENT_BITS = 30;
+
+    private static final int BITS = 5;
+    private static final int BIT_MASK = (1 << BITS) - 1;
+    // After this many bits of hash, only a collision node can tell keys apart.
+    private static final int HASH_CODE_LENGTH = 32;
+    // Seven bitmap node levels (shift 0 through 30) plus one collision node.
+    private static final int MAX_DEPTH = 8;
+
+    private static int mask(int hash, int shift) { return (hash >>> shift) & BIT_MASK; }
+
+    /**
+     How keys or values are stored in the file.  Use one of the constants: {@link #STRING},
+     {@link #LONG}, or {@link #BYTES}.
+     */
+    public static abstract class Format<T> {
+        private static final Equator<byte[]> BYTES_EQUATOR = new Equator<byte[]>() {
+            @Override public int hash(byte[] bytes) { return Arrays.hashCode(bytes); }
+
+            @Override public boolean eq(byte[] a, byte[] b) { return Arrays.equals(a, b); }
+        };
+
+        /** Strings stored as UTF-8. */
+        public static final Format<String> STRING =
+                new Format<String>(1, Equator.defaultEquator()) {
+                    @Override byte[] toBytes(String s) {
+                        return s.getBytes(StandardCharsets.UTF_8);
+                    }
+
+                    @Override String fromBytes(byte[] bytes) {
+                        return new String(bytes, StandardCharsets.UTF_8);
+                    }
+                };
+
+        /** Longs stored as 8 bytes. */
+        public static final Format<Long> LONG = new Format<Long>(2, Equator.defaultEquator()) {
+            @Override byte[] toBytes(Long l) { return ByteBuffer.allocate(8).putLong(l).array(); }
+
+            @Override Long fromBytes(byte[] bytes) { return ByteBuffer.wrap(bytes).getLong(); }
+        };
+
+        /** byte[]s stored as-is.  As keys, they are hashed and compared by their contents. */
+        public static final Format<byte[]> BYTES = new Format<byte[]>(3, BYTES_EQUATOR) {
+            @Override byte[] toBytes(byte[] bytes) { return bytes; }
+
+            @Override byte[] fromBytes(byte[] bytes) { return bytes; }
+        };
+
+        private final byte id;
+        private final Equator<T> equator;
+
+        private Format(int i, Equator<T> eq) { id = (byte) i; equator = eq; }
+
+        /** The Equator for keys stored in this format. */
+        public Equator<T> equator() { return equator; }
+
+        abstract byte[] toBytes(T item);
+
+        abstract T fromBytes(byte[] bytes);
+
+        private static Format<?> ofId(byte id) {
+            return (id == STRING.id) ? STRING :
+                   (id == LONG.id) ? LONG :
+                   (id == BYTES.id) ? BYTES :
+                   null;
+        }
+
+        @Override public String toString() {
+            return (this == STRING) ? "STRING" : (this == LONG) ? "LONG" : "BYTES";
+        }
+    }
+
+    // ========================================== Writing ==========================================
+
+    /**
+     Writes the given entries to a file which {@link #open(Path, Format, Format)} can read.
+     Replaces the file if it exists.  In the case of a duplicate key, later values overwrite
+     earlier ones.  Null entries are skipped.
+
+     @throws IllegalArgumentException if a key is null.
+     */
+    public static <K,V> void write(Path file, Iterable<? extends Map.Entry<K,V>> entries,
+                                   Format<K> keyFormat, Format<V> valFormat) throws IOException {
+        write(file, entries, keyFormat, valFormat, DEFAULT_SEGMENT_BITS);
+    }
+
+    // Tests use small segments to check the segment boundaries.
+    static <K,V> void write(Path file, Iterable<? extends Map.Entry<K,V>> entries,
+                            Format<K> keyFormat, Format<V> valFormat, int segmentBits)
+            throws IOException {
+        try (Exporter ex = new Exporter(file, segmentBits)) {
+            for (Map.Entry<K,V> entry : entries) {
+                if (entry == null) {
+                    continue;
+                }
+                K key = entry.getKey();
+                if (key == null) {
+                    throw new IllegalArgumentException("MappedHashMap doesn't support null keys");
+                }
+                V val = entry.getValue();
+                ex.addEntry(keyFormat.equator().hash(key), keyFormat.toBytes(key),
+                            (val == null) ? null : valFormat.toBytes(val));
+            }
+            ex.finish(keyFormat.id, valFormat.id);
+        }
+    }
+
+    /**
+     Writes the entries to the end of the file first, remembering each one's hash and offset.
+     Then builds the trie bottom-up from those, so each node is written after its children and
+     only holds offsets back toward the start of the file.
+
+     Entry: hash, key length, key bytes, value length (-1 for null), value bytes
+     Bitmap node: dataMap, nodeMap, an offset for each entry, an offset for each sub-node
+     Collision node: count, an offset for each entry
+     */
+    private static final class Exporter implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        private final int segmentBits;
+        private final long segmentSize;
+        // The offset of the next byte we'll write (including what's in buf).
+        private long position = HEADER_LENGTH;
+
+        private int count = 0;
+        private int duplicates = 0;
+        private int[] hashes = new int[1024];
+        private long[] offsets = new long[1024];
+        // Scratch space for sorting a node's entries into buckets
+        private int[] auxHashes;
+        private long[] auxOffsets;
+
+        Exporter(Path file, int sb) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                       StandardOpenOption.READ,
+                                       StandardOpenOption.TRUNCATE_EXISTING);
+            segmentBits = sb;
+            segmentSize = 1L << sb;
+        }
+
+        // Returns the offset to write something of the given length at, padding to the next
+        // segment if it would cross a boundary.
+        private long start(long length) throws IOException {
+            if (length > segmentSize) {
+                throw new IllegalArgumentException("Entry too big for a MappedHashMap: " + length);
+            }
+            long used = position & (segmentSize - 1);
+            if ( (used + length) > segmentSize ) {
+                for (long i = used; i < segmentSize; i++) {
+                    putByte((byte) 0);
+                }
+            }
+            return position;
+        }
+
+        private void flush() throws IOException {
+            buf.flip();
+            long pos = position - buf.remaining();
+            while (buf.hasRemaining()) {
+                pos += channel.write(buf, pos);
+            }
+            buf.clear();
+        }
+
+        private void ensure(int n) throws IOException {
+            if (buf.remaining() < n) {
+                flush();
+            }
+        }
+
+        private void putByte(byte b) throws IOException {
+            ensure(1);
+            buf.put(b);
+            position++;
+        }
+
+        private void putInt(int i) throws IOException {
+            ensure(4);
+            buf.putInt(i);
+            position += 4;
+        }
+
+        private void putLong(long l) throws IOException {
+            ensure(8);
+            buf.putLong(l);
+            position += 8;
+        }
+
+        private void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buf.hasRemaining()) {
+                    flush();
+                }
+                int n = Math.min(buf.remaining(), bytes.length - offset);
+                buf.put(bytes, offset, n);
+                offset += n;
+                position += n;
+            }
+        }
+
+        private void readFully(ByteBuffer dest, long pos) throws IOException {
+            while (dest.hasRemaining()) {
+                int n = channel.read(dest, pos);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                pos += n;
+            }
+            dest.flip();
+        }
+
+        // Reads back the key of an entry that's already been flushed.
+        private byte[] readKey(long entry) throws IOException {
+            ByteBuffer len = ByteBuffer.allocate(4);
+            readFully(len, entry + 4);
+            ByteBuffer key = ByteBuffer.allocate(len.getInt());
+            readFully(key, entry + 8);
+            return key.array();
+        }
+
+        void addEntry(int hash, byte[] key, byte[] val) throws IOException {
+            long offset = start(12L + key.length + ((val == null) ? 0 : val.length));
+            putInt(hash);
+            putInt(key.length);
+            put(key);
+            if (val == null) {
+                putInt(-1);
+            } else {
+                putInt(val.length);
+                put(val);
+            }
+            if (count == hashes.length) {
+                hashes = Arrays.copyOf(hashes, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            hashes[count] = hash;
+            offsets[count] = offset;
+            count++;
+        }
+
+        void finish(byte keyFormat, byte valFormat) throws IOException {
+            // Collision nodes read keys back from the file.
+            flush();
+            auxHashes = new int[count];
+            auxOffsets = new long[count];
+            long root = buildNode(0, count, 0);
+            flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(MAGIC).putInt(VERSION).putInt(segmentBits)
+                  .put(keyFormat).put(valFormat).putShort((short) 0)
+                  .putLong(count - duplicates).putLong(root);
+            header.flip();
+            long pos = 0;
+            while (header.hasRemaining()) {
+                pos += channel.write(header, pos);
+            }
+        }
+
+        // Writes a node for the entries from..to (exclusive) and returns its offset.
+        private long buildNode(int from, int to, int shift) throws IOException {
+            if (shift >= HASH_CODE_LENGTH) {
+                return collisionNode(from, to);
+            }
+            // Stable counting sort of these entries by their 5 bits of hash at this level.
+            int[] starts = new int[BIT_MASK + 2];
+            for (int i = from; i < to; i++) {
+                starts[mask(hashes[i], shift) + 1]++;
+            }
+            for (int b = 0; b <= BIT_MASK; b++) {
+                starts[b + 1] += starts[b];
+            }
+            int[] next = Arrays.copyOf(starts, BIT_MASK + 1);
+            for (int i = from; i < to; i++) {
+                int dest = from + next[mask(hashes[i], shift)]++;
+                auxHashes[dest] = hashes[i];
+                auxOffsets[dest] = offsets[i];
+            }
+            System.arraycopy(auxHashes, from, hashes, from, to - from);
+            System.arraycopy(auxOffsets, from, offsets, from, to - from);
+
+            int dataMap = 0;
+            int nodeMap = 0;
+            long[] data = new long[BIT_MASK + 1];
+            int dataCount = 0;
+            long[] nodes = new long[BIT_MASK + 1];
+            int nodeCount = 0;
+            for (int b = 0; b <= BIT_MASK; b++) {
+                int lo = from + starts[b];
+                int hi = from + starts[b + 1];
+                if ((hi - lo) == 1) {
+                    dataMap |= 1 << b;
+                    data[dataCount++] = offsets[lo];
+                } else if ((hi - lo) > 1) {
+                    nodeMap |= 1 << b;
+                    nodes[nodeCount++] = buildNode(lo, hi, shift + BITS);
+                }
+            }
+            long offset = start(8 + (8L * (dataCount + nodeCount)));
+            putInt(dataMap);
+            putInt(nodeMap);
+            for (int i = 0; i < dataCount; i++) {
+                putLong(data[i]);
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                putLong(nodes[i]);
+            }
+            return offset;
+        }
+
+        // All these entries have the same hash.  This is the only place duplicate keys can be, so
+        // keep the last entry for each key.
+        private long collisionNode(int from, int to) throws IOException {
+            List<byte[]> keys = new ArrayList<>();
+            List<Long> kept = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                byte[] key = readKey(offsets[i]);
+                int j = 0;
+                while ( (j < keys.size()) && !Arrays.equals(keys.get(j), key) ) {
+                    j++;
+                }
+                if (j < keys.size()) {
+                    kept.set(j, offsets[i]);
+                    duplicates++;
+                } else {
+                    keys.add(key);
+                    kept.add(offsets[i]);
+                }
+            }
+            long offset = start(4 + (8L * kept.size()));
+            putInt(kept.size());
+            for (long entry : kept) {
+                putLong(entry);
+            }
+            return offset;
+        }
+
+        @Override public void close() throws IOException { channel.close(); }
+    }
+
+    // ========================================== Reading ==========================================
+
+    /**
+     Memory-maps a file written by {@link #write(Path, Iterable, Format, Format)}.
+     @throws IOException if the file isn't a MappedHashMap file.
+     @throws IllegalArgumentException if the formats aren't the ones the file was written with.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K,V> MappedHashMap<K,V> open(Path file, Format<K> keyFormat,
+                                                Format<V> valFormat) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            if (length >= HEADER_LENGTH) {
+                channel.read(header, 0);
+                header.flip();
+            }
+            if ( (length < HEADER_LENGTH) || (header.getInt() != MAGIC) ) {
+                throw new IOException("Not a MappedHashMap file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unknown MappedHashMap version " + version + ": " + file);
+            }
+            int segmentBits = header.getInt();
+            Format<?> kf = Format.ofId(header.get());
+            Format<?> vf = Format.ofId(header.get());
+            header.getShort();
+            long size = header.getLong();
+            long root = header.getLong();
+            if ( (segmentBits < 8) || (segmentBits > DEFAULT_SEGMENT_BITS) ||
+                 (kf == null) || (vf == null) ||
+                 (size < 0) || (size > Integer.MAX_VALUE) ||
+                 (root < HEADER_LENGTH) || (root >= length) ) {
+                throw new IOException("Corrupt MappedHashMap file: " + file);
+            }
+            if ( (kf != keyFormat) || (vf != valFormat) ) {
+                throw new IllegalArgumentException("File was written with key format " + kf +
+                                                   " and value format " + vf + ": " + file);
+            }
+            long segmentSize = 1L << segmentBits;
+            int segmentCount = (int) ((length + segmentSize - 1) >>> segmentBits);
+            ByteBuffer[] segments = new ByteBuffer[segmentCount];
+            for (int i = 0; i < segments.length; i++) {
+                long start = i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                          Math.min(segmentSize, length - start));
+            }
+            return new MappedHashMap<>(segments, segmentBits, keyFormat, valFormat, root,
+                                       (int) size,
+                                       PersistentHashMap.empty(keyFormat.equator()));
+        }
+    }
+
+    // ==================================== Instance Variables ====================================
+    // Only absolute get() methods are used on these, so they're safe to share between threads.
+    private final ByteBuffer[] segments;
+    private final int segmentBits;
+    private final long segmentMask;
+    private final Format<K> keyFormat;
+    private final Format<V> valFormat;
+    private final long root;
+    private final int size;
+    // Keys assoc'ed (Some) or removed (None) since the file was opened.
+    private final PersistentHashMap<K,Option<V>> changes;
+
+    private MappedHashMap(ByteBuffer[] segs, int sb, Format<K> kf, Format<V> vf, long r, int sz,
+                          PersistentHashMap<K,Option<V>> ch) {
+        segments = segs; segmentBits = sb; segmentMask = (1L << sb) - 1; keyFormat = kf;
+        valFormat = vf; root = r; size = sz; changes = ch;
+    }
+
+    private MappedHashMap<K,V> withChanges(PersistentHashMap<K,Option<V>> ch, int sz) {
+        return new MappedHashMap<>(segments, segmentBits, keyFormat, valFormat, root, sz, ch);
+    }
+
+    // Nothing we read crosses a segment boundary, so all of it is in the segment it starts in.
+    private ByteBuffer segment(long offset) { return segments[(int) (offset >>> segmentBits)]; }
+
+    private int getInt(long offset) {
+        return segment(offset).getInt((int) (offset & segmentMask));
+    }
+
+    private long getLong(long offset) {
+        return segment(offset).getLong((int) (offset & segmentMask));
+    }
+
+    private byte[] getBytes(long offset, int length) {
+        ByteBuffer seg = segment(offset).duplicate();
+        seg.position((int) (offset & segmentMask));
+        byte[] ret = new byte[length];
+        seg.get(ret);
+        return ret;
+    }
+
+    private K readKey(long entry) {
+        return keyFormat.fromBytes(getBytes(entry + 8, getInt(entry + 4)));
+    }
+
+    private V readVal(long entry) {
+        long valOffset = entry + 8 + getInt(entry + 4);
+        int length = getInt(valOffset);
+        return (length < 0) ? null : valFormat.fromBytes(getBytes(valOffset + 4, length));
+    }
+
+    private boolean matches(long entry, int hash, byte[] key) {
+        if ( (getInt(entry) != hash) || (getInt(entry + 4) != key.length) ) {
+            return false;
+        }
+        ByteBuffer seg = segment(entry);
+        int start = (int) ((entry + 8) & segmentMask);
+        for (int i = 0; i < key.length; i++) {
+            if (seg.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns the offset of the entry for this key in the file, or -1 if it isn't there.
+    private long find(K key) {
+        int hash = keyFormat.equator().hash(key);
+        byte[] bytes = keyFormat.toBytes(key);
+        long node = root;
+        for (int shift = 0; shift < HASH_CODE_LENGTH; shift += BITS) {
+            int dataMap = getInt(node);
+            int nodeMap = getInt(node + 4);
+            int bit = 1 << mask(hash, shift);
+            if ((dataMap & bit) != 0) {
+                long entry = getLong(node + 8 + (8L * Integer.bitCount(dataMap & (bit - 1))));
+                return matches(entry, hash, bytes) ? entry : -1;
+            }
+            if ((nodeMap & bit) == 0) {
+                return -1;
+            }
+            node = getLong(node + 8 + (8L * (Integer.bitCount(dataMap) +
+                                             Integer.bitCount(nodeMap & (bit - 1)))));
+        }
+        int count = getInt(node);
+        for (int i = 0; i < count; i++) {
+            long entry = getLong(node + 4 + (8L * i));
+            if (matches(entry, hash, bytes)) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    // ===================================== Instance Methods =====================================
+
+    /** {@inheritDoc} */
+    @Override public Equator<K> equator() { return keyFormat.equator(); }
+
+    /** {@inheritDoc} */
+    @Override public int size() { return size; }
+
+    /** {@inheritDoc} */
+    @Override public Option<UnEntry<K,V>> entry(K key) {
+        if (key == null) {
+            return Option.none();
+        }
+        if (changes.size() > 0) {
+            Option<UnEntry<K,Option<V>>> change = changes.entry(key);
+            if (change.isSome()) {
+                Option<V> val = change.get().getValue();
+                return val.isSome() ? Option.some(Tuple2.of(key, val.get())) : Option.none();
+            }
+        }
+        long entry = find(key);
+        return (entry < 0) ? Option.none() : Option.some(Tuple2.of(key, readVal(entry)));
+    }
+
+    /**
+     Returns a new map with the given key and value, keeping the change on the heap.
+     @throws IllegalArgumentException if the key is null.
+     */
+    @Override public MappedHashMap<K,V> assoc(K key, V val) {
+        if (key == null) {
+            throw new IllegalArgumentException("MappedHashMap doesn't support null keys");
+        }
+        return withChanges(changes.assoc(key, Option.some(val)),
+                           containsKey(key) ? size : size + 1);
+    }
+
+    /** Returns a new map without the given key, keeping the change on the heap. */
+    @Override public MappedHashMap<K,V> without(K key) {
+        if (!containsKey(key)) {
+            return this;
+        }
+        // A key that's only in changes can just be dropped from there.
+        return withChanges((find(key) < 0) ? changes.without(key)
+                                           : changes.assoc(key, Option.none()),
+                           size - 1);
+    }
+
+    /** Returns a mutable PersistentHashMap with a copy of every entry in this map. */
+    @Override public MutableMap<K,V> mutable() {
+        MutableMap<K,V> ret = PersistentHashMap.emptyMutable(keyFormat.equator());
+        for (UnEntry<K,V> entry : this) {
+            ret.assoc(entry.getKey(), entry.getValue());
+        }
+        return ret;
+    }
+
+    /** {@inheritDoc} */
+    @Override public UnmodIterator<UnEntry<K,V>> iterator() { return new Iter(); }
+
+    /**
+     Walks the trie in the file with an explicit stack, skipping keys that have been changed, then
+     returns the changes.
+     */
+    private final class Iter implements UnmodIterator<UnEntry<K,V>> {
+        private final long[] slots = new long[MAX_DEPTH];
+        private final int[] dataCounts = new int[MAX_DEPTH];
+        private final int[] slotCounts = new int[MAX_DEPTH];
+        private final int[] indices = new int[MAX_DEPTH];
+        private int depth = -1;
+        private UnmodIterator<UnEntry<K,Option<V>>> changeIter = null;
+        private UnEntry<K,V> next;
+
+        Iter() {
+            push(root);
+            next = advance();
+        }
+
+        private void push(long node) {
+            depth++;
+            indices[depth] = 0;
+            if ((depth * BITS) >= HASH_CODE_LENGTH) {
+                slots[depth] = node + 4;
+                dataCounts[depth] = slotCounts[depth] = getInt(node);
+            } else {
+                int dataCount = Integer.bitCount(getInt(node));
+                slots[depth] = node + 8;
+                dataCounts[depth] = dataCount;
+                slotCounts[depth] = dataCount + Integer.bitCount(getInt(node + 4));
+            }
+        }
+
+        private UnEntry<K,V> advance() {
+            while (depth >= 0) {
+                if (indices[depth] < slotCounts[depth]) {
+                    int i = indices[depth]++;
+                    long slot = getLong(slots[depth] + (8L * i));
+                    if (i >= dataCounts[depth]) {
+                        push(slot);
+                    } else {
+                        K key = readKey(slot);
+                        if ( (changes.size() == 0) || !changes.containsKey(key) ) {
+                            return Tuple2.of(key, readVal(slot));
+                        }
+                    }
+                } else {
+                    depth--;
+                }
+            }
+            if (changeIter == null) {
+                changeIter = changes.iterator();
+            }
+            while (changeIter.hasNext()) {
+                UnEntry<K,Option<V>> change = changeIter.next();
+                if (change.getValue().isSome()) {
+                    return Tuple2.of(change.getKey(), change.getValue().get());
+                }
+            }
+            return null;
+        }
+
+        @Override public boolean hasNext() { return next != null; }
+
+        @Override public UnEntry<K,V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            UnEntry<K,V> ret = next;
+            next = advance();
+            return ret;
+        }
+    }
+}
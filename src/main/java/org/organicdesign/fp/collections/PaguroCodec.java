@@ -0,0 +1,533 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.organicdesign.fp.collections;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.organicdesign.fp.collections.Cowry.EMPTY_ARRAY;
+
+/**
+ A binary format for {@link PersistentVector}, {@link RrbTree.ImRrbt}, {@link PersistentHashMap},
+ and {@link PersistentTreeMap} which writes their internal nodes as they are, so that reading them
+ back builds the same nodes directly instead of calling append() or assoc() once per item.
+
+ <pre><code>try (PaguroCodec.Writer w = new PaguroCodec.Writer(outputStream, true)) {
+    w.write(version1);
+    w.write(version2);
+}
+try (PaguroCodec.Reader r = new PaguroCodec.Reader(inputStream)) {
+    ImList&lt;String&gt; v1 = r.read();
+    ImList&lt;String&gt; v2 = r.read();
+}</code></pre>
+
+ <p>Integers, Longs, Doubles, Booleans, Strings, and null are written compactly, and a leaf that
+ holds only Integers, only Longs, or only Strings is written as a length followed by the raw
+ values.  Any of the four collections above nested inside another is written with this format
+ too.  Everything else is written with Java serialization, so it must be Serializable.  So must
+ the Equator of a PersistentHashMap and the Comparator of a PersistentTreeMap.</p>
+
+ <p>A PersistentHashMap's nodes are laid out by the hash codes of its keys, which aren't always
+ the same in another JVM (enums and other objects that use the identity hash code, or anything
+ containing them).  The Reader checks every key's hash, and if any key wouldn't be found where it
+ is, it builds the map again with assoc() (and that map doesn't share nodes with any other).</p>
+
+ <p>If you pass shareStructure=true to the Writer, every node is written only once per stream.
+ After that, it's written as a reference to the first copy.  When you write several versions of
+ a collection to one stream, only the parts that changed are written again, and the versions you
+ read back share those nodes just like the originals did.  This costs an identity map entry per
+ node while writing and an ArrayList entry per node while reading.</p>
+
+ <p>A {@link SnapshotWriter} does the same thing across streams: the first checkpoint it writes
+ is a full copy, and each one after that only holds the nodes that weren't in any earlier
+ checkpoint.  A {@link SnapshotReader} rebuilds each version by reading the checkpoints in
+ order.</p>
+
+ <p>This format is not compatible with Java serialization and is not guaranteed to be readable by
+ other versions of Paguro.  Use it for caches and snapshots, not long-term storage.</p>
+ */
+public final class PaguroCodec {
+
+    // Don't instantiate this class
+    private PaguroCodec() { throw new UnsupportedOperationException("No instantiation"); }
+
+    // "PGRC"
+    private static final int MAGIC = 0x50475243;
+    private static final byte VERSION = 1;
+
+    // Item tags
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte STRING = 6;
+    private static final byte OBJECT = 7;
+    private static final byte VECTOR = 8;
+    private static final byte RRB_TREE = 9;
+    private static final byte HASH_MAP = 10;
+    private static final byte TREE_MAP = 11;
+
+    // How the items in an array are written
+    private static final byte MIXED_ITEMS = 0;
+    private static final byte INT_ITEMS = 1;
+    private static final byte LONG_ITEMS = 2;
+    private static final byte STRING_ITEMS = 3;
+
+    // Stream modes, written after the version
+    private static final byte PLAIN = 0;
+    private static final byte SHARED = 1;
+    private static final byte SNAPSHOT = 2;
+
+    // Written before each node when sharing structure.
+    private static final byte NEW_NODE = 0;
+    private static final byte NODE_REF = 1;
+
+    /** Writes collections to an OutputStream.  Not thread-safe. */
+    public static final class Writer implements Closeable, Flushable {
+        // Package-private so that each collection can write its own fields.
+        final ObjectOutputStream out;
+        // Node identity to the number it was given, or null if not sharing structure.
+        private final IdentityHashMap<Object,Integer> ids;
+        private int nextId = 0;
+
+        /**
+         Starts a new stream.
+         @param os where to write.
+         @param shareStructure if true, write each node only once, then refer back to it.
+         */
+        public Writer(OutputStream os, boolean shareStructure) throws IOException {
+            this(os, shareStructure ? new IdentityHashMap<>() : null);
+            out.writeByte(shareStructure ? SHARED : PLAIN);
+        }
+
+        // Writes the start of the header.  New nodes are numbered after the ones already in ids.
+        private Writer(OutputStream os, IdentityHashMap<Object,Integer> ids) throws IOException {
+            out = new ObjectOutputStream(os);
+            this.ids = ids;
+            nextId = (ids == null) ? 0 : ids.size();
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+        }
+
+        /** Starts a new stream that does not share structure. */
+        public Writer(OutputStream os) throws IOException { this(os, false); }
+
+        /**
+         Writes one item: usually one of the collections listed in {@link PaguroCodec}, but it can
+         be anything the format supports.
+         */
+        public void write(Object item) throws IOException { writeItem(item); }
+
+        /** {@inheritDoc} */
+        @Override public void flush() throws IOException { out.flush(); }
+
+        /** {@inheritDoc} */
+        @Override public void close() throws IOException { out.close(); }
+
+        /**
+         Call before writing a node.  If we're sharing structure and this node was already written,
+         writes a reference to it and returns false, meaning don't write the node.  Otherwise
+         returns true, and you must write the node, then call {@link #endNode(Object)}.
+         */
+        boolean startNode(Object node) throws IOException {
+            if (ids == null) {
+                return true;
+            }
+            Integer id = ids.get(node);
+            if (id != null) {
+                out.writeByte(NODE_REF);
+                out.writeInt(id);
+                return false;
+            }
+            out.writeByte(NEW_NODE);
+            return true;
+        }
+
+        /** Call after writing a node.  Numbers the node in the same order the Reader will. */
+        void endNode(Object node) {
+            if (ids != null) {
+                ids.put(node, nextId++);
+            }
+        }
+
+        void writeItem(Object item) throws IOException {
+            if (item == null) {
+                out.writeByte(NULL);
+            } else if (item instanceof Integer) {
+                out.writeByte(INT);
+                out.writeInt((Integer) item);
+            } else if (item instanceof String) {
+                out.writeByte(STRING);
+                writeString((String) item);
+            } else if (item instanceof Long) {
+                out.writeByte(LONG);
+                out.writeLong((Long) item);
+            } else if (item instanceof Double) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) item);
+            } else if (item instanceof Boolean) {
+                out.writeByte((Boolean) item ? TRUE : FALSE);
+            } else if (item instanceof PersistentVector) {
+                out.writeByte(VECTOR);
+                if (startNode(item)) {
+                    ((PersistentVector<?>) item).encode(this);
+                    endNode(item);
+                }
+            } else if (item instanceof RrbTree.ImRrbt) {
+                out.writeByte(RRB_TREE);
+                if (startNode(item)) {
+                    ((RrbTree.ImRrbt<?>) item).encode(this);
+                    endNode(item);
+                }
+            } else if (item instanceof PersistentHashMap) {
+                out.writeByte(HASH_MAP);
+                if (startNode(item)) {
+                    ((PersistentHashMap<?,?>) item).encode(this);
+                    endNode(item);
+                }
+            } else if (item instanceof PersistentTreeMap) {
+                out.writeByte(TREE_MAP);
+                if (startNode(item)) {
+                    ((PersistentTreeMap<?,?>) item).encode(this);
+                    endNode(item);
+                }
+            } else {
+                out.writeByte(OBJECT);
+                out.writeObject(item);
+            }
+        }
+
+        // writeUTF() can't handle more than 64K
+        private void writeString(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        /**
+         Writes the first length items of the given array, as a shared node.  When all the items
+         are Integers, Longs, or Strings, they're written without a tag for each one.
+         */
+        void writeItems(Object[] items, int length) throws IOException {
+            // Shared by the identity of the original array, even when only the first length items
+            // are used (like a HashCollisionNode with spare slots).
+            if (!startNode(items)) {
+                return;
+            }
+            out.writeInt(length);
+            Class<?> c = (length > 0) && (items[0] != null) ? items[0].getClass() : null;
+            for (int i = 1; (c != null) && (i < length); i++) {
+                if ( (items[i] == null) || (items[i].getClass() != c) ) {
+                    c = null;
+                }
+            }
+            if (c == Integer.class) {
+                out.writeByte(INT_ITEMS);
+                for (int i = 0; i < length; i++) {
+                    out.writeInt((Integer) items[i]);
+                }
+            } else if (c == Long.class) {
+                out.writeByte(LONG_ITEMS);
+                for (int i = 0; i < length; i++) {
+                    out.writeLong((Long) items[i]);
+                }
+            } else if (c == String.class) {
+                out.writeByte(STRING_ITEMS);
+                for (int i = 0; i < length; i++) {
+                    writeString((String) items[i]);
+                }
+            } else {
+                out.writeByte(MIXED_ITEMS);
+                for (int i = 0; i < length; i++) {
+                    writeItem(items[i]);
+                }
+            }
+            endNode(items);
+        }
+    }
+
+    /** Reads collections written by a {@link Writer}.  Not thread-safe. */
+    public static final class Reader implements Closeable {
+        // Package-private so that each collection can read its own fields.
+        final ObjectInputStream in;
+        // Every node read so far, in the order the Writer numbered them, or null if the stream
+        // doesn't share structure.
+        private final ArrayList<Object> nodes;
+
+        /**
+         Reads the start of the stream.
+         @throws StreamCorruptedException if the stream wasn't written by a Writer.
+         */
+        public Reader(InputStream is) throws IOException { this(is, null); }
+
+        // Reads the header up to and including the mode.  If snapshotNodes is null, this must be
+        // a plain or shared stream.  Otherwise it must be a snapshot which may refer to the nodes
+        // already in snapshotNodes.
+        private Reader(InputStream is, ArrayList<Object> snapshotNodes) throws IOException {
+            in = new ObjectInputStream(is);
+            if (in.readInt() != MAGIC) {
+                throw new StreamCorruptedException("Not a PaguroCodec stream");
+            }
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new StreamCorruptedException("Unknown PaguroCodec version: " + version);
+            }
+            byte mode = in.readByte();
+            if (snapshotNodes != null) {
+                if (mode != SNAPSHOT) {
+                    throw new StreamCorruptedException("Not a PaguroCodec snapshot");
+                }
+                nodes = snapshotNodes;
+            } else if (mode == SNAPSHOT) {
+                throw new StreamCorruptedException("A snapshot must be read with a SnapshotReader");
+            } else if ( (mode != PLAIN) && (mode != SHARED) ) {
+                throw new StreamCorruptedException("Unknown PaguroCodec mode: " + mode);
+            } else {
+                nodes = (mode == SHARED) ? new ArrayList<>() : null;
+            }
+        }
+
+        /**
+         Reads the next item in the stream.
+         @throws ClassNotFoundException if an item written with Java serialization is of a class
+         that isn't available.
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T read() throws IOException, ClassNotFoundException { return (T) readItem(); }
+
+        /** {@inheritDoc} */
+        @Override public void close() throws IOException { in.close(); }
+
+        /**
+         Call before reading a node.  If it was written as a reference to an earlier node, returns
+         that node.  Otherwise returns null and you must read the node, then pass it to
+         {@link #register(Object)}.
+         */
+        @SuppressWarnings("unchecked")
+        <T> T backRef() throws IOException {
+            if (nodes == null) {
+                return null;
+            }
+            byte marker = in.readByte();
+            if (marker == NEW_NODE) {
+                return null;
+            }
+            if (marker != NODE_REF) {
+                throw new StreamCorruptedException("Bad node marker: " + marker);
+            }
+            int id = in.readInt();
+            if ( (id < 0) || (id >= nodes.size()) ) {
+                throw new StreamCorruptedException("Bad node reference: " + id);
+            }
+            return (T) nodes.get(id);
+        }
+
+        /** Records a node that might be referred to later.  Returns the node. */
+        <T> T register(T node) {
+            if (nodes != null) {
+                nodes.add(node);
+            }
+            return node;
+        }
+
+        Object readItem() throws IOException, ClassNotFoundException {
+            byte tag = in.readByte();
+            Object ref;
+            switch (tag) {
+                case NULL: return null;
+                case TRUE: return Boolean.TRUE;
+                case FALSE: return Boolean.FALSE;
+                case INT: return in.readInt();
+                case LONG: return in.readLong();
+                case DOUBLE: return in.readDouble();
+                case STRING: return readString();
+                case OBJECT: return in.readObject();
+                case VECTOR:
+                    ref = backRef();
+                    return (ref != null) ? ref : register(PersistentVector.decode(this));
+                case RRB_TREE:
+                    ref = backRef();
+                    return (ref != null) ? ref : register(RrbTree.ImRrbt.decode(this));
+                case HASH_MAP:
+                    ref = backRef();
+                    return (ref != null) ? ref : register(PersistentHashMap.decode(this));
+                case TREE_MAP:
+                    ref = backRef();
+                    return (ref != null) ? ref : register(PersistentTreeMap.decode(this));
+                default: throw new StreamCorruptedException("Unknown item tag: " + tag);
+            }
+        }
+
+        private String readString() throws IOException {
+            byte[] bytes = new byte[readLength()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /** Reads a length or count, checking that it isn't negative. */
+        int readLength() throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                throw new StreamCorruptedException("Negative length: " + length);
+            }
+            return length;
+        }
+
+        /** Reads an array written by {@link Writer#writeItems(Object[], int)}. */
+        <T> T[] readItems() throws IOException, ClassNotFoundException {
+            T[] items = backRef();
+            if (items != null) {
+                return items;
+            }
+            int length = readLength();
+            @SuppressWarnings("unchecked")
+            T[] ret = (T[]) ((length == 0) ? EMPTY_ARRAY : new Object[length]);
+            Object[] array = ret;
+            byte kind = in.readByte();
+            switch (kind) {
+                case INT_ITEMS:
+                    for (int i = 0; i < length; i++) { array[i] = in.readInt(); }
+                    break;
+                case LONG_ITEMS:
+                    for (int i = 0; i < length; i++) { array[i] = in.readLong(); }
+                    break;
+                case STRING_ITEMS:
+                    for (int i = 0; i < length; i++) { array[i] = readString(); }
+                    break;
+                case MIXED_ITEMS:
+                    for (int i = 0; i < length; i++) { array[i] = readItem(); }
+                    break;
+                default: throw new StreamCorruptedException("Unknown item kind: " + kind);
+            }
+            return register(ret);
+        }
+    }
+
+    /**
+     Writes a series of checkpoints of a collection, each to its own stream.  The first checkpoint
+     is written in full.  Each later one only writes the nodes that no earlier checkpoint did and
+     refers back to the rest, so when only a few entries of a big map change between checkpoints,
+     only a few nodes (the changed ones and their parents) are written.
+
+     <pre><code>PaguroCodec.SnapshotWriter snapshots = new PaguroCodec.SnapshotWriter();
+snapshots.write(baseStream, map);
+map = map.assoc(k, v);
+snapshots.write(deltaStream, map);</code></pre>
+
+     <p>Nodes are recognized by identity, so this writer holds on to every node it has ever
+     written, including nodes from versions your program has discarded.  Start a new
+     SnapshotWriter (with a new base checkpoint) from time to time to let those go.  Not
+     thread-safe.</p>
+     */
+    public static final class SnapshotWriter {
+        // Every node written so far, to the number it was given.
+        private final IdentityHashMap<Object,Integer> ids = new IdentityHashMap<>();
+        // Keeps checkpoints from different writers from being mixed up.
+        private final long snapshotId = ThreadLocalRandom.current().nextLong();
+        private long checkpoint = 0;
+
+        /** Writes the next checkpoint of the item to the given stream, but doesn't close it. */
+        public void write(OutputStream os, Object item) throws IOException {
+            int firstId = ids.size();
+            boolean ok = false;
+            try {
+                Writer w = new Writer(os, ids);
+                w.out.writeByte(SNAPSHOT);
+                w.out.writeLong(snapshotId);
+                w.out.writeLong(checkpoint);
+                w.out.writeInt(firstId);
+                w.write(item);
+                w.flush();
+                ok = true;
+            } finally {
+                if (!ok) {
+                    // Nodes in a failed checkpoint can't be referred to later.
+                    ids.values().removeIf(id -> id >= firstId);
+                }
+            }
+            checkpoint++;
+        }
+
+        /** The number of checkpoints written so far. */
+        public long checkpoints() { return checkpoint; }
+
+        /** The number of distinct nodes written so far. */
+        public int nodeCount() { return ids.size(); }
+    }
+
+    /**
+     Reads checkpoints written by a {@link SnapshotWriter}.  Pass them to {@link #read(InputStream)}
+     in the order they were written, starting with the first one.  Each call returns the version
+     of the collection in that checkpoint, sharing nodes with the versions read before it.  Like
+     the writer, this holds on to every node it has read.  Not thread-safe.
+     */
+    public static final class SnapshotReader {
+        // Every node read so far, in the order the SnapshotWriter numbered them.
+        private final ArrayList<Object> nodes = new ArrayList<>();
+        private long snapshotId;
+        private long checkpoint = 0;
+
+        /**
+         Reads the next checkpoint from the given stream, but doesn't close it.  If this throws an
+         exception, you can still pass the correct checkpoint next.
+         @throws StreamCorruptedException if the stream isn't the next checkpoint from the same
+         SnapshotWriter as the previous ones.
+         @throws ClassNotFoundException if an item written with Java serialization is of a class
+         that isn't available.
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T read(InputStream is) throws IOException, ClassNotFoundException {
+            int firstId = nodes.size();
+            boolean ok = false;
+            try {
+                Reader r = new Reader(is, nodes);
+                long id = r.in.readLong();
+                long cp = r.in.readLong();
+                if ( (checkpoint > 0) && (id != snapshotId) ) {
+                    throw new StreamCorruptedException("Checkpoint is from a different" +
+                                                       " SnapshotWriter");
+                }
+                if (cp != checkpoint) {
+                    throw new StreamCorruptedException("Expected checkpoint " + checkpoint +
+                                                       " but got " + cp);
+                }
+                if (r.in.readInt() != firstId) {
+                    throw new StreamCorruptedException("Corrupt snapshot header");
+                }
+                T ret = (T) r.readItem();
+                ok = true;
+                snapshotId = id;
+                checkpoint++;
+                return ret;
+            } finally {
+                if (!ok) {
+                    // Forget the nodes from a checkpoint that couldn't be read.
+                    nodes.subList(firstId, nodes.size()).clear();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,302 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.organicdesign.fp.collections;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.NoSuchElementException;
+
+import org.organicdesign.fp.oneOf.Option;
+
+/**
+ An immutable double-ended queue with amortized O(1) pushFront(), pushBack(), popFront(), and
+ popBack().  Use this for work queues instead of an ImRrbt with insert(0, x) and without(0).
+
+ <p>This is Okasaki's Banker's Deque: two singly-linked lists, one holding the front of the deque
+ in order, the other holding the back in reverse order.  When either list gets more than
+ {@link #BALANCE} times longer than the other, the items are split evenly between them again.
+ Each item is only moved a constant number of times as it travels from one end to the other,
+ which is where the amortized O(1) comes from.  If you keep popping from the same old version
+ over and over, you can pay for the same rebalance more than once, so use the latest version
+ (as you would with a queue anyway).</p>
+
+ <p>Iteration goes from front to back.</p>
+ */
+public final class PersistentDeque<E> implements UnmodSortedIterable<E>, Sized, Serializable {
+
+    // Neither list may be more than this many times longer than the other (plus one).
+    private static final int BALANCE = 3;
+
+    // An immutable singly-linked list.
+    private static final class Cons<T> {
+        final T head;
+        final Cons<T> tail;
+        Cons(T h, Cons<T> t) { head = h; tail = t; }
+    }
+
+    private static final PersistentDeque<?> EMPTY = new PersistentDeque<>(null, 0, null, 0);
+
+    /** Returns the empty deque (there only needs to be one) */
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentDeque<T> empty() { return (PersistentDeque<T>) EMPTY; }
+
+    /** Returns a deque of the given items, with the first item at the front. */
+    public static <T> PersistentDeque<T> of(Iterable<? extends T> items) {
+        PersistentDeque<T> ret = empty();
+        if (items != null) {
+            for (T item : items) {
+                ret = ret.pushBack(item);
+            }
+        }
+        return ret;
+    }
+
+    // ==================================== Instance Variables ====================================
+    // front holds items in order.  back holds items in reverse order.
+    private transient final Cons<E> front;
+    private transient final int frontSize;
+    private transient final Cons<E> back;
+    private transient final int backSize;
+
+    private PersistentDeque(Cons<E> f, int fs, Cons<E> b, int bs) {
+        front = f; frontSize = fs; back = b; backSize = bs;
+    }
+
+    // ======================================= Serialization =======================================
+    // This class has a custom serialized form designed to be as small as possible.  It does not
+    // have the same internal structure as an instance of this class.
+
+    // For serializable.  Make sure to change whenever internal data format changes.
+    private static final long serialVersionUID = 20261019025100L;
+
+    // Check out Josh Bloch Item 78, p. 312 for an explanation of what's going on here.
+    private static class SerializationProxy<E> implements Serializable {
+        // For serializable.  Make sure to change whenever internal data format changes.
+        private static final long serialVersionUID = 20261019025100L;
+
+        private final int size;
+        private transient PersistentDeque<E> deque;
+
+        SerializationProxy(PersistentDeque<E> d) {
+            size = d.size();
+            deque = d;
+        }
+
+        // Taken from Josh Bloch Item 75, p. 298
+        private void writeObject(ObjectOutputStream s) throws IOException {
+            s.defaultWriteObject();
+            // Write out all elements in the proper order
+            for (E entry : deque) {
+                s.writeObject(entry);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException {
+            s.defaultReadObject();
+            PersistentDeque<E> temp = empty();
+            for (int i = 0; i < size; i++) {
+                temp = temp.pushBack((E) s.readObject());
+            }
+            deque = temp;
+        }
+
+        private Object readResolve() { return deque; }
+    }
+
+    private Object writeReplace() { return new SerializationProxy<>(this); }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        throw new InvalidObjectException("Proxy required");
+    }
+
+    // ===================================== Instance Methods =====================================
+
+    /** {@inheritDoc} */
+    @Override public int size() { return frontSize + backSize; }
+
+    /** Reports the memory used by this deque's internal structure (see {@link Footprint}). */
+    public Footprint footprint() { return Footprint.of(this); }
+
+    void measure(Footprint.Builder b) {
+        // front, back, frontSize, backSize
+        b.node(this, "PersistentDeque", 0, 0, Footprint.objectBytes(2, 8));
+        measureList(front, b);
+        measureList(back, b);
+    }
+
+    // Stops at the first cell we've already seen, because the rest of that list is too.
+    private static void measureList(Cons<?> c, Footprint.Builder b) {
+        // head, tail
+        while ( (c != null) && b.node(c, "Cons", 0, 0, Footprint.objectBytes(2, 0)) ) {
+            c = c.tail;
+        }
+    }
+
+    /** Returns true if this deque has no items. */
+    public boolean isEmpty() { return (frontSize + backSize) == 0; }
+
+    /** Returns a new deque with the given item added at the front. */
+    public PersistentDeque<E> pushFront(E item) {
+        return balance(new Cons<>(item, front), frontSize + 1, back, backSize);
+    }
+
+    /** Returns a new deque with the given item added at the back. */
+    public PersistentDeque<E> pushBack(E item) {
+        return balance(front, frontSize, new Cons<>(item, back), backSize + 1);
+    }
+
+    /** Returns the item at the front of this deque, or None if it is empty. */
+    public Option<E> peekFront() {
+        return (front != null) ? Option.some(front.head) :
+               (back != null) ? Option.some(back.head) :
+               Option.none();
+    }
+
+    /** Returns the item at the back of this deque, or None if it is empty. */
+    public Option<E> peekBack() {
+        return (back != null) ? Option.some(back.head) :
+               (front != null) ? Option.some(front.head) :
+               Option.none();
+    }
+
+    /** The first item in this deque (same as {@link #peekFront()}).  This is O(1). */
+    @Override public Option<E> head() { return peekFront(); }
+
+    /**
+     Returns a new deque without the item at the front.
+     @throws NoSuchElementException if this deque is empty.
+     */
+    public PersistentDeque<E> popFront() {
+        if (front == null) {
+            // Because we keep the lists balanced, back can only have one item here.
+            if (back == null) {
+                throw new NoSuchElementException("Can't pop from an empty deque");
+            }
+            return empty();
+        }
+        return balance(front.tail, frontSize - 1, back, backSize);
+    }
+
+    /**
+     Returns a new deque without the item at the back.
+     @throws NoSuchElementException if this deque is empty.
+     */
+    public PersistentDeque<E> popBack() {
+        if (back == null) {
+            // Because we keep the lists balanced, front can only have one item here.
+            if (front == null) {
+                throw new NoSuchElementException("Can't pop from an empty deque");
+            }
+            return empty();
+        }
+        return balance(front, frontSize, back.tail, backSize - 1);
+    }
+
+    // If one list got too long, split all the items evenly between the two lists.
+    @SuppressWarnings("unchecked")
+    private static <T> PersistentDeque<T> balance(Cons<T> f, int fs, Cons<T> b, int bs) {
+        if ( (fs <= (BALANCE * bs) + 1) && (bs <= (BALANCE * fs) + 1) ) {
+            return ((fs + bs) == 0) ? empty() : new PersistentDeque<>(f, fs, b, bs);
+        }
+        int size = fs + bs;
+        Object[] items = new Object[size];
+        int i = 0;
+        for (Cons<T> c = f; c != null; c = c.tail) {
+            items[i++] = c.head;
+        }
+        i = size;
+        for (Cons<T> c = b; c != null; c = c.tail) {
+            items[--i] = c.head;
+        }
+        int newFrontSize = size / 2;
+        Cons<T> newFront = null;
+        for (i = newFrontSize - 1; i >= 0; i--) {
+            newFront = new Cons<>((T) items[i], newFront);
+        }
+        Cons<T> newBack = null;
+        for (i = newFrontSize; i < size; i++) {
+            newBack = new Cons<>((T) items[i], newBack);
+        }
+        return new PersistentDeque<>(newFront, newFrontSize, newBack, size - newFrontSize);
+    }
+
+    /** Iterates from the front of the deque to the back. */
+    @Override public UnmodSortedIterator<E> iterator() {
+        return new UnmodSortedIterator<E>() {
+            private Cons<E> f = front;
+            // The back list is in reverse order, so when we get to it, we copy it to an array
+            // (front-to-back) and serve from that.
+            private Object[] reversedBack = null;
+            private int backIdx = 0;
+
+            @Override public boolean hasNext() {
+                return (f != null) ||
+                       ((reversedBack == null) ? (back != null)
+                                               : (backIdx < reversedBack.length));
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override public E next() {
+                if (f != null) {
+                    E ret = f.head;
+                    f = f.tail;
+                    return ret;
+                }
+                if (reversedBack == null) {
+                    reversedBack = new Object[backSize];
+                    int i = backSize;
+                    for (Cons<E> c = back; c != null; c = c.tail) {
+                        reversedBack[--i] = c.head;
+                    }
+                }
+                if (backIdx >= reversedBack.length) {
+                    throw new NoSuchElementException();
+                }
+                return (E) reversedBack[backIdx++];
+            }
+        };
+    }
+
+    // ================================== Standard Object Methods ==================================
+
+    /** {@inheritDoc} */
+    @Override public boolean equals(Object other) {
+        if (this == other) { return true; }
+        if ( !(other instanceof PersistentDeque) ) { return false; }
+        PersistentDeque<?> that = (PersistentDeque<?>) other;
+        return (this.size() == that.size()) &&
+               UnmodSortedIterable.equal(this, that);
+    }
+
+    /** Order-dependent like java.util.List.hashCode(), and O(n). */
+    @Override public int hashCode() {
+        int ret = 1;
+        for (E item : this) {
+            ret *= 31;
+            if (item != null) {
+                ret += item.hashCode();
+            }
+        }
+        return ret;
+    }
+
+    /** {@inheritDoc} */
+    @Override public String toString() {
+        return UnmodIterable.toString("PersistentDeque", this);
+    }
+}
@@ -15,7 +15,11 @@ import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.concurrent.atomic.AtomicReference;
@@ -256,6 +260,42 @@ public class PersistentHashMap<K,V> extends AbstractUnmodMap<K,V>
         throw new InvalidObjectException("Proxy required");
     }
 
+    // Writes the trie as-is for PaguroCodec.
+    void encode(PaguroCodec.Writer w) throws IOException {
+        w.writeItem(equator);
+        w.out.writeInt(size);
+        w.out.writeBoolean(hasNull);
+        if (hasNull) {
+            w.writeItem(nullValue);
+        }
+        w.out.writeBoolean(root != null);
+        if (root != null) {
+            encodeNode(root, w);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K,V> PersistentHashMap<K,V> decode(PaguroCodec.Reader r)
+            throws IOException, ClassNotFoundException {
+        Equator<K> eq = (Equator<K>) r.readItem();
+        int size = r.readLength();
+        boolean hasNull = r.in.readBoolean();
+        V nullValue = hasNull ? (V) r.readItem() : null;
+        INode<K,V> root = r.in.readBoolean() ? decodeNode(eq, r) : null;
+        PersistentHashMap<K,V> ret = new PersistentHashMap<>(eq, size, root, hasNull, nullValue);
+        // The trie was laid out by the hash codes in the JVM that wrote it.  Enums, objects that
+        // use the identity hash code, and anything containing them hash differently here, so if
+        // any key isn't where this JVM would look for it, build the map again from its entries.
+        if ( (root == null) || hashesMatch(root, eq, 0, 0) ) {
+            return ret;
+        }
+        MutableHashMap<K,V> mu = PersistentHashMap.<K,V>empty(eq).mutable();
+        for (UnEntry<K,V> entry : ret) {
+            mu.assoc(entry.getKey(), entry.getValue());
+        }
+        return mu.immutable();
+    }
+
     // ===================================== Instance Methods =====================================
 //    /** Not sure I like this - could disappear. */
 //    boolean hasNull() { return hasNull; }
@@ -366,6 +406,22 @@ public class PersistentHashMap<K,V> extends AbstractUnmodMap<K,V>
         return new PersistentHashMap<>(equator, size - 1, newroot, hasNull, nullValue);
     }
 
+    /**
+     Reports the depth of the trie and how many HashCollisionNodes it has.  Use this to find out
+     whether your keys' hash codes are spread out well enough, or whether you should build this map
+     with a spreading Equator (see {@link Equator#spreading()}).  O(n).
+     */
+    public TrieStats trieStats() { return TrieStats.of(root, hasNull); }
+
+    /** Reports the memory used by this map's internal structure (see {@link Footprint}). */
+    public Footprint footprint() { return Footprint.of(this); }
+
+    void measure(Footprint.Builder b) {
+        // equator, root, nullValue, size, hasNull
+        b.node(this, "PersistentHashMap", 0, 0, Footprint.objectBytes(3, 5));
+        measureNode(root, b);
+    }
+
     public static final class MutableHashMap<K,V> extends AbstractUnmodMap<K,V>
             implements MutableMap<K,V> {
 
@@ -495,12 +551,301 @@ public class PersistentHashMap<K,V> extends AbstractUnmodMap<K,V>
             return count;
         }
 
+        /** Same as {@link PersistentHashMap#trieStats()}. */
+        public TrieStats trieStats() {
+            ensureEditable();
+            return TrieStats.of(root, hasNull);
+        }
+
+        void measure(Footprint.Builder b) {
+            // edit, equator, root, nullValue, leafFlag, count, hasNull
+            b.node(this, "MutableHashMap", 0, 0, Footprint.objectBytes(5, 5));
+            measureNode(root, b);
+        }
+
         private void ensureEditable() {
             if(edit.get() == null)
                 throw new IllegalAccessError("Mutable used after immutable! call");
         }
     }
 
+    private static final byte ARRAY_NODE = 0;
+    private static final byte BITMAP_NODE = 1;
+    private static final byte COLLISION_NODE = 2;
+
+    private static void encodeNode(INode<?,?> n, PaguroCodec.Writer w) throws IOException {
+        if (n instanceof ArrayNode) {
+            ArrayNode<?,?> an = (ArrayNode<?,?>) n;
+            w.out.writeByte(ARRAY_NODE);
+            if (!w.startNode(an)) {
+                return;
+            }
+            // Which of the 32 children are present.
+            int present = 0;
+            for (int i = 0; i < an.array.length; i++) {
+                if (an.array[i] != null) {
+                    present |= 1 << i;
+                }
+            }
+            w.out.writeInt(present);
+            for (INode<?,?> child : an.array) {
+                if (child != null) {
+                    encodeNode(child, w);
+                }
+            }
+            w.endNode(an);
+        } else if (n instanceof BitmapIndexedNode) {
+            BitmapIndexedNode<?,?> bin = (BitmapIndexedNode<?,?>) n;
+            w.out.writeByte(BITMAP_NODE);
+            if (!w.startNode(bin)) {
+                return;
+            }
+            w.out.writeInt(bin.bitmap);
+            // A null key means the value is a sub-node.
+            Object[] array = bin.array;
+            for (int i = 0; i < 2 * Integer.bitCount(bin.bitmap); i += 2) {
+                w.writeItem(array[i]);
+                if (array[i] == null) {
+                    encodeNode((INode<?,?>) array[i + 1], w);
+                } else {
+                    w.writeItem(array[i + 1]);
+                }
+            }
+            w.endNode(bin);
+        } else {
+            HashCollisionNode<?,?> hcn = (HashCollisionNode<?,?>) n;
+            w.out.writeByte(COLLISION_NODE);
+            if (!w.startNode(hcn)) {
+                return;
+            }
+            w.out.writeInt(hcn.hash);
+            w.out.writeBoolean(hcn.comp != null);
+            w.writeItems(hcn.array, 2 * hcn.count);
+            w.endNode(hcn);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K,V> INode<K,V> decodeNode(Equator<K> eq, PaguroCodec.Reader r)
+            throws IOException, ClassNotFoundException {
+        byte type = r.in.readByte();
+        if ( (type != ARRAY_NODE) && (type != BITMAP_NODE) && (type != COLLISION_NODE) ) {
+            throw new StreamCorruptedException("Unknown hash map node type: " + type);
+        }
+        INode<K,V> ret = r.backRef();
+        if (ret != null) {
+            return ret;
+        }
+        if (type == ARRAY_NODE) {
+            int present = r.in.readInt();
+            INode<K,V>[] array = genericNodeArray(32);
+            for (int i = 0; i < array.length; i++) {
+                if ((present & (1 << i)) != 0) {
+                    array[i] = decodeNode(eq, r);
+                }
+            }
+            ret = new ArrayNode<>(eq, null, Integer.bitCount(present), array);
+        } else if (type == BITMAP_NODE) {
+            int bitmap = r.in.readInt();
+            Object[] array = new Object[2 * Integer.bitCount(bitmap)];
+            for (int i = 0; i < array.length; i += 2) {
+                array[i] = r.readItem();
+                array[i + 1] = (array[i] == null) ? decodeNode(eq, r) : r.readItem();
+            }
+            ret = new BitmapIndexedNode<>(eq, null, bitmap, array);
+        } else {
+            int hash = r.in.readInt();
+            boolean sorted = r.in.readBoolean();
+            Object[] array = r.readItems();
+            if ( (array.length < 4) || ((array.length % 2) != 0) ) {
+                throw new StreamCorruptedException("Bad hash collision node length: " +
+                                                   array.length);
+            }
+            // The keys were sorted with the comparator this finds for them.
+            Comparator<K> comp = sorted ? HashCollisionNode.comparatorFor(eq, (K) array[0],
+                                                                           (K) array[2])
+                                        : null;
+            ret = new HashCollisionNode<>(eq, null, hash, array.length / 2, comp, array);
+        }
+        return r.register(ret);
+    }
+
+    // Helper function to avoid type warnings.
+    @SuppressWarnings("unchecked")
+    private static <K,V> INode<K,V>[] genericNodeArray(int size) {
+        return (INode<K,V>[]) new INode<?,?>[size];
+    }
+
+    // True if every key's hash (as this JVM computes it) leads to where the key is in the trie.
+    // prefix holds the low shift bits of the hash, which are the path to this node.
+    @SuppressWarnings("unchecked")
+    private static <K> boolean hashesMatch(INode<?,?> n, Equator<K> eq, int shift, int prefix) {
+        if (n instanceof ArrayNode) {
+            INode<?,?>[] array = ((ArrayNode<?,?>) n).array;
+            for (int i = 0; i < array.length; i++) {
+                if ( (array[i] != null) &&
+                     !hashesMatch(array[i], eq, shift + 5, prefix | (i << shift)) ) {
+                    return false;
+                }
+            }
+        } else if (n instanceof BitmapIndexedNode) {
+            BitmapIndexedNode<?,?> bin = (BitmapIndexedNode<?,?>) n;
+            int i = 0;
+            for (int bits = bin.bitmap; bits != 0; bits &= bits - 1, i += 2) {
+                int path = prefix | (Integer.numberOfTrailingZeros(bits) << shift);
+                Object key = bin.array[i];
+                if (key == null) {
+                    if (!hashesMatch((INode<?,?>) bin.array[i + 1], eq, shift + 5, path)) {
+                        return false;
+                    }
+                } else if (lowBits(eq.hash((K) key), shift + 5) != path) {
+                    return false;
+                }
+            }
+        } else {
+            HashCollisionNode<?,?> hcn = (HashCollisionNode<?,?>) n;
+            if (lowBits(hcn.hash, shift) != prefix) {
+                return false;
+            }
+            for (int i = 0; i < 2 * hcn.count; i += 2) {
+                if (eq.hash((K) hcn.array[i]) != hcn.hash) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int lowBits(int hash, int numBits) {
+        return (numBits >= 32) ? hash : hash & ((1 << numBits) - 1);
+    }
+
+    private static void measureNode(INode<?,?> n, Footprint.Builder b) {
+        if (n instanceof ArrayNode) {
+            ArrayNode<?,?> an = (ArrayNode<?,?>) n;
+            // equator, array, edit, count
+            if (b.node(an, "ArrayNode", an.array.length, an.count,
+                       Footprint.objectBytes(3, 4) +
+                       Footprint.arrayBytes(an.array.length, Footprint.REF))) {
+                for (INode<?,?> child : an.array) {
+                    if (child != null) {
+                        measureNode(child, b);
+                    }
+                }
+            }
+        } else if (n instanceof BitmapIndexedNode) {
+            BitmapIndexedNode<?,?> bin = (BitmapIndexedNode<?,?>) n;
+            Object[] array = bin.array;
+            // equator, array, edit, bitmap
+            if (b.node(bin, "BitmapIndexedNode", array.length / 2, Integer.bitCount(bin.bitmap),
+                       Footprint.objectBytes(3, 4) +
+                       Footprint.arrayBytes(array.length, Footprint.REF))) {
+                for (int i = 0; i < array.length; i += 2) {
+                    if ( (array[i] == null) && (array[i + 1] != null) ) {
+                        measureNode((INode<?,?>) array[i + 1], b);
+                    }
+                }
+            }
+        } else if (n instanceof HashCollisionNode) {
+            HashCollisionNode<?,?> hcn = (HashCollisionNode<?,?>) n;
+            // equator, array, comp, edit, hash, count
+            b.node(hcn, "HashCollisionNode", hcn.array.length / 2, hcn.count,
+                   Footprint.objectBytes(4, 8) +
+                   Footprint.arrayBytes(hcn.array.length, Footprint.REF));
+        }
+    }
+
+    /** The shape of a hash trie as reported by {@link PersistentHashMap#trieStats()}. */
+    public static final class TrieStats {
+        private final int entries;
+        private final int trieEntries;
+        private final int maxDepth;
+        private final long totalDepth;
+        private final int bitmapNodes;
+        private final int arrayNodes;
+        private final int collisionNodes;
+        private final int collisionEntries;
+
+        private TrieStats(int e, int te, int md, long td, int bn, int an, int cn, int ce) {
+            entries = e; trieEntries = te; maxDepth = md; totalDepth = td;
+            bitmapNodes = bn; arrayNodes = an; collisionNodes = cn; collisionEntries = ce;
+        }
+
+        private static TrieStats of(INode<?,?> root, boolean hasNull) {
+            // counts: entries, maxDepth, bitmapNodes, arrayNodes, collisionNodes, collisionEntries
+            int[] counts = new int[6];
+            long[] totalDepth = new long[1];
+            if (root != null) {
+                countNodes(root, 1, counts, totalDepth);
+            }
+            // The null key is stored outside the trie.
+            return new TrieStats(hasNull ? counts[0] + 1 : counts[0], counts[0], counts[1],
+                                 totalDepth[0], counts[2], counts[3], counts[4], counts[5]);
+        }
+
+        private static void countNodes(INode<?,?> n, int depth, int[] counts, long[] totalDepth) {
+            if (depth > counts[1]) {
+                counts[1] = depth;
+            }
+            if (n instanceof ArrayNode) {
+                counts[3]++;
+                for (INode<?,?> child : ((ArrayNode<?,?>) n).array) {
+                    if (child != null) {
+                        countNodes(child, depth + 1, counts, totalDepth);
+                    }
+                }
+            } else if (n instanceof HashCollisionNode) {
+                HashCollisionNode<?,?> hcn = (HashCollisionNode<?,?>) n;
+                counts[4]++;
+                counts[5] += hcn.count;
+                counts[0] += hcn.count;
+                totalDepth[0] += ((long) depth) * hcn.count;
+            } else {
+                counts[2]++;
+                Object[] array = ((BitmapIndexedNode<?,?>) n).array;
+                for (int i = 0; i < array.length; i += 2) {
+                    if (array[i] != null) {
+                        counts[0]++;
+                        totalDepth[0] += depth;
+                    } else if (array[i + 1] != null) {
+                        countNodes((INode<?,?>) array[i + 1], depth + 1, counts, totalDepth);
+                    }
+                }
+            }
+        }
+
+        /** Number of entries in the map (including any null key). */
+        public int entries() { return entries; }
+
+        /** Number of nodes on the longest path from the root to an entry.  0 for an empty trie. */
+        public int maxDepth() { return maxDepth; }
+
+        /** Average number of nodes on the path from the root to each entry in the trie. */
+        public double averageDepth() {
+            return (trieEntries == 0) ? 0.0 : ((double) totalDepth) / trieEntries;
+        }
+
+        /** Number of BitmapIndexedNodes (the usual kind of node). */
+        public int bitmapNodes() { return bitmapNodes; }
+
+        /** Number of ArrayNodes (made when a BitmapIndexedNode gets more than 16 children). */
+        public int arrayNodes() { return arrayNodes; }
+
+        /** Number of HashCollisionNodes, each holding keys with exactly the same hash. */
+        public int collisionNodes() { return collisionNodes; }
+
+        /** Number of entries stored in HashCollisionNodes. */
+        public int collisionEntries() { return collisionEntries; }
+
+        /** {@inheritDoc} */
+        @Override public String toString() {
+            return "TrieStats(entries=" + entries + " maxDepth=" + maxDepth +
+                   " averageDepth=" + averageDepth() + " bitmapNodes=" + bitmapNodes +
+                   " arrayNodes=" + arrayNodes + " collisionNodes=" + collisionNodes +
+                   " collisionEntries=" + collisionEntries + ")";
+        }
+    }
+
     private interface INode<K,V> {
         INode<K,V> assoc(int shift, int hash, K key, V val, Box<Box> addedLeaf);
 
@@ -596,7 +941,7 @@ public class PersistentHashMap<K,V> extends AbstractUnmodMap<K,V>
         }
 
         @Override public <R> UnmodIterator<R> iterator(Fn2<K, V, R> aFn) {
-            return new Iter<>(array, aFn);
+            return new NodeIter<>(this, aFn);
         }
 
 //        @Override public <R> R kvreduce(Fn3<R,K,V,R> f, R init){
@@ -726,50 +1071,6 @@ public class PersistentHashMap<K,V> extends AbstractUnmodMap<K,V>
         @Override public String toString() {
             return UnmodIterable.toString("ArrayNode", this);
         }
-
-        private static class Iter<K,V,R> implements UnmodIterator<R> {
-//            , Serializable {
-//            // For serializable.  Make sure to change whenever internal data format changes.
-//            private static final long serialVersionUID = 20160903192900L;
-
-            private final INode<K,V>[] array;
-            private Fn2<K, V, R> aFn;
-            private int i = 0;
-            private UnmodIterator<R> nestedIter;
-
-            private Iter(INode<K,V>[] array, Fn2<K,V,R> aFn){
-                this.array = array;
-                this.aFn = aFn;
-            }
-
-            @Override public boolean hasNext(){
-                while(true) {
-                    if (nestedIter != null) {
-                        if (nestedIter.hasNext()) {
-                            return true;
-                        } else {
-                            nestedIter = null;
-                        }
-                    }
-                    if (i < array.length) {
-                        INode<K,V> node = array[i++];
-                        if (node != null) {
-                            nestedIter = node.iterator(aFn);
-                        }
-                    } else {
-                        return false;
-                    }
-                }
-            }
-
-            @Override public R next(){
-                if (hasNext()) {
-                    return nestedIter.next();
-                } else {
-                    throw new NoSuchElementException();
-                }
-            }
-        }
     } // end class ArrayNode<K,V>
 
     @SuppressWarnings("unchecked")
@@ -914,7 +1215,7 @@ public class PersistentHashMap<K,V> extends AbstractUnmodMap<K,V>
 //        @Override public Sequence<UnEntry<K,V>> nodeSeq() { return NodeSeq.create(array); }
 
         @Override public <R> UnmodIterator<R> iterator(Fn2<K, V, R> aFn){
-            return new NodeIter<>(array, aFn);
+            return new NodeIter<>(this, aFn);
         }
 
 //        @Override public <R> R kvreduce(Fn3<R,K,V,R> f, R init){
@@ -1057,37 +1358,125 @@ public class PersistentHashMap<K,V> extends AbstractUnmodMap<K,V>
         }
     }
 
+    /**
+     Holds keys whose hashes are all the same.  When the keys can be ordered (the map's Equator is
+     a ComparisonContext, or it's the default Equator and the keys are all of one class which
+     implements Comparable of itself) they are kept sorted and found with a binary search, so that lots of colliding
+     keys (accidental or malicious) make lookups O(log n) instead of O(n).  This is like the
+     treeification java.util.HashMap does.  If a key comes along that can't be compared with the
+     others, the node goes back to being unsorted with a linear search.
+     */
     private final static class HashCollisionNode<K,V> implements INode<K,V>{
         private final Equator<K> equator;
         final int hash;
         int count;
         Object[] array;
+        // Keys are sorted by this, or unsorted if it's null.
+        Comparator<K> comp;
         final AtomicReference<Thread> edit;
 
         HashCollisionNode(Equator<K> eq, AtomicReference<Thread> edit, int hash, int count,
-                          Object... array){
+                          Comparator<K> comp, Object... array){
             this.equator = eq;
             this.edit = edit;
             this.hash = hash;
             this.count = count;
+            this.comp = comp;
             this.array = array;
         }
 
+        /** Makes a new node from the first two keys to have the same hash. */
+        static <K,V> HashCollisionNode<K,V> of(Equator<K> eq, int hash, K k1, V v1, K k2, V v2) {
+            Comparator<K> c = comparatorFor(eq, k1, k2);
+            Object[] array = ( (c != null) && (c.compare(k1, k2) > 0) )
+                             ? new Object[] {k2, v2, k1, v1}
+                             : new Object[] {k1, v1, k2, v2};
+            return new HashCollisionNode<>(eq, null, hash, 2, c, array);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <K> Comparator<K> comparatorFor(Equator<K> eq, K k1, K k2) {
+            if (eq instanceof ComparisonContext) {
+                return (ComparisonContext<K>) eq;
+            }
+            if ( ( (eq == Equator.Equat.DEFAULT) || (eq == Equator.Equat.SPREAD) ) &&
+                 (k1.getClass() == k2.getClass()) && isSelfComparable(k1.getClass()) ) {
+                return Equator.defaultComparator();
+            }
+            return null;
+        }
+
+        // True if c implements Comparable<c>, so that any two of its instances can be compared.
+        // Like java.util.HashMap.comparableClassFor(), this only looks at the interfaces c
+        // declares itself.
+        private static boolean isSelfComparable(Class<?> c) {
+            if (c == String.class) {
+                return true;
+            }
+            for (Type t : c.getGenericInterfaces()) {
+                if (t instanceof ParameterizedType) {
+                    ParameterizedType p = (ParameterizedType) t;
+                    Type[] args = p.getActualTypeArguments();
+                    if ( (p.getRawType() == Comparable.class) && (args.length == 1) &&
+                         (args[0] == c) ) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        // The comparator to use once this key is added: ours, or null if the key can't be
+        // compared with the ones we have.
+        private Comparator<K> compFor(K key) {
+            if ( (comp == null) || (equator instanceof ComparisonContext) ) {
+                return comp;
+            }
+            return (key.getClass() == array[0].getClass()) ? comp : null;
+        }
+
+        // Where a new key goes in the array: at the end if unsorted, otherwise in sorted order.
+        private int insertIndex(Comparator<K> c, K key) {
+            if (c == null) {
+                return 2 * count;
+            }
+            int lo = 0;
+            int hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (c.compare(k(array, 2 * mid), key) <= 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return 2 * lo;
+        }
+
+        // Returns a copy of the array of the given length with the new pair inserted.
+        private Object[] insertPair(Comparator<K> c, K key, V val, int length) {
+            int idx = insertIndex(c, key);
+            Object[] newArray = new Object[length];
+            System.arraycopy(array, 0, newArray, 0, idx);
+            newArray[idx] = key;
+            newArray[idx + 1] = val;
+            System.arraycopy(array, idx, newArray, idx + 2, 2 * count - idx);
+            return newArray;
+        }
+
         @Override public INode<K,V> assoc(int shift, int hash, K key, V val, Box<Box> addedLeaf) {
             if(hash == this.hash) {
                 int idx = findIndex(key);
                 if(idx != -1) {
                     if(array[idx + 1] == val)
                         return this;
-                    return new HashCollisionNode<>(equator, null, hash, count,
+                    return new HashCollisionNode<>(equator, null, hash, count, comp,
                                                    cloneAndSet(array, idx + 1, val));
                 }
-                Object[] newArray = new Object[2 * (count + 1)];
-                System.arraycopy(array, 0, newArray, 0, 2 * count);
-                newArray[2 * count] = key;
-                newArray[2 * count + 1] = val;
+                Comparator<K> c = compFor(key);
+                Object[] newArray = insertPair(c, key, val, 2 * (count + 1));
                 addedLeaf.val = addedLeaf;
-                return new HashCollisionNode<>(equator, edit, hash, count + 1, newArray);
+                return new HashCollisionNode<>(equator, edit, hash, count + 1, c, newArray);
             }
             // nest it in a bitmap node
             return new BitmapIndexedNode<K,V>(equator, null, bitpos(this.hash, shift),
@@ -1101,7 +1490,7 @@ public class PersistentHashMap<K,V> extends AbstractUnmodMap<K,V>
                 return this;
             if(count == 1)
                 return null;
-            return new HashCollisionNode<>(equator, null, hash, count - 1,
+            return new HashCollisionNode<>(equator, null, hash, count - 1, comp,
                                            removePair(array, idx/2));
         }
 
@@ -1126,7 +1515,9 @@ public class PersistentHashMap<K,V> extends AbstractUnmodMap<K,V>
 
 //        @Override public Sequence<UnEntry<K,V>> nodeSeq() { return NodeSeq.create(array); }
 
-        @Override public <R> UnmodIterator<R> iterator(Fn2<K, V, R> aFn) { return new NodeIter<>(array, aFn); }
+        @Override public <R> UnmodIterator<R> iterator(Fn2<K, V, R> aFn) {
+            return new NodeIter<>(this, aFn);
+        }
 
 //        @Override public <R> R kvreduce(Fn3<R,K,V,R> f, R init){
 //            return doKvreduce(array, f, init);
@@ -1140,6 +1531,32 @@ public class PersistentHashMap<K,V> extends AbstractUnmodMap<K,V>
 //        }
 
         private int findIndex(K key){
+            if ( (comp != null) && (compFor(key) != null) ) {
+                int lo = 0;
+                int hi = count - 1;
+                while (lo <= hi) {
+                    int mid = (lo + hi) >>> 1;
+                    int c = comp.compare(k(array, 2 * mid), key);
+                    if (c < 0) {
+                        lo = mid + 1;
+                    } else if (c > 0) {
+                        hi = mid - 1;
+                    } else {
+                        // compare() == 0 doesn't have to mean eq(), so check every key that
+                        // compares the same.
+                        for (int i = mid; (i >= 0) && (comp.compare(k(array, 2 * i), key) == 0);
+                             i--) {
+                            if (equator.eq(key, k(array, 2 * i))) { return 2 * i; }
+                        }
+                        for (int i = mid + 1;
+                             (i < count) && (comp.compare(k(array, 2 * i), key) == 0); i++) {
+                            if (equator.eq(key, k(array, 2 * i))) { return 2 * i; }
+                        }
+                        return -1;
+                    }
+                }
+                return -1;
+            }
             for (int i = 0; i < 2*count; i+=2) {
                 if (equator.eq(key, k(array, i))) { return i; }
             }
@@ -1151,17 +1568,18 @@ public class PersistentHashMap<K,V> extends AbstractUnmodMap<K,V>
                 return this;
             Object[] newArray = new Object[2*(count+1)]; // make room for next assoc
             System.arraycopy(array, 0, newArray, 0, 2*count);
-            return new HashCollisionNode<>(equator, edit, hash, count, newArray);
+            return new HashCollisionNode<>(equator, edit, hash, count, comp, newArray);
         }
 
         private HashCollisionNode<K,V> ensureEditable(AtomicReference<Thread> edit, int count,
-                                                      Object[] array){
+                                                      Comparator<K> comp, Object[] array){
             if(this.edit == edit) {
                 this.array = array;
                 this.count = count;
+                this.comp = comp;
                 return this;
             }
-            return new HashCollisionNode<>(equator, edit, hash, count, array);
+            return new HashCollisionNode<>(equator, edit, hash, count, comp, array);
         }
 
         private HashCollisionNode<K,V> editAndSet(AtomicReference<Thread> edit, int i, Object a) {
@@ -1170,14 +1588,6 @@ public class PersistentHashMap<K,V> extends AbstractUnmodMap<K,V>
             return editable;
         }
 
-        private HashCollisionNode<K,V> editAndSet(AtomicReference<Thread> edit, int i, Object a,
-                                                  int j, Object b) {
-            HashCollisionNode<K,V> editable = ensureEditable(edit);
-            editable.array[i] = a;
-            editable.array[j] = b;
-            return editable;
-        }
-
 
         @Override public INode<K,V> assoc(AtomicReference<Thread> edit, int shift, int hash,
                                           K key, V val, Box<Box> addedLeaf) {
@@ -1188,19 +1598,21 @@ public class PersistentHashMap<K,V> extends AbstractUnmodMap<K,V>
                         return this;
                     return editAndSet(edit, idx+1, val);
                 }
+                Comparator<K> c = compFor(key);
                 if (array.length > 2*count) {
                     addedLeaf.val = addedLeaf;
-                    HashCollisionNode<K,V> editable =
-                            editAndSet(edit, 2*count, key, 2*count+1, val);
+                    HashCollisionNode<K,V> editable = ensureEditable(edit);
+                    int i = editable.insertIndex(c, key);
+                    System.arraycopy(editable.array, i, editable.array, i + 2, 2*count - i);
+                    editable.array[i] = key;
+                    editable.array[i + 1] = val;
+                    editable.comp = c;
                     editable.count++;
                     return editable;
                 }
-                Object[] newArray = new Object[array.length + 2];
-                System.arraycopy(array, 0, newArray, 0, array.length);
-                newArray[array.length] = key;
-                newArray[array.length + 1] = val;
+                Object[] newArray = insertPair(c, key, val, array.length + 2);
                 addedLeaf.val = addedLeaf;
-                return ensureEditable(edit, count + 1, newArray);
+                return ensureEditable(edit, count + 1, c, newArray);
             }
             // nest it in a bitmap node
             return new BitmapIndexedNode<K,V>(equator, edit, bitpos(this.hash, shift),
@@ -1217,8 +1629,14 @@ public class PersistentHashMap<K,V> extends AbstractUnmodMap<K,V>
             if(count == 1)
                 return null;
             HashCollisionNode<K,V> editable = ensureEditable(edit);
-            editable.array[idx] = editable.array[2*count-2];
-            editable.array[idx+1] = editable.array[2*count-1];
+            if (comp == null) {
+                editable.array[idx] = editable.array[2*count-2];
+                editable.array[idx+1] = editable.array[2*count-1];
+            } else {
+                // Keep them in order
+                System.arraycopy(editable.array, idx + 2, editable.array, idx,
+                                 2*count - idx - 2);
+            }
             editable.array[2*count-2] = editable.array[2*count-1] = null;
             editable.count--;
             return editable;
@@ -1342,8 +1760,7 @@ public static void main(String[] args){
                                                int key2hash, K key2, V val2) {
         int key1hash = equator.hash(key1);
         if(key1hash == key2hash)
-            return new HashCollisionNode<>(equator, null, key1hash, 2,
-                                           new Object[] {key1, val1, key2, val2});
+            return HashCollisionNode.of(equator, key1hash, key1, val1, key2, val2);
         Box<Box> addedLeaf = new Box<>(null);
         AtomicReference<Thread> edit = new AtomicReference<>();
         return BitmapIndexedNode.<K,V>empty(equator)
@@ -1356,8 +1773,7 @@ public static void main(String[] args){
                                                K key2, V val2) {
         int key1hash = equator.hash(key1);
         if(key1hash == key2hash)
-            return new HashCollisionNode<>(equator, null, key1hash, 2,
-                                           new Object[] {key1, val1, key2, val2});
+            return HashCollisionNode.of(equator, key1hash, key1, val1, key2, val2);
         Box<Box> addedLeaf = new Box<>(null);
         return BitmapIndexedNode.<K,V>empty(equator)
                 .assoc(edit, shift, key1hash, key1, val1, addedLeaf)
@@ -1368,83 +1784,87 @@ public static void main(String[] args){
         return 1 << mask(hash, shift);
     }
 
+    /**
+     Iterates the whole tree under a node with one explicit stack instead of a chain of nested
+     per-node iterators, so next() doesn't bounce through several virtual calls and iterating
+     the whole map only allocates this one object (plus whatever aFn returns).
+     */
     private static final class NodeIter<K,V,R> implements UnmodIterator<R> {
-//        , Serializable {
-//        // For serializable.  Make sure to change whenever internal data format changes.
-//        private static final long serialVersionUID = 20160903192900L;
-        final Object[] array;
-        private Fn2<K, V, R> aFn;
-        private int mutableIndex = 0;
-        private R nextEntry = null;
+        // 7 levels of 5 bits uses up a 32-bit hash, plus one for a HashCollisionNode at the bottom.
+        private static final int MAX_DEPTH = 8;
+
+        private final Fn2<K,V,R> aFn;
+        // The array of each node on the path from the root to the node we're in now.
+        private final Object[][] arrays = new Object[MAX_DEPTH][];
+        // Where we are in each of those arrays.
+        private final int[] indices = new int[MAX_DEPTH];
+        // ArrayNodes have only sub-nodes.  The others have key/value pairs where a null key means
+        // the value is a sub-node (or empty, if that's null too).
+        private final boolean[] isArrayNode = new boolean[MAX_DEPTH];
+        private int depth = -1;
+
+        private K nextKey = null;
+        private V nextVal = null;
         private boolean absent = true;
-        private UnmodIterator<R> nextIter;
 
-        NodeIter(Object[] array, Fn2<K,V,R> aFn){
-            this.array = array;
+        NodeIter(INode<K,V> root, Fn2<K,V,R> aFn) {
             this.aFn = aFn;
+            push(root);
         }
 
-        private boolean advance(){
-//            while (i < array.length) {
-//                K key = k(array, i);
-//                Object nodeOrVal = array[i+1];
-//                i += 2;
-//                if (key != null) {
-//                    nextEntry = Tuple2.of(key, (V) nodeOrVal);
-//                    return true;
-//                } else if(nodeOrVal != null) {
-//                    Iterator<UnEntry<K,V>> iter = ((INode<K,V>) nodeOrVal).iterator();
-//                    if (iter != null && iter.hasNext()) {
-//                        nextIter = iter;
-//                        return true;
-//                    }
-//                }
-//            }
-            while (mutableIndex < array.length) {
-                int i = mutableIndex;
-                mutableIndex = i + 2;
-                if (array[i] != null) {
-                    nextEntry = aFn.apply(k(array, i), v(array, i + 1));
-                    absent = false;
-                    return true;
+        private void push(INode<K,V> node) {
+            depth++;
+            if (node instanceof ArrayNode) {
+                arrays[depth] = ((ArrayNode<K,V>) node).array;
+                isArrayNode[depth] = true;
+            } else {
+                arrays[depth] = (node instanceof BitmapIndexedNode)
+                                ? ((BitmapIndexedNode<K,V>) node).array
+                                : ((HashCollisionNode<K,V>) node).array;
+                isArrayNode[depth] = false;
+            }
+            indices[depth] = 0;
+        }
+
+        private boolean advance() {
+            while (depth >= 0) {
+                Object[] array = arrays[depth];
+                int i = indices[depth];
+                if (i >= array.length) {
+                    arrays[depth] = null;
+                    depth--;
+                } else if (isArrayNode[depth]) {
+                    indices[depth] = i + 1;
+                    if (array[i] != null) {
+                        push(iNode(array, i));
+                    }
                 } else {
-                    INode<K,V> node = iNode(array, i + 1);
-                    if (node != null) {
-                        UnmodIterator<R> iter = node.iterator(aFn);
-                        if (iter != null && iter.hasNext()) {
-                            nextIter = iter;
-                            return true;
-                        }
+                    indices[depth] = i + 2;
+                    if (array[i] != null) {
+                        nextKey = k(array, i);
+                        nextVal = v(array, i + 1);
+                        absent = false;
+                        return true;
+                    }
+                    if (array[i + 1] != null) {
+                        push(iNode(array, i + 1));
                     }
                 }
             }
             return false;
         }
 
-        @Override public boolean hasNext(){
-            //noinspection SimplifiableIfStatement
-            if (!absent || nextIter != null) {
-                return true;
-            }
-            return advance();
-        }
+        @Override public boolean hasNext() { return !absent || advance(); }
 
-        @Override public R next(){
-            R ret = nextEntry;
-            if(!absent) {
-                nextEntry = null;
-                absent = true;
-                return ret;
-            } else if(nextIter != null) {
-                ret = nextIter.next();
-                if ( !nextIter.hasNext()) {
-                    nextIter = null;
-                }
-                return ret;
-            } else if(advance()) {
-                return next();
+        @Override public R next() {
+            if (absent && !advance()) {
+                throw new NoSuchElementException();
             }
-            throw new NoSuchElementException();
+            absent = true;
+            R ret = aFn.apply(nextKey, nextVal);
+            nextKey = null;
+            nextVal = null;
+            return ret;
         }
     }
 
@@ -163,6 +163,14 @@ public class PersistentHashSet<E> extends AbstractUnmodSet<E>
 
     @Override public int size() { return impl.size(); }
 
+    /** Reports the memory used by this set's internal structure (see {@link Footprint}). */
+    public Footprint footprint() { return Footprint.of(this); }
+
+    void measure(Footprint.Builder b) {
+        b.node(this, "PersistentHashSet", 0, 0, Footprint.objectBytes(1, 0));
+        Footprint.measure(impl, b);
+    }
+
     public MutableHashSet<E> mutable() {
         return new MutableHashSet<>(impl.mutable());
     }
@@ -176,6 +184,11 @@ public class PersistentHashSet<E> extends AbstractUnmodSet<E>
 
         @Override public int size() { return impl.size(); }
 
+        void measure(Footprint.Builder b) {
+            b.node(this, "MutableHashSet", 0, 0, Footprint.objectBytes(1, 0));
+            Footprint.measure(impl, b);
+        }
+
         @Override public MutableHashSet<E> put(E val) {
             MutableMap<E,E> m = impl.assoc(val, val);
             if (m != impl) this.impl = m;
@@ -14,6 +14,7 @@ import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
 import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.Comparator;
@@ -287,6 +288,72 @@ public class PersistentTreeMap<K,V> extends AbstractUnmodMap<K,V>
         throw new InvalidObjectException("Proxy required");
     }
 
+    // Writes the tree as-is for PaguroCodec, so reading it needs no comparisons or re-balancing.
+    void encode(PaguroCodec.Writer w) throws IOException {
+        w.writeItem(comp);
+        w.out.writeInt(size);
+        encodeNode(tree, w);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K,V> PersistentTreeMap<K,V> decode(PaguroCodec.Reader r)
+            throws IOException, ClassNotFoundException {
+        Comparator<? super K> c = (Comparator<? super K>) r.readItem();
+        if (c == null) {
+            throw new StreamCorruptedException("Comparator can't be null.");
+        }
+        int size = r.readLength();
+        return new PersistentTreeMap<>(c, decodeNode(r), size);
+    }
+
+    // Node flags
+    private static final byte PRESENT = 1;
+    private static final byte RED = 2;
+    private static final byte HAS_LEFT = 4;
+    private static final byte HAS_RIGHT = 8;
+
+    private static void encodeNode(Node<?,?> n, PaguroCodec.Writer w) throws IOException {
+        if (n == null) {
+            w.out.writeByte(0);
+            return;
+        }
+        Node<?,?> l = n.left();
+        Node<?,?> r = n.right();
+        w.out.writeByte(PRESENT | ((n instanceof Red) ? RED : 0) |
+                        ((l == null) ? 0 : HAS_LEFT) | ((r == null) ? 0 : HAS_RIGHT));
+        if (!w.startNode(n)) {
+            return;
+        }
+        w.writeItem(n.getKey());
+        w.writeItem(n.getValue());
+        if (l != null) {
+            encodeNode(l, w);
+        }
+        if (r != null) {
+            encodeNode(r, w);
+        }
+        w.endNode(n);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K,V> Node<K,V> decodeNode(PaguroCodec.Reader r)
+            throws IOException, ClassNotFoundException {
+        byte flags = r.in.readByte();
+        if ((flags & PRESENT) == 0) {
+            return null;
+        }
+        Node<K,V> ret = r.backRef();
+        if (ret != null) {
+            return ret;
+        }
+        K key = (K) r.readItem();
+        V val = (V) r.readItem();
+        Node<K,V> left = ((flags & HAS_LEFT) == 0) ? null : decodeNode(r);
+        Node<K,V> right = ((flags & HAS_RIGHT) == 0) ? null : decodeNode(r);
+        return r.register(((flags & RED) == 0) ? black(key, val, left, right)
+                                               : red(key, val, left, right));
+    }
+
     // ===================================== Instance Methods =====================================
     /**
      Returns a view of the mappings contained in this map.  The set should actually contain
@@ -653,6 +720,35 @@ public class PersistentTreeMap<K,V> extends AbstractUnmodMap<K,V>
     /** Returns the number of key/value mappings in this map. */
     @Override public int size() { return size; }
 
+    /** Reports the memory used by this map's internal structure (see {@link Footprint}). */
+    public Footprint footprint() { return Footprint.of(this); }
+
+    void measure(Footprint.Builder b) {
+        // comp, tree, size
+        b.node(this, "PersistentTreeMap", 0, 0, Footprint.objectBytes(2, 4));
+        measureNode(tree, b);
+    }
+
+    private static void measureNode(Node<?,?> n, Footprint.Builder b) {
+        if (n == null) {
+            return;
+        }
+        if ( (n instanceof BlackBranch) || (n instanceof RedBranch) ) {
+            Node<?,?> l = n.left();
+            Node<?,?> r = n.right();
+            // key, value, left, right
+            if (b.node(n, n.getClass().getSimpleName(), 2,
+                       ((l == null) ? 0 : 1) + ((r == null) ? 0 : 1),
+                       Footprint.objectBytes(4, 0))) {
+                measureNode(l, b);
+                measureNode(r, b);
+            }
+        } else {
+            // key, value
+            b.node(n, n.getClass().getSimpleName(), 0, 0, Footprint.objectBytes(2, 0));
+        }
+    }
+
     /**
      Returns an Option of the key/value pair matching the given key, or Option.none() if the key is
      not found.
@@ -252,6 +252,14 @@ public class PersistentTreeSet<E> extends AbstractUnmodSet<E>
     /** The size of this set. */
     @Override public int size() { return impl.size(); }
 
+    /** Reports the memory used by this set's internal structure (see {@link Footprint}). */
+    public Footprint footprint() { return Footprint.of(this); }
+
+    void measure(Footprint.Builder b) {
+        b.node(this, "PersistentTreeSet", 0, 0, Footprint.objectBytes(1, 0));
+        Footprint.measure(impl, b);
+    }
+
     /** {@inheritDoc} */
     @Override public ImSortedSet<E> subSet(E fromElement, E toElement) {
         return PersistentTreeSet.ofMap(impl.subMap(fromElement, toElement));
@@ -16,6 +16,7 @@ import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
 import java.util.NoSuchElementException;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -182,6 +183,71 @@ public class PersistentVector<E> extends UnmodList.AbstractUnmodList<E>
         throw new InvalidObjectException("Proxy required");
     }
 
+    // Writes the tree as-is for PaguroCodec.  Leaves are written as arrays so that a tail which
+    // later became a leaf is still shared.
+    void encode(PaguroCodec.Writer w) throws IOException {
+        w.out.writeInt(size);
+        w.out.writeInt(shift);
+        encodeNode(root, shift, w);
+        w.writeItems(tail, tail.length);
+    }
+
+    private static void encodeNode(Node node, int level, PaguroCodec.Writer w) throws IOException {
+        if (level == 0) {
+            w.writeItems(node.array, MAX_NODE_LENGTH);
+            return;
+        }
+        if (!w.startNode(node)) {
+            return;
+        }
+        // Children fill the array from the left.
+        int count = 0;
+        while ( (count < MAX_NODE_LENGTH) && (node.array[count] != null) ) {
+            count++;
+        }
+        w.out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            encodeNode((Node) node.array[i], level - NODE_LENGTH_POW_2, w);
+        }
+        w.endNode(node);
+    }
+
+    static <E> PersistentVector<E> decode(PaguroCodec.Reader r)
+            throws IOException, ClassNotFoundException {
+        int size = r.readLength();
+        int shift = r.in.readInt();
+        if ( (shift < NODE_LENGTH_POW_2) || ((shift % NODE_LENGTH_POW_2) != 0) ) {
+            throw new StreamCorruptedException("Bad vector shift: " + shift);
+        }
+        Node root = decodeNode(shift, r);
+        E[] tail = r.readItems();
+        return (size == 0) ? empty() : new PersistentVector<>(size, shift, root, tail);
+    }
+
+    private static Node decodeNode(int level, PaguroCodec.Reader r)
+            throws IOException, ClassNotFoundException {
+        if (level == 0) {
+            Object[] leaf = r.readItems();
+            if (leaf.length != MAX_NODE_LENGTH) {
+                throw new StreamCorruptedException("Bad vector leaf length: " + leaf.length);
+            }
+            return new Node(NOEDIT, leaf);
+        }
+        Node node = r.backRef();
+        if (node != null) {
+            return node;
+        }
+        int count = r.readLength();
+        if (count > MAX_NODE_LENGTH) {
+            throw new StreamCorruptedException("Bad vector node length: " + count);
+        }
+        Object[] array = new Object[MAX_NODE_LENGTH];
+        for (int i = 0; i < count; i++) {
+            array[i] = decodeNode(level - NODE_LENGTH_POW_2, r);
+        }
+        return r.register(new Node(NOEDIT, array));
+    }
+
     // ===================================== Instance Methods =====================================
 
     // IEditableCollection has this return ITransientCollection<E>,
@@ -253,6 +319,43 @@ public class PersistentVector<E> extends UnmodList.AbstractUnmodList<E>
     /** {@inheritDoc} */
     @Override public int size() { return size; }
 
+    /** Reports the memory used by this vector's internal structure (see {@link Footprint}). */
+    public Footprint footprint() { return Footprint.of(this); }
+
+    void measure(Footprint.Builder b) {
+        // root, tail, size, shift
+        b.node(this, "PersistentVector", 0, 0, Footprint.objectBytes(2, 8));
+        measureNode(root, shift, b);
+        b.node(tail, "tail", tail.length, tail.length,
+               Footprint.arrayBytes(tail.length, Footprint.REF));
+    }
+
+    // Nodes above level 0 hold other nodes.  Nodes at level 0 hold items.
+    private static void measureNode(Node node, int level, Footprint.Builder b) {
+        Object[] array = node.array;
+        if (level == 0) {
+            // edit, array
+            b.node(node, "Leaf", array.length, array.length,
+                   Footprint.objectBytes(2, 0) + Footprint.arrayBytes(array.length, Footprint.REF));
+            return;
+        }
+        int used = 0;
+        for (Object child : array) {
+            if (child != null) {
+                used++;
+            }
+        }
+        if (b.node(node, "Branch", array.length, used,
+                   Footprint.objectBytes(2, 0) +
+                   Footprint.arrayBytes(array.length, Footprint.REF))) {
+            for (Object child : array) {
+                if (child != null) {
+                    measureNode((Node) child, level - NODE_LENGTH_POW_2, b);
+                }
+            }
+        }
+    }
+
     /**
      * Inserts a new item at the end of the Vecsicle.
      * @param val the value to insert
@@ -465,6 +568,58 @@ public class PersistentVector<E> extends UnmodList.AbstractUnmodList<E>
 //        }
 //    }
 
+    /**
+     Returns a new PersistentVector of the first numItems items in this one (or this if numItems
+     is at least size()).  The leaf holding the new last item becomes the new tail and the right
+     edge of the tree is trimmed, so this is O(log n) instead of rebuilding the vector.
+     */
+    @SuppressWarnings("unchecked")
+    @Override public PersistentVector<E> take(long numItems) {
+        if (numItems < 0) { throw new IllegalArgumentException("Num items must be >= 0"); }
+        if (numItems >= size) {
+            return this;
+        }
+        if (numItems == 0) {
+            return empty();
+        }
+        int n = (int) numItems;
+        E[] oldLeaf = leafNodeArrayFor(n - 1);
+        int tailLength = ((n - 1) & LOW_BITS) + 1;
+        E[] newTail = (E[]) new Object[tailLength];
+        System.arraycopy(oldLeaf, 0, newTail, 0, tailLength);
+
+        // Index of the first item in the new tail
+        int newTailoff = n - tailLength;
+        if (newTailoff == 0) {
+            return new PersistentVector<>(n, NODE_LENGTH_POW_2, EMPTY_NODE, newTail);
+        }
+        if (newTailoff == tailoff()) {
+            // Only the tail got shorter.
+            return new PersistentVector<>(n, shift, root, newTail);
+        }
+        Node newRoot = trimRightEdge(shift, root, newTailoff - 1);
+        int newShift = shift;
+        // Remove ancestors that only have one child.
+        while ( (newShift > NODE_LENGTH_POW_2) && (newRoot.array[1] == null) ) {
+            newRoot = (Node) newRoot.array[0];
+            newShift -= NODE_LENGTH_POW_2;
+        }
+        return new PersistentVector<>(n, newShift, newRoot, newTail);
+    }
+
+    // Copies the path to lastIdx, dropping every child to the right of it.  Leaves and sub-trees
+    // to the left are shared.
+    private static Node trimRightEdge(int level, Node node, int lastIdx) {
+        int subidx = (lastIdx >>> level) & LOW_BITS;
+        Node ret = new Node(node.edit, new Object[MAX_NODE_LENGTH]);
+        System.arraycopy(node.array, 0, ret.array, 0, subidx + 1);
+        if (level > NODE_LENGTH_POW_2) {
+            ret.array[subidx] = trimRightEdge(level - NODE_LENGTH_POW_2,
+                                              (Node) node.array[subidx], lastIdx);
+        }
+        return ret;
+    }
+
     private static Node doAssoc(int level, Node node, int i, Object val) {
         Node ret = new Node(node.edit, node.array.clone());
         if (level == 0) {
@@ -540,6 +695,14 @@ public class PersistentVector<E> extends UnmodList.AbstractUnmodList<E>
             return size;
         }
 
+        void measure(Footprint.Builder b) {
+            // root, tail, size, shift
+            b.node(this, "MutableVector", 0, 0, Footprint.objectBytes(2, 8));
+            measureNode(root, shift, b);
+            b.node(tail, "tail", tail.length, size - tailoff(),
+                   Footprint.arrayBytes(tail.length, Footprint.REF));
+        }
+
         @SuppressWarnings("unchecked")
         @Override  public PersistentVector<F> immutable() {
             ensureEditable();
@@ -18,8 +18,12 @@ import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.logging.Logger;
 
 import org.organicdesign.fp.indent.Indented;
 import org.organicdesign.fp.tuple.Tuple2;
@@ -110,6 +114,10 @@ public abstract class RrbTree<E> implements BaseList<E>, Indented {
             if (focus.length <= focusLength) {
                 focus = arrayCopy(focus, STRICT_NODE_LENGTH, null);
             }
+            // An empty focus can be left anywhere (e.g. at 0 after a join), so move it to the end.
+            if (focusLength == 0) {
+                focusStartIndex = size;
+            }
             focus[focusLength] = val;
             focusLength++;
             size++;
@@ -146,7 +154,7 @@ public abstract class RrbTree<E> implements BaseList<E>, Indented {
 
         /** {@inheritDoc} */
         @Override public E get(int i) {
-            if ( (i < 0) || (i > size) ) {
+            if ( (i < 0) || (i >= size) ) {
                 throw new IndexOutOfBoundsException("Index: " + i + " size: " + size);
             }
 
@@ -173,6 +181,32 @@ public abstract class RrbTree<E> implements BaseList<E>, Indented {
                                 root, size);
         }
 
+        /** {@inheritDoc}  This rebuilds this tree in place. */
+        @Override public MutableRrbt<E> compact() {
+            if (!(root instanceof Relaxed)) {
+                return this;
+            }
+            MutableRrbt<E> ret = RrbTree.<E>emptyMutable().concat(this);
+            focus = ret.focus;
+            focusStartIndex = ret.focusStartIndex;
+            focusLength = ret.focusLength;
+            root = ret.root;
+            return this;
+        }
+
+        /** {@inheritDoc} */
+        @Override public RelaxationStats relaxationStats() {
+            return RelaxationStats.of(root);
+        }
+
+        @Override void measure(Footprint.Builder b) {
+            // focus, root, focusStartIndex, focusLength, size
+            b.node(this, "MutableRrbt", 0, 0, Footprint.objectBytes(2, 12));
+            b.node(focus, "focus", focus.length, focusLength,
+                   Footprint.arrayBytes(focus.length, Footprint.REF));
+            measureNode(root, b);
+        }
+
         /** {@inheritDoc} */
         @Override public String indentedStr(int indent) {
             return "RrbTree(size=" + size +
@@ -248,7 +282,16 @@ public abstract class RrbTree<E> implements BaseList<E>, Indented {
 
         /** {@inheritDoc} */
         @Override public UnmodSortedIterator<E> iterator() {
-            return new Iter(pushFocus());
+            return new Iter(root, focus, focusLength, focusStartIndex);
+        }
+
+        /** {@inheritDoc}  Each step is amortized O(1) in either direction. */
+        @Override public UnmodListIterator<E> listIterator(int index) {
+            if ( (index < 0) || (index > size) ) {
+                throw new IndexOutOfBoundsException("Expected an index between 0 and " + size +
+                                                    " but found: " + index);
+            }
+            return new ListIter<>(root, focus, focusLength, focusStartIndex, size, index);
         }
 
         /** {@inheritDoc} */
@@ -527,6 +570,13 @@ public abstract class RrbTree<E> implements BaseList<E>, Indented {
         private transient final Node<E> root;
         private final int size;
 
+        // The last leaf get() descended to, so that sequential or clustered reads don't descend
+        // the tree again.  LeafCache is immutable and has only final fields, so like
+        // String.hashCode(), a thread that reads a stale (or null) value just does the work again.
+        // Only replaced on some misses (see get()), so that threads doing scattered reads of a
+        // shared tree don't all write to it.
+        private transient LeafCache<E> leafCache = null;
+
         ImRrbt(E[] f, int fi, Node<E> r, int s) {
             focus = f; focusStartIndex = fi; root = r; size = s;
         }
@@ -579,6 +629,40 @@ public abstract class RrbTree<E> implements BaseList<E>, Indented {
             throw new InvalidObjectException("Proxy required");
         }
 
+        // Writes the tree as-is for PaguroCodec, with the branching factor so that a JVM with a
+        // different one can still read it.
+        void encode(PaguroCodec.Writer w) throws IOException {
+            w.out.writeByte(NODE_LENGTH_POW_2);
+            w.out.writeInt(size);
+            w.out.writeInt(focusStartIndex);
+            w.writeItems(focus, focus.length);
+            encodeNode(root, w);
+        }
+
+        static <E> ImRrbt<E> decode(PaguroCodec.Reader r)
+                throws IOException, ClassNotFoundException {
+            byte pow2 = r.in.readByte();
+            int size = r.readLength();
+            int focusStartIndex = r.readLength();
+            E[] focus = r.readItems();
+            Node<E> root = decodeNode(r);
+            if ( (focusStartIndex + focus.length) > size ) {
+                throw new StreamCorruptedException("Bad RrbTree focus: " + focusStartIndex);
+            }
+            if (size == 0) {
+                return empty();
+            }
+            if (pow2 == NODE_LENGTH_POW_2) {
+                return new ImRrbt<>(focus, focusStartIndex, root, size);
+            }
+            // Strict nodes from a different branching factor would be indexed wrong here, so
+            // copy the items into a new tree.
+            MutableRrbt<E> ret = emptyMutable();
+            appendLeaves(root, ret);
+            ImRrbt<E> im = ret.immutable();
+            return (focus.length == 0) ? im : im.insertAll(focusStartIndex, Arrays.asList(focus));
+        }
+
         // =================================== Instance Methods ===================================
 
         /** {@inheritDoc} */
@@ -592,8 +676,9 @@ public abstract class RrbTree<E> implements BaseList<E>, Indented {
                 return new ImRrbt<>(singleElementArray(val), size, newRoot,
                                     size + 1);
             }
+            // An empty focus can be left anywhere (e.g. at 0 after a join), so move it to the end.
             return new ImRrbt<>(insertIntoArrayAt(val, focus, focus.length, null),
-                                focusStartIndex, root,
+                                (focus.length == 0) ? size : focusStartIndex, root,
                                 size + 1);
         }
 
@@ -627,7 +712,7 @@ public abstract class RrbTree<E> implements BaseList<E>, Indented {
 
         /** {@inheritDoc} */
         @Override public E get(int i) {
-            if ( (i < 0) || (i > size) ) {
+            if ( (i < 0) || (i >= size) ) {
                 throw new IndexOutOfBoundsException("Index: " + i + " size: " + size);
             }
 
@@ -644,7 +729,21 @@ public abstract class RrbTree<E> implements BaseList<E>, Indented {
                 }
                 i -= focus.length;
             }
-            return root.get(i);
+            LeafCache<E> lc = leafCache;
+            if ( (lc != null) && (i >= lc.start) && (i < lc.end) ) {
+                return lc.items[i - lc.start];
+            }
+            // Cache the new leaf if there's nothing cached, if it's next to the cached leaf (a
+            // scan), or if i is a multiple of the node length, which any scan or cluster of reads
+            // soon hits.  Other misses, like scattered reads, don't write or allocate anything.
+            if ( (lc != null) &&
+                 ( (i < lc.start - LEAF_CACHE_DISTANCE) || (i >= lc.end + LEAF_CACHE_DISTANCE) ) &&
+                 ((i & (STRICT_NODE_LENGTH - 1)) != 0) ) {
+                return root.get(i);
+            }
+            lc = root.leafCacheFor(i, 0);
+            leafCache = lc;
+            return lc.items[i - lc.start];
         }
 
         /** {@inheritDoc} */
@@ -673,6 +772,32 @@ public abstract class RrbTree<E> implements BaseList<E>, Indented {
             return new ImRrbt<>(newFocus, idx, newRoot, size + 1);
         }
 
+        /** {@inheritDoc} */
+        @Override public ImRrbt<E> compact() {
+            if (!(root instanceof Relaxed)) {
+                return this;
+            }
+            return RrbTree.<E>emptyMutable().concat(this).immutable();
+        }
+
+        /** {@inheritDoc} */
+        @Override public RelaxationStats relaxationStats() {
+            return RelaxationStats.of(root);
+        }
+
+        @Override void measure(Footprint.Builder b) {
+            // focus, root, leafCache, focusStartIndex, size
+            b.node(this, "ImRrbt", 0, 0, Footprint.objectBytes(3, 8));
+            LeafCache<E> lc = leafCache;
+            if (lc != null) {
+                // items, start, end.  The items belong to a leaf.
+                b.node(lc, "LeafCache", 0, 0, Footprint.objectBytes(1, 8));
+            }
+            b.node(focus, "focus", focus.length, focus.length,
+                   Footprint.arrayBytes(focus.length, Footprint.REF));
+            measureNode(root, b);
+        }
+
         /** {@inheritDoc} */
         @Override public MutableRrbt<E> mutable() {
             // TODO: Should we defensively copy the root as well?
@@ -683,7 +808,16 @@ public abstract class RrbTree<E> implements BaseList<E>, Indented {
 
         /** {@inheritDoc} */
         @Override public UnmodSortedIterator<E> iterator() {
-            return new Iter(pushFocus());
+            return new Iter(root, focus, focus.length, focusStartIndex);
+        }
+
+        /** {@inheritDoc}  Each step is amortized O(1) in either direction. */
+        @Override public UnmodListIterator<E> listIterator(int index) {
+            if ( (index < 0) || (index > size) ) {
+                throw new IndexOutOfBoundsException("Expected an index between 0 and " + size +
+                                                    " but found: " + index);
+            }
+            return new ListIter<>(root, focus, focus.length, focusStartIndex, size, index);
         }
 
         /** {@inheritDoc} */
@@ -948,6 +1082,158 @@ public abstract class RrbTree<E> implements BaseList<E>, Indented {
                                           right, right.size() + rFocus.length));
         }
 
+        /**
+         Returns a new ImRrbt holding the items from fromIndex (inclusive) to toIndex (exclusive).
+         This is done with two splits, so it's O(log n) and the result is a real tree (not a view)
+         that shares most of its nodes with this one.
+
+         @param fromIndex the first item to include
+         @param toIndex one past the last item to include
+         @return a new ImRrbt of size toIndex - fromIndex.
+         */
+        public ImRrbt<E> slice(int fromIndex, int toIndex) {
+            if ( (fromIndex == 0) && (toIndex == size) ) {
+                return this;
+            }
+            // Note that this is an IllegalArgumentException, not IndexOutOfBoundsException in
+            // order to match ArrayList.
+            if (fromIndex > toIndex) {
+                throw new IllegalArgumentException("fromIndex(" + fromIndex + ") > toIndex(" +
+                                                   toIndex + ")");
+            }
+            // The text of this matches ArrayList
+            if (fromIndex < 0) { throw new IndexOutOfBoundsException("fromIndex = " + fromIndex); }
+            if (toIndex > size) { throw new IndexOutOfBoundsException("toIndex = " + toIndex); }
+
+            if (fromIndex == toIndex) {
+                return empty();
+            }
+            return split(fromIndex)._2().split(toIndex - fromIndex)._1();
+        }
+
+        /**
+         Returns a new ImRrbt of the first numItems items in this one (or this if numItems is at
+         least size()).  Unlike the lazy take() on other Iterables, this is a real tree made with
+         one split in O(log n).
+         */
+        @Override public ImRrbt<E> take(long numItems) {
+            if (numItems < 0) { throw new IllegalArgumentException("Num items must be >= 0"); }
+            if (numItems >= size) {
+                return this;
+            }
+            return split((int) numItems)._1();
+        }
+
+        /**
+         Returns a new ImRrbt without the first n items in this one (or an empty one if n is at
+         least size()).  Unlike the lazy drop() on other Iterables, this is a real tree made with
+         one split in O(log n).
+         */
+        @Override public ImRrbt<E> drop(long n) {
+            if (n < 0) { throw new IllegalArgumentException("Can't drop less than zero items."); }
+            if (n >= size) {
+                return empty();
+            }
+            return split((int) n)._2();
+        }
+
+        /**
+         Returns a new ImRrbt without the items from fromIndex (inclusive) to toIndex (exclusive).
+         This is two splits and a join, so it's O(log n) no matter how many items are removed.
+         */
+        public ImRrbt<E> removeRange(int fromIndex, int toIndex) {
+            if (fromIndex > toIndex) {
+                throw new IllegalArgumentException("fromIndex(" + fromIndex + ") > toIndex(" +
+                                                   toIndex + ")");
+            }
+            if (fromIndex < 0) { throw new IndexOutOfBoundsException("fromIndex = " + fromIndex); }
+            if (toIndex > size) { throw new IndexOutOfBoundsException("toIndex = " + toIndex); }
+            if (fromIndex == toIndex) {
+                return this;
+            }
+            Tuple2<ImRrbt<E>,ImRrbt<E>> s1 = split(fromIndex);
+            return joinThree(s1._1(), empty(), s1._2().split(toIndex - fromIndex)._2());
+        }
+
+        /**
+         Inserts all the given items at the given index, pushing the item currently at that index
+         and all subsequent items to the right.  This splits the tree, builds a tree from the new
+         items, then joins the three, so it's O(log n + k) instead of k separate inserts.
+
+         @param idx the insertion point
+         @param items the items to insert (in order)
+         @return a new ImRrbt with the items inserted.
+         */
+        public ImRrbt<E> insertAll(int idx, Iterable<? extends E> items) {
+            if ( (idx < 0) || (idx > size) ) {
+                throw new IndexOutOfBoundsException("Index: " + idx + " size: " + size);
+            }
+            if (items == null) {
+                throw new IllegalArgumentException("Can't insert a null Iterable");
+            }
+            if (idx == size) {
+                return concat(items);
+            }
+            ImRrbt<E> batch = ImRrbt.<E>empty().concat(items);
+            if (batch.size == 0) {
+                return this;
+            }
+            Tuple2<ImRrbt<E>,ImRrbt<E>> s = split(idx);
+            return joinThree(s._1(), batch, s._2());
+        }
+
+        /**
+         Replaces the items from fromIndex (inclusive) to toIndex (exclusive) with the given items.
+         The replacement can be longer or shorter than the range it replaces.  Like
+         {@link #insertAll(int, Iterable)} this is done with splits and joins so it's
+         O(log n + k).
+
+         @param fromIndex the first item to replace
+         @param toIndex one past the last item to replace
+         @param items the replacement items (in order)
+         @return a new ImRrbt with the range replaced.
+         */
+        public ImRrbt<E> replaceRange(int fromIndex, int toIndex, Iterable<? extends E> items) {
+            if (fromIndex > toIndex) {
+                throw new IllegalArgumentException("fromIndex(" + fromIndex + ") > toIndex(" +
+                                                   toIndex + ")");
+            }
+            if (fromIndex < 0) { throw new IndexOutOfBoundsException("fromIndex = " + fromIndex); }
+            if (toIndex > size) { throw new IndexOutOfBoundsException("toIndex = " + toIndex); }
+            if (items == null) {
+                throw new IllegalArgumentException("Can't replace with a null Iterable");
+            }
+            ImRrbt<E> batch = ImRrbt.<E>empty().concat(items);
+            Tuple2<ImRrbt<E>,ImRrbt<E>> s1 = split(fromIndex);
+            ImRrbt<E> rest = s1._2().split(toIndex - fromIndex)._2();
+            return joinThree(s1._1(), batch, rest);
+        }
+
+        // Joining two ImRrbts always yields an ImRrbt.
+        private static <E> ImRrbt<E> joinThree(ImRrbt<E> left, ImRrbt<E> mid, ImRrbt<E> right) {
+            ImRrbt<E> ret = (mid.size == 0) ? left : (ImRrbt<E>) left.join(mid);
+            return (right.size == 0) ? ret : (ImRrbt<E>) ret.join(right);
+        }
+
+        /**
+         Returns a {@link Cursor} at the given index for making many small edits near one position.
+         @param index from 0 to size() inclusive.
+         */
+        public Cursor<E> cursor(int index) {
+            if ( (index < 0) || (index > size) ) {
+                throw new IndexOutOfBoundsException("Index: " + index + " size: " + size);
+            }
+            return new Cursor<>(this, index);
+        }
+
+        /**
+         Returns the same thing as {@link #slice(int, int)}.  Because this list is immutable, a
+         copy behaves the same as a view would, but indexing into it doesn't go through the parent.
+         */
+        @Override public ImRrbt<E> subList(int fromIndex, int toIndex) {
+            return slice(fromIndex, toIndex);
+        }
+
         /** {@inheritDoc} */
         @Override public String indentedStr(int indent) {
             return "RrbTree(size=" + size +
@@ -968,6 +1254,175 @@ public abstract class RrbTree<E> implements BaseList<E>, Indented {
                 new ImRrbt<>(emptyArray(), 0, emptyLeaf(), 0);
     }
 
+    /**
+     A zipper for making many small edits near one position of an {@link ImRrbt}.  The cursor keeps
+     the tree in three parts: the items before a small window, the window itself (a gap-buffer with
+     the cursor at the gap), and the items after the window.  Moving, inserting, deleting, or
+     replacing within the window is amortized O(1).  Moving outside the window re-centers it with
+     a couple of splits and joins in O(log n).  Call {@link #commit()} to get an ImRrbt back.
+
+     Like {@link MutableRrbt}, this is mutable and not thread-safe.  The ImRrbt it came from is not
+     changed.
+     */
+    public static final class Cursor<E> {
+        // How many items to load into the window on each side of the cursor when we re-center.
+        private static final int WINDOW_HALF = STRICT_NODE_LENGTH;
+
+        private ImRrbt<E> prefix;
+        private ImRrbt<E> suffix;
+        // Items from buf[0] to buf[gapStart - 1] come right after prefix.  Items from buf[gapEnd]
+        // to the end of buf come right before suffix.  The cursor is at the gap.
+        private E[] buf = emptyArray();
+        private int gapStart = 0;
+        private int gapEnd = 0;
+
+        private Cursor(ImRrbt<E> tree, int index) {
+            prefix = tree;
+            suffix = empty();
+            recenter(index);
+        }
+
+        private int afterLength() { return buf.length - gapEnd; }
+
+        /** The index of the item the cursor is on (the number of items before the cursor). */
+        public int index() { return prefix.size + gapStart; }
+
+        /** The number of items in the list being edited. */
+        public int size() { return prefix.size + gapStart + afterLength() + suffix.size; }
+
+        /**
+         Moves the cursor to the given index.
+         @param index from 0 to size() inclusive.
+         @return this cursor (for chaining).
+         */
+        public Cursor<E> moveTo(int index) {
+            if ( (index < 0) || (index > size()) ) {
+                throw new IndexOutOfBoundsException("Index: " + index + " size: " + size());
+            }
+            int rel = index - prefix.size;
+            if ( (rel < 0) || (rel > gapStart + afterLength()) ) {
+                recenter(index);
+                return this;
+            }
+            // Clear the old slot before filling the new one because they are the same slot when
+            // the gap is empty.
+            while (gapStart > rel) {
+                E item = buf[--gapStart];
+                buf[gapStart] = null;
+                buf[--gapEnd] = item;
+            }
+            while (gapStart < rel) {
+                E item = buf[gapEnd];
+                buf[gapEnd++] = null;
+                buf[gapStart++] = item;
+            }
+            return this;
+        }
+
+        /** Returns the item at the cursor. */
+        public E get() {
+            ensureItemAtCursor();
+            return buf[gapEnd];
+        }
+
+        /**
+         Inserts an item at the cursor and leaves the cursor after it (like typing).
+         @param item the item to insert
+         @return this cursor (for chaining).
+         */
+        @SuppressWarnings("unchecked")
+        public Cursor<E> insert(E item) {
+            if (gapStart == gapEnd) {
+                int afterLen = afterLength();
+                E[] newBuf = (E[]) new Object[(buf.length * 2) + WINDOW_HALF];
+                System.arraycopy(buf, 0, newBuf, 0, gapStart);
+                System.arraycopy(buf, gapEnd, newBuf, newBuf.length - afterLen, afterLen);
+                gapEnd = newBuf.length - afterLen;
+                buf = newBuf;
+            }
+            buf[gapStart++] = item;
+            return this;
+        }
+
+        /**
+         Removes the item at the cursor, shifting all subsequent items left one.
+         @return this cursor (for chaining).
+         */
+        public Cursor<E> delete() {
+            ensureItemAtCursor();
+            buf[gapEnd++] = null;
+            return this;
+        }
+
+        /**
+         Replaces the item at the cursor.
+         @param item the new value
+         @return this cursor (for chaining).
+         */
+        public Cursor<E> replace(E item) {
+            ensureItemAtCursor();
+            buf[gapEnd] = item;
+            return this;
+        }
+
+        /**
+         Returns an ImRrbt holding all the edits so far.  The cursor remains usable for more edits.
+         This is O(log n + w) where w is the number of items in the window.
+         */
+        public ImRrbt<E> commit() {
+            if (gapStart > 0) {
+                prefix = prefix.concat(Arrays.asList(buf).subList(0, gapStart));
+            }
+            if (afterLength() > 0) {
+                suffix = suffix.insertAll(0, Arrays.asList(buf).subList(gapEnd, buf.length));
+            }
+            buf = emptyArray();
+            gapStart = 0;
+            gapEnd = 0;
+            return (suffix.size == 0) ? prefix :
+                   (prefix.size == 0) ? suffix :
+                   (ImRrbt<E>) prefix.join(suffix);
+        }
+
+        private void ensureItemAtCursor() {
+            if (gapEnd == buf.length) {
+                if (suffix.size == 0) {
+                    throw new IndexOutOfBoundsException("No item at the end of the list");
+                }
+                recenter(index());
+            }
+        }
+
+        // Puts everything back into one tree, then splits out a new window around the index.
+        @SuppressWarnings("unchecked")
+        private void recenter(int index) {
+            ImRrbt<E> tree = commit();
+            int lo = Math.max(0, index - WINDOW_HALF);
+            int hi = Math.min(tree.size, index + WINDOW_HALF);
+            Tuple2<ImRrbt<E>,ImRrbt<E>> s1 = tree.split(lo);
+            Tuple2<ImRrbt<E>,ImRrbt<E>> s2 = s1._2().split(hi - lo);
+            prefix = s1._1();
+            suffix = s2._2();
+
+            int beforeLen = index - lo;
+            int afterLen = hi - index;
+            buf = (E[]) new Object[beforeLen + afterLen + WINDOW_HALF];
+            gapStart = beforeLen;
+            gapEnd = buf.length - afterLen;
+            int i = 0;
+            for (E item : s2._1()) {
+                buf[(i < beforeLen) ? i : gapEnd + i - beforeLen] = item;
+                i++;
+            }
+        }
+    }
+
+    /**
+     Returns the maximum number of children of a Strict node (and items in a full leaf) for
+     every RrbTree in this JVM.  See {@link #NODE_LENGTH_POW_2_PROPERTY}.
+     */
+    public static int branchingFactor() { return STRICT_NODE_LENGTH; }
+
     /** Returns the empty, immutable RRB-Tree (there is only one) */
     @SuppressWarnings("unchecked")
     public static <T> ImRrbt<T> empty() { return (ImRrbt<T>) ImRrbt.EMPTY_IM_RRBT; }
@@ -978,6 +1433,75 @@ public abstract class RrbTree<E> implements BaseList<E>, Indented {
         return (MutableRrbt<T>) empty().mutable();
     }
 
+    /**
+     Builds an ImRrbt bottom-up out of full leaves, making only Strict nodes, without the copying
+     that append() does.  {@link RrbTreeChunks} uses this to read a list back.
+     */
+    static final class StrictBuilder<T> {
+        // levels.get(h) holds finished nodes of height h + 1 which don't have a parent yet.  When
+        // a level fills up, its nodes become one Strict node on the level above.
+        private final List<List<Node<T>>> levels = new ArrayList<>();
+        private int size = 0;
+
+        /** Adds a leaf.  It must have exactly {@link #branchingFactor()} items. */
+        void addLeaf(T[] items) {
+            if (items.length != STRICT_NODE_LENGTH) {
+                throw new IllegalArgumentException("Leaf must have " + STRICT_NODE_LENGTH +
+                                                   " items, not " + items.length);
+            }
+            size += items.length;
+            Node<T> node = new Leaf<>(items);
+            for (int h = 0; ; h++) {
+                if (h == levels.size()) {
+                    levels.add(new ArrayList<>());
+                }
+                List<Node<T>> level = levels.get(h);
+                level.add(node);
+                if (level.size() < STRICT_NODE_LENGTH) {
+                    return;
+                }
+                node = strict(h, level);
+                level.clear();
+            }
+        }
+
+        private static <T> Strict<T> strict(int h, List<Node<T>> nodes) {
+            int sz = 0;
+            for (Node<T> n : nodes) {
+                sz += n.size();
+            }
+            return new Strict<>((h + 1) * NODE_LENGTH_POW_2, sz,
+                                nodes.toArray(genericNodeArray(nodes.size())));
+        }
+
+        /**
+         Returns the finished tree with the given items (fewer than a full leaf) as the focus at
+         the end.
+         */
+        ImRrbt<T> build(T[] focus) {
+            // Join the partly-filled levels from the bottom up.  Only the right-most node of any
+            // level can be partly full, so every node is still Strict.
+            Node<T> carry = null;
+            for (int h = 0; h < levels.size(); h++) {
+                List<Node<T>> level = levels.get(h);
+                if (carry != null) {
+                    level.add(carry);
+                }
+                if ( (h == levels.size() - 1) && (level.size() == 1) ) {
+                    carry = level.get(0);
+                } else {
+                    carry = level.isEmpty() ? null : strict(h, level);
+                }
+            }
+            int total = size + focus.length;
+            if (total == 0) {
+                return empty();
+            }
+            return new ImRrbt<>((focus.length == 0) ? emptyArray() : focus, size,
+                                (carry == null) ? emptyLeaf() : carry, total);
+        }
+    }
+
 
     // ===================================== Instance Methods =====================================
 
@@ -1043,6 +1567,221 @@ involves changing more nodes than maybe necessary.
      */
     public abstract RrbTree<E> join(RrbTree<E> that);
 
+    /**
+     Rebuilds a tree that has been through a lot of inserts, splits, and joins into a tree of
+     full-width Strict nodes (the shape you'd get from appending every item) in one linear pass.
+     Indexing into the result is faster and it uses less memory.  Returns this tree unchanged if it
+     is already strict.  Use {@link #relaxationStats()} to decide whether this is worth doing.
+     */
+    public abstract RrbTree<E> compact();
+
+    /**
+     Returns some numbers about the shape of this tree for deciding when to call
+     {@link #compact()}.  This visits every branch node (but no leaves), so it's O(n / 32).
+     */
+    public abstract RelaxationStats relaxationStats();
+
+    /** Reports the memory used by this tree's internal structure (see {@link Footprint}). */
+    public Footprint footprint() { return Footprint.of(this); }
+
+    abstract void measure(Footprint.Builder b);
+
+    private static final byte LEAF_NODE = 0;
+    private static final byte STRICT_NODE = 1;
+    private static final byte RELAXED_NODE = 2;
+
+    private static void encodeNode(Node<?> n, PaguroCodec.Writer w) throws IOException {
+        if (n instanceof Leaf) {
+            w.out.writeByte(LEAF_NODE);
+            Object[] items = ((Leaf<?>) n).items;
+            w.writeItems(items, items.length);
+            return;
+        }
+        Node<?>[] nodes;
+        if (n instanceof Strict) {
+            Strict<?> s = (Strict<?>) n;
+            w.out.writeByte(STRICT_NODE);
+            if (!w.startNode(n)) {
+                return;
+            }
+            w.out.writeInt(s.shift);
+            w.out.writeInt(s.size);
+            nodes = s.nodes;
+            w.out.writeInt(nodes.length);
+        } else {
+            Relaxed<?> rel = (Relaxed<?>) n;
+            w.out.writeByte(RELAXED_NODE);
+            if (!w.startNode(n)) {
+                return;
+            }
+            nodes = rel.nodes;
+            w.out.writeInt(nodes.length);
+            for (int cumulativeSize : rel.cumulativeSizes) {
+                w.out.writeInt(cumulativeSize);
+            }
+        }
+        for (Node<?> child : nodes) {
+            encodeNode(child, w);
+        }
+        w.endNode(n);
+    }
+
+    private static <T> Node<T> decodeNode(PaguroCodec.Reader r)
+            throws IOException, ClassNotFoundException {
+        byte type = r.in.readByte();
+        if (type == LEAF_NODE) {
+            T[] items = r.readItems();
+            return (items.length == 0) ? emptyLeaf() : new Leaf<>(items);
+        }
+        if ( (type != STRICT_NODE) && (type != RELAXED_NODE) ) {
+            throw new StreamCorruptedException("Unknown RrbTree node type: " + type);
+        }
+        Node<T> ret = r.backRef();
+        if (ret != null) {
+            return ret;
+        }
+        int shift = 0;
+        int size = 0;
+        if (type == STRICT_NODE) {
+            shift = r.readLength();
+            size = r.readLength();
+        }
+        Node<T>[] nodes = genericNodeArray(r.readLength());
+        int[] cumulativeSizes = null;
+        if (type == RELAXED_NODE) {
+            cumulativeSizes = new int[nodes.length];
+            for (int i = 0; i < cumulativeSizes.length; i++) {
+                cumulativeSizes[i] = r.readLength();
+            }
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = decodeNode(r);
+        }
+        return r.register((type == STRICT_NODE) ? new Strict<>(shift, size, nodes)
+                                                : new Relaxed<>(cumulativeSizes, nodes));
+    }
+
+    // Appends the items in the leaves under this node, in order.
+    private static <T> void appendLeaves(Node<T> n, MutableRrbt<T> ret) {
+        if (n instanceof Leaf) {
+            for (T item : ((Leaf<T>) n).items) {
+                ret.append(item);
+            }
+            return;
+        }
+        for (Node<T> child : (n instanceof Strict) ? ((Strict<T>) n).nodes
+                                                    : ((Relaxed<T>) n).nodes) {
+            appendLeaves(child, ret);
+        }
+    }
+
+    // A node has room for STRICT_NODE_LENGTH children or items (a Relaxed node can have a few more).
+    private static void measureNode(Node<?> n, Footprint.Builder b) {
+        if (n instanceof Leaf) {
+            int len = ((Leaf<?>) n).items.length;
+            // items
+            b.node(n, "Leaf", Math.max(len, STRICT_NODE_LENGTH), len,
+                   Footprint.objectBytes(1, 0) + Footprint.arrayBytes(len, Footprint.REF));
+            return;
+        }
+        Node<?>[] nodes;
+        boolean isNew;
+        if (n instanceof Strict) {
+            nodes = ((Strict<?>) n).nodes;
+            // nodes, shift, size
+            isNew = b.node(n, "Strict", Math.max(nodes.length, STRICT_NODE_LENGTH), nodes.length,
+                           Footprint.objectBytes(1, 8) +
+                           Footprint.arrayBytes(nodes.length, Footprint.REF));
+        } else {
+            Relaxed<?> r = (Relaxed<?>) n;
+            nodes = r.nodes;
+            // cumulativeSizes, nodes
+            isNew = b.node(n, "Relaxed", Math.max(nodes.length, STRICT_NODE_LENGTH), nodes.length,
+                           Footprint.objectBytes(2, 0) +
+                           Footprint.arrayBytes(r.cumulativeSizes.length, 4) +
+                           Footprint.arrayBytes(nodes.length, Footprint.REF));
+        }
+        if (isNew) {
+            for (Node<?> child : nodes) {
+                measureNode(child, b);
+            }
+        }
+    }
+
+    /** The shape of an RrbTree as reported by {@link #relaxationStats()}. */
+    public static final class RelaxationStats {
+        private final int height;
+        private final int branchNodes;
+        private final int relaxedNodes;
+        private final int leaves;
+        private final int leafItems;
+
+        private RelaxationStats(int h, int bn, int rn, int ls, int li) {
+            height = h; branchNodes = bn; relaxedNodes = rn; leaves = ls; leafItems = li;
+        }
+
+        private static RelaxationStats of(Node<?> root) {
+            int[] counts = new int[3];
+            countNodes(root, counts);
+            return new RelaxationStats(root.height(), counts[0], counts[1], counts[2],
+                                       root.size());
+        }
+
+        // counts[0] = branch nodes, counts[1] = relaxed nodes, counts[2] = leaves
+        private static void countNodes(Node<?> n, int[] counts) {
+            if (n instanceof Leaf) {
+                if (n.size() > 0) {
+                    counts[2]++;
+                }
+                return;
+            }
+            counts[0]++;
+            if (n instanceof Relaxed) {
+                counts[1]++;
+            }
+            if (n.height() == 2) {
+                counts[2] += n.numChildren();
+                return;
+            }
+            for (int i = 0; i < n.numChildren(); i++) {
+                countNodes(n.child(i), counts);
+            }
+        }
+
+        /** Height of the tree, not counting the focus.  A single leaf has height 1. */
+        public int height() { return height; }
+
+        /** Number of Strict and Relaxed nodes (everything but leaves). */
+        public int branchNodes() { return branchNodes; }
+
+        /** Number of Relaxed nodes (each of which carries an array of cumulative sizes). */
+        public int relaxedNodes() { return relaxedNodes; }
+
+        /** Number of non-empty leaf nodes. */
+        public int leaves() { return leaves; }
+
+        /** relaxedNodes() / branchNodes(), or 0 if there are no branch nodes. */
+        public double relaxedRatio() {
+            return (branchNodes == 0) ? 0.0 : ((double) relaxedNodes) / branchNodes;
+        }
+
+        /**
+         The average number of items in a leaf divided by STRICT_NODE_LENGTH.  Appending makes
+         this almost 1.0.  Random inserts and joins can make it lower.
+         */
+        public double averageLeafFill() {
+            return (leaves == 0) ? 0.0
+                                 : ((double) leafItems) / ((double) leaves * STRICT_NODE_LENGTH);
+        }
+
+        /** {@inheritDoc} */
+        @Override public String toString() {
+            return "RelaxationStats(height=" + height + " branchNodes=" + branchNodes +
+                   " relaxedNodes=" + relaxedNodes + " leaves=" + leaves +
+                   " averageLeafFill=" + averageLeafFill() + ")";
+        }
+    }
+
     /** Internal method - do not use. */
     abstract Node<E> pushFocus();
 
@@ -1141,15 +1880,65 @@ involves changing more nodes than maybe necessary.
     //          index into a sub-node, but supports inserts, split, and combine (with another
     //          RrbTree)
 
+    /**
+     Name of the system property that sets the branching factor of every RrbTree in this JVM as a
+     power of 2.  Valid values are 4, 5, and 6 (16, 32, or 64-way branching).  The default is 5
+     (32-way).  Smaller nodes are cheaper to copy on updates; bigger ones make shallower trees for
+     get().  Set it on the command line, e.g. {@code -Dorg.organicdesign.fp.rrbNodeLengthPow2=4}
+     and compare with the RrbRadix benchmark in paguro-bench.  An invalid value is logged and the
+     default is used instead.
+     */
+    public static final String NODE_LENGTH_POW_2_PROPERTY = "org.organicdesign.fp.rrbNodeLengthPow2";
+
+    private static final int DEFAULT_NODE_LENGTH_POW_2 = 5;
+
+    private static int nodeLengthPow2FromProperty() {
+        try {
+            return nodeLengthPow2(System.getProperty(NODE_LENGTH_POW_2_PROPERTY));
+        } catch (SecurityException ignore) {
+            return DEFAULT_NODE_LENGTH_POW_2;
+        }
+    }
+
+    /**
+     Parses the value of {@link #NODE_LENGTH_POW_2_PROPERTY}.  This runs in a static initializer,
+     where an exception would make RrbTree unusable for the life of the JVM, so a bad value is
+     logged and replaced with the default.
+     */
+    static int nodeLengthPow2(String prop) {
+        if (prop == null) {
+            return DEFAULT_NODE_LENGTH_POW_2;
+        }
+        int pow;
+        try {
+            pow = Integer.parseInt(prop.trim());
+        } catch (NumberFormatException nfe) {
+            pow = -1;
+        }
+        if ( (pow < 4) || (pow > 6) ) {
+            Logger.getLogger(RrbTree.class.getName())
+                  .warning(NODE_LENGTH_POW_2_PROPERTY + " must be an integer from 4 to 6," +
+                           " but was: " + prop + ".  Using the default: " +
+                           DEFAULT_NODE_LENGTH_POW_2);
+            return DEFAULT_NODE_LENGTH_POW_2;
+        }
+        return pow;
+    }
+
     // There's bit shifting going on here because it's a very fast operation.
     // Shifting right by 5 is eons faster than dividing by 32.
-    private static final int NODE_LENGTH_POW_2 = 5; // 2 for testing, 5 for real
+    // This is read once per JVM (not per tree) so that it stays a static final constant the JIT can
+    // fold into every shift and mask.
+    private static final int NODE_LENGTH_POW_2 = nodeLengthPow2FromProperty();
 
     // 0b00000000000000000000000000100000 = 0x20 = 32
     static final int STRICT_NODE_LENGTH = 1 << NODE_LENGTH_POW_2;
 
     private static final int HALF_STRICT_NODE_LENGTH = STRICT_NODE_LENGTH >> 1;
 
+    // ImRrbt.get() caches a leaf when the read that missed is this close to the cached leaf.
+    private static final int LEAF_CACHE_DISTANCE = STRICT_NODE_LENGTH;
+
     // (MIN_NODE_LENGTH + MAX_NODE_LENGTH) / 2 should equal STRICT_NODE_LENGTH so that they have the
     // same average node size to make the index interpolation easier.
     private static final int MIN_NODE_LENGTH = (STRICT_NODE_LENGTH+1) * 2 / 3;
@@ -1181,6 +1970,18 @@ involves changing more nodes than maybe necessary.
         /** Return the item at the given index */
         T get(int i);
 
+        /**
+         Returns the items of the leaf holding the given index and adds the index of that leaf's
+         first item (relative to this node) to leafStart[0].
+         */
+        T[] leafArrayFor(int i, int[] leafStart);
+
+        /**
+         Returns the leaf holding the given index along with the index of its first item, given
+         that the first item of this node is at offset.
+         */
+        LeafCache<T> leafCacheFor(int i, int offset);
+
         /** Returns true if this strict-Radix tree can take another 32 items. */
         boolean hasStrictCapacity();
 
@@ -1320,6 +2121,12 @@ involves changing more nodes than maybe necessary.
 
         @Override public T get(int i) { return items[i]; }
 
+        @Override public T[] leafArrayFor(int i, int[] leafStart) { return items; }
+
+        @Override public LeafCache<T> leafCacheFor(int i, int offset) {
+            return new LeafCache<>(items, offset);
+        }
+
         @Override public int height() { return 1; }
 
         @Override public int size() { return items.length; }
@@ -1587,6 +2394,17 @@ involves changing more nodes than maybe necessary.
             return nodes[highBits(i)].get(lowBits(i));
         }
 
+        @Override public T[] leafArrayFor(int i, int[] leafStart) {
+            int low = lowBits(i);
+            leafStart[0] += i - low;
+            return nodes[highBits(i)].leafArrayFor(low, leafStart);
+        }
+
+        @Override public LeafCache<T> leafCacheFor(int i, int offset) {
+            int low = lowBits(i);
+            return nodes[highBits(i)].leafCacheFor(low, offset + i - low);
+        }
+
         @Override public int size() { return size; }
 
 //        private boolean thisNodeHasCapacity() { return nodes.length < STRICT_NODE_LENGTH; }
@@ -2053,6 +2871,19 @@ involves changing more nodes than maybe necessary.
             return nodes[subNodeIndex].get(subNodeAdjustedIndex(index, subNodeIndex));
         }
 
+        @Override public T[] leafArrayFor(int index, int[] leafStart) {
+            int subNodeIndex = subNodeIndex(index);
+            int subIndex = subNodeAdjustedIndex(index, subNodeIndex);
+            leafStart[0] += index - subIndex;
+            return nodes[subNodeIndex].leafArrayFor(subIndex, leafStart);
+        }
+
+        @Override public LeafCache<T> leafCacheFor(int index, int offset) {
+            int subNodeIndex = subNodeIndex(index);
+            int subIndex = subNodeAdjustedIndex(index, subNodeIndex);
+            return nodes[subNodeIndex].leafCacheFor(subIndex, offset + index - subIndex);
+        }
+
         @Override public boolean thisNodeHasRelaxedCapacity(int numNodes) {
             return nodes.length + numNodes < MAX_NODE_LENGTH;
         }
@@ -2541,6 +3372,10 @@ involves changing more nodes than maybe necessary.
 //        public String toString() { return "IdxNode(" + idx + " " + node + ")"; }
     }
 
+    /**
+     Walks the tree and splices the focus in where it belongs on the fly, instead of pushing the
+     focus into a new copy of the tree first.  The only allocations are the IdxNode stack.
+     */
     final class Iter implements UnmodSortedIterator<E> {
 
         // We want this iterator to walk the node tree.
@@ -2550,11 +3385,21 @@ involves changing more nodes than maybe necessary.
         private E[] leafArray = emptyArray();
         private int leafArrayIdx;
 
-        // Focus must be pre-pushed so we don't have to ever check the index.
+        // The focus is served (as if it were a leaf) when rootItemsServed reaches focusStartIndex.
+        // Once the focus is used up, focusStartIndex is set to -1 so that check is always false.
+        private final E[] focus;
+        private final int focusLength;
+        private int focusStartIndex;
+        private int focusIdx = 0;
+        private int rootItemsServed = 0;
+
         @SuppressWarnings("unchecked")
-        private Iter(Node<E> root) {
+        private Iter(Node<E> root, E[] f, int fLength, int fStartIdx) {
             stack = (IdxNode<E>[]) new IdxNode<?>[root.height()];
             leafArray = findLeaf(root);
+            focus = f;
+            focusLength = fLength;
+            focusStartIndex = (fLength > 0) ? fStartIdx : -1;
         }
 
         // Descent to the leftmost unused leaf node.
@@ -2584,6 +3429,7 @@ involves changing more nodes than maybe necessary.
         }
 
         @Override public boolean hasNext() {
+            if (rootItemsServed == focusStartIndex) { return true; }
             if (leafArrayIdx < leafArray.length) { return true; }
 //            if (leafArray.length == 0) { return false; }
             leafArray = nextLeafArray();
@@ -2592,16 +3438,122 @@ involves changing more nodes than maybe necessary.
         }
 
         @Override public E next() {
+            if (rootItemsServed == focusStartIndex) {
+                E item = focus[focusIdx++];
+                if (focusIdx >= focusLength) {
+                    focusStartIndex = -1;
+                }
+                return item;
+            }
             // If there's no more in this leaf array, get the next one
             if (leafArrayIdx >= leafArray.length) {
                 leafArray = nextLeafArray();
                 leafArrayIdx = 0;
             }
+            rootItemsServed++;
             // Return the next item in the leaf array and increment index
             return leafArray[leafArrayIdx++];
         }
     }
 
+    // One leaf array and the root-index of its first item.
+    private static final class LeafCache<E> {
+        final E[] items;
+        final int start;
+        final int end;
+        LeafCache(E[] is, int st) { items = is; start = st; end = st + is.length; }
+    }
+
+    /**
+     A bidirectional iterator that caches the leaf (or focus) array it is currently in.  It only
+     descends from the root again when it steps off the end of that array, so stepping in either
+     direction is amortized O(1) instead of the O(log n) of calling get() for each index.
+     */
+    private static final class ListIter<E> implements UnmodListIterator<E> {
+        private final Node<E> root;
+        private final E[] focus;
+        private final int focusLength;
+        private final int focusStartIndex;
+        private final int size;
+        private final int[] leafStart = new int[1];
+
+        private int idx;
+
+        // The cached array serves list indices chunkLo (inclusive) to chunkHi (exclusive).  The item
+        // for list index i is at chunk[i - chunkBase].
+        private E[] chunk = emptyArray();
+        private int chunkBase = 0;
+        private int chunkLo = 0;
+        private int chunkHi = 0;
+
+        private ListIter(Node<E> r, E[] f, int fLength, int fStartIdx, int sz, int index) {
+            root = r;
+            focus = f;
+            focusLength = fLength;
+            focusStartIndex = fStartIdx;
+            size = sz;
+            idx = index;
+        }
+
+        private void loadChunkFor(int i) {
+            if (focusLength > 0) {
+                int focusEnd = focusStartIndex + focusLength;
+                if ( (i >= focusStartIndex) && (i < focusEnd) ) {
+                    chunk = focus;
+                    chunkBase = focusStartIndex;
+                    chunkLo = focusStartIndex;
+                    chunkHi = focusEnd;
+                    return;
+                }
+                if (i >= focusEnd) {
+                    // The root doesn't know about the focus, so shift our index into its terms
+                    // and shift the leaf boundaries back again.  The focus may have been inserted
+                    // part way through this leaf.
+                    leafStart[0] = 0;
+                    chunk = root.leafArrayFor(i - focusLength, leafStart);
+                    chunkBase = leafStart[0] + focusLength;
+                    chunkLo = Math.max(leafStart[0], focusStartIndex) + focusLength;
+                    chunkHi = chunkBase + chunk.length;
+                    return;
+                }
+            }
+            leafStart[0] = 0;
+            chunk = root.leafArrayFor(i, leafStart);
+            chunkBase = leafStart[0];
+            chunkLo = chunkBase;
+            chunkHi = chunkBase + chunk.length;
+            if ( (focusLength > 0) && (chunkHi > focusStartIndex) ) {
+                chunkHi = focusStartIndex;
+            }
+        }
+
+        @Override public boolean hasNext() { return idx < size; }
+
+        @Override public E next() {
+            int i = idx;
+            if (i >= size) { throw new NoSuchElementException(); }
+            if ( (i < chunkLo) || (i >= chunkHi) ) {
+                loadChunkFor(i);
+            }
+            idx = i + 1;
+            return chunk[i - chunkBase];
+        }
+
+        @Override public boolean hasPrevious() { return idx > 0; }
+
+        @Override public E previous() {
+            int i = idx - 1;
+            if (i < 0) { throw new NoSuchElementException(); }
+            if ( (i < chunkLo) || (i >= chunkHi) ) {
+                loadChunkFor(i);
+            }
+            idx = i;
+            return chunk[i - chunkBase];
+        }
+
+        @Override public int nextIndex() { return idx; }
+    }
+
     // =================================== Array Helper Functions ==================================
     // Helper function to avoid type warnings.
 
@@ -0,0 +1,319 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.organicdesign.fp.collections;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.organicdesign.fp.collections.RrbTree.ImRrbt;
+
+/**
+ Writes an {@link ImRrbt} to a channel (usually a FileChannel) as a stream of leaf-sized chunks,
+ and reads it back by making full leaves and Strict nodes directly, instead of appending one item
+ at a time.  This is much faster than Java serialization for very large lists, and it never holds
+ more than one chunk of encoded bytes in memory.
+
+ <p>Items are encoded with an {@link ElementCodec}.  There are codecs for Integers, Longs, Doubles
+ and Strings, or you can write your own.</p>
+
+ <p>Writing only iterates the ImRrbt, which is immutable, so other threads can keep reading (and
+ making new versions of) the list while a checkpoint is being written.</p>
+
+ <pre><code>RrbTreeChunks.write(list, path, RrbTreeChunks.ElementCodec.LONG);
+ImRrbt&lt;Long&gt; copy = RrbTreeChunks.read(path, RrbTreeChunks.ElementCodec.LONG);</code></pre>
+ */
+public final class RrbTreeChunks {
+
+    // Don't instantiate this class
+    private RrbTreeChunks() { throw new UnsupportedOperationException("No instantiation"); }
+
+    // "PGRT"
+    private static final int MAGIC = 0x50475254;
+    private static final int VERSION = 1;
+    // magic, version, chunk length, size
+    private static final int HEADER_LENGTH = 20;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     Turns items into bytes and back.  encode() must write exactly encodedSize() bytes.
+
+     <p>The Integer, Long, and Double codecs don't allow nulls.  The String codec does.</p>
+     */
+    public interface ElementCodec<T> {
+        /** The number of bytes encode() will write for this item. */
+        int encodedSize(T item);
+
+        /** Writes the item at the buffer's position.  There is always enough room. */
+        void encode(T item, ByteBuffer buf);
+
+        /** Reads an item from the buffer's position. */
+        T decode(ByteBuffer buf);
+
+        /** Integers as 4 bytes. */
+        ElementCodec<Integer> INT = new ElementCodec<Integer>() {
+            @Override public int encodedSize(Integer item) { return 4; }
+            @Override public void encode(Integer item, ByteBuffer buf) { buf.putInt(item); }
+            @Override public Integer decode(ByteBuffer buf) { return buf.getInt(); }
+        };
+
+        /** Longs as 8 bytes. */
+        ElementCodec<Long> LONG = new ElementCodec<Long>() {
+            @Override public int encodedSize(Long item) { return 8; }
+            @Override public void encode(Long item, ByteBuffer buf) { buf.putLong(item); }
+            @Override public Long decode(ByteBuffer buf) { return buf.getLong(); }
+        };
+
+        /** Doubles as 8 bytes. */
+        ElementCodec<Double> DOUBLE = new ElementCodec<Double>() {
+            @Override public int encodedSize(Double item) { return 8; }
+            @Override public void encode(Double item, ByteBuffer buf) { buf.putDouble(item); }
+            @Override public Double decode(ByteBuffer buf) { return buf.getDouble(); }
+        };
+
+        /** Strings (or null) as a length followed by UTF-8. */
+        ElementCodec<String> STRING = new ElementCodec<String>() {
+            @Override public int encodedSize(String item) {
+                return 4 + ((item == null) ? 0 : utf8Length(item));
+            }
+
+            @Override public void encode(String item, ByteBuffer buf) {
+                if (item == null) {
+                    buf.putInt(-1);
+                } else {
+                    byte[] bytes = item.getBytes(StandardCharsets.UTF_8);
+                    buf.putInt(bytes.length);
+                    buf.put(bytes);
+                }
+            }
+
+            @Override public String decode(ByteBuffer buf) {
+                int length = buf.getInt();
+                if (length < 0) {
+                    return null;
+                }
+                String ret = new String(buf.array(), buf.arrayOffset() + buf.position(), length,
+                                        StandardCharsets.UTF_8);
+                buf.position(buf.position() + length);
+                return ret;
+            }
+        };
+    }
+
+    // The number of bytes String.getBytes(UTF_8) returns, without making them.
+    static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && (i + 1 < s.length()) &&
+                       Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // An unpaired surrogate is encoded as '?'
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    // ========================================== Writing ==========================================
+
+    /** Writes the list to a file, replacing it if it exists. */
+    public static <T> void write(ImRrbt<T> list, Path file, ElementCodec<T> codec)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(list, channel, codec);
+        }
+    }
+
+    /**
+     Writes the list to the channel, starting at its current position.  Each chunk is the byte
+     length of the chunk followed by up to {@link RrbTree#branchingFactor()} encoded items.
+     */
+    public static <T> void write(ImRrbt<T> list, WritableByteChannel channel,
+                                 ElementCodec<T> codec) throws IOException {
+        int chunkLength = RrbTree.branchingFactor();
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(chunkLength).putLong(list.size());
+
+        @SuppressWarnings("unchecked")
+        T[] chunk = (T[]) new Object[chunkLength];
+        Iterator<T> iter = list.iterator();
+        while (iter.hasNext()) {
+            int count = 0;
+            long bytes = 0;
+            while ( (count < chunkLength) && iter.hasNext() ) {
+                T item = iter.next();
+                chunk[count++] = item;
+                bytes += codec.encodedSize(item);
+            }
+            if ((bytes + 4) > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Chunk too big: " + bytes + " bytes");
+            }
+            if (buf.remaining() < (bytes + 4)) {
+                drain(buf, channel);
+                if (buf.capacity() < (bytes + 4)) {
+                    buf = ByteBuffer.allocate((int) bytes + 4);
+                }
+            }
+            buf.putInt((int) bytes);
+            for (int i = 0; i < count; i++) {
+                int start = buf.position();
+                codec.encode(chunk[i], buf);
+                int expected = codec.encodedSize(chunk[i]);
+                if ((buf.position() - start) != expected) {
+                    throw new IllegalStateException("Codec wrote " + (buf.position() - start) +
+                                                    " bytes for " + chunk[i] + " but said it" +
+                                                    " would write " + expected);
+                }
+            }
+        }
+        drain(buf, channel);
+    }
+
+    // Writes everything in the buffer to the channel and clears it.
+    private static void drain(ByteBuffer buf, WritableByteChannel channel) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    // ========================================== Reading ==========================================
+
+    /** Reads a list written by {@link #write(ImRrbt, Path, ElementCodec)}. */
+    public static <T> ImRrbt<T> read(Path file, ElementCodec<T> codec) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel, codec);
+        }
+    }
+
+    /**
+     Reads a list written by {@link #write(ImRrbt, WritableByteChannel, ElementCodec)}, starting
+     at the channel's current position.  When it returns, the channel is positioned just after the
+     list, so whatever was written after it can be read next.  A SeekableByteChannel (like a
+     FileChannel) is read ahead in big blocks, then positioned back to the end of the list.  Any
+     other channel is read exactly up to the end of the list, which takes more (smaller) reads.
+     @throws StreamCorruptedException if the data is not a list written by this class.
+     @throws EOFException if the data ends too soon.
+     */
+    public static <T> ImRrbt<T> read(ReadableByteChannel channel, ElementCodec<T> codec)
+            throws IOException {
+        // Read past the end of the list only if we can go back afterwards.
+        boolean readAhead = channel instanceof SeekableByteChannel;
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        buf.flip();
+        buf = fill(buf, channel, HEADER_LENGTH, readAhead);
+        if (buf.getInt() != MAGIC) {
+            throw new StreamCorruptedException("Not an RrbTreeChunks stream");
+        }
+        int version = buf.getInt();
+        if (version != VERSION) {
+            throw new StreamCorruptedException("Unknown RrbTreeChunks version: " + version);
+        }
+        int chunkLength = buf.getInt();
+        long size = buf.getLong();
+        if ( (chunkLength < 1) || (size < 0) || (size > Integer.MAX_VALUE) ) {
+            throw new StreamCorruptedException("Corrupt RrbTreeChunks header");
+        }
+
+        // The writer's chunks may not be the same length as our leaves (if it had a different
+        // branching factor), so we fill our own leaves from the stream of items.
+        int leafLength = RrbTree.branchingFactor();
+        RrbTree.StrictBuilder<T> builder = new RrbTree.StrictBuilder<>();
+        @SuppressWarnings("unchecked")
+        T[] leaf = (T[]) new Object[leafLength];
+        int inLeaf = 0;
+        long read = 0;
+        while (read < size) {
+            buf = fill(buf, channel, 4, readAhead);
+            int bytes = buf.getInt();
+            if ( (bytes < 0) || (bytes > Integer.MAX_VALUE - 4) ) {
+                throw new StreamCorruptedException("Bad chunk length: " + bytes);
+            }
+            long count = Math.min(chunkLength, size - read);
+            // Get the length of the next chunk (if any) with this one.
+            buf = fill(buf, channel, ((read + count) < size) ? bytes + 4 : bytes, readAhead);
+            int end = buf.position() + bytes;
+            for (long i = 0; i < count; i++) {
+                leaf[inLeaf++] = codec.decode(buf);
+                if (inLeaf == leafLength) {
+                    builder.addLeaf(leaf);
+                    @SuppressWarnings("unchecked")
+                    T[] newLeaf = (T[]) new Object[leafLength];
+                    leaf = newLeaf;
+                    inLeaf = 0;
+                }
+            }
+            if (buf.position() != end) {
+                throw new StreamCorruptedException("Chunk was " + bytes + " bytes but " +
+                                                   (buf.position() + bytes - end) +
+                                                   " were read");
+            }
+            read += count;
+        }
+        if (readAhead && buf.hasRemaining()) {
+            SeekableByteChannel sbc = (SeekableByteChannel) channel;
+            sbc.position(sbc.position() - buf.remaining());
+        }
+        return builder.build(Arrays.copyOf(leaf, inLeaf));
+    }
+
+    // Makes sure at least the given number of bytes are available to get from the buffer,
+    // reading more from the channel, or making a bigger buffer if necessary.  Unless readAhead
+    // is true, it reads no more than that from the channel.
+    private static ByteBuffer fill(ByteBuffer buf, ReadableByteChannel channel, int bytes,
+                                   boolean readAhead) throws IOException {
+        if (buf.remaining() >= bytes) {
+            return buf;
+        }
+        if (buf.capacity() < bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(bytes);
+            bigger.put(buf);
+            buf = bigger;
+        } else {
+            buf.compact();
+        }
+        if (!readAhead) {
+            buf.limit(bytes);
+        }
+        while (buf.position() < bytes) {
+            if (channel.read(buf) < 0) {
+                throw new EOFException("RrbTreeChunks stream ended too soon");
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+}
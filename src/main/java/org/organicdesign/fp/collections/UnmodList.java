@@ -165,6 +165,19 @@ public interface UnmodList<E> extends List<E>, UnmodSortedCollection<E> {
     /** {@inheritDoc} */
     @Override default UnmodListIterator<E> listIterator() { return listIterator(0); }
 
+    /**
+     Returns an iterator that walks this list from the last item to the first.  This is as fast as
+     {@link #listIterator(int)}'s previous() method, so it's amortized O(1) per item for
+     implementations that override listIterator() with something better than get().
+     */
+    default UnmodIterator<E> reverseIterator() {
+        final UnmodListIterator<E> iter = listIterator(size());
+        return new UnmodIterator<E>() {
+            @Override public boolean hasNext() { return iter.hasPrevious(); }
+            @Override public E next() { return iter.previous(); }
+        };
+    }
+
     /** {@inheritDoc}  Subclasses should override this when they can do so more efficiently. */
     @Override default UnmodListIterator<E> listIterator(int index) {
         if ( (index < 0) || (index > size()) ) {
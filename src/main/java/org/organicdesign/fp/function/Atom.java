@@ -0,0 +1,110 @@
+// Copyright 2026-10-19 PlanBase Inc. & Glen Peterson
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.organicdesign.fp.function;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ A thread-safe reference to an immutable value, usually one of the persistent collections.  Update
+ it with {@link #swap(Fn1)}, which applies a function to the current value and stores the result
+ if no other thread changed the value in the meantime, or tries again if one did.
+
+ <pre><code>Atom&lt;ImMap&lt;String,Integer&gt;&gt; counts = Atom.of(PersistentHashMap.empty());
+counts.swap(m -&gt; m.assoc(word, m.getOrElse(word, 0) + 1));</code></pre>
+
+ <p>The function passed to swap() may be called more than once, so it must be free from side
+ effects.  When many threads fail to update the value, each waits a little longer (a random
+ amount) before trying again, so that they don't all waste CPU time retrying at once.
+ {@link #swaps()} and {@link #retries()} show how much contention there has been.</p>
+ */
+public final class Atom<T> implements Fn0<T> {
+    // Retry right away this many times, then yield, then park for longer and longer.
+    private static final int SPIN_TRIES = 2;
+    private static final int YIELD_TRIES = 4;
+    // Longest park is 2^10 microseconds, about 1 millisecond.
+    private static final int MAX_PARK_POW_2 = 10;
+
+    private final AtomicReference<T> ref;
+    private final LongAdder swaps = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    private Atom(T initial) { ref = new AtomicReference<>(initial); }
+
+    /** Returns a new Atom holding the given value (which may be null). */
+    public static <T> Atom<T> of(T initial) { return new Atom<>(initial); }
+
+    /** Returns the current value. */
+    @Override public T applyEx() { return ref.get(); }
+
+    /**
+     Sets the value to newValue if the current value is (==) expected.
+     @return true if the value was set.
+     */
+    public boolean compareAndSet(T expected, T newValue) {
+        return ref.compareAndSet(expected, newValue);
+    }
+
+    /** Sets the value, no matter what it was before.  Returns the old value. */
+    public T reset(T newValue) { return ref.getAndSet(newValue); }
+
+    /**
+     Applies the given function to the current value and stores the result, retrying (with
+     backoff) until no other thread has changed the value in the meantime.
+
+     @param f a side-effect-free function from the current value to the new one.  It may be
+     called more than once.
+
+     @return the new value.
+     */
+    public T swap(Fn1<? super T,? extends T> f) {
+        for (int failures = 0; ; failures++) {
+            T current = ref.get();
+            T next = f.apply(current);
+            if (ref.compareAndSet(current, next)) {
+                swaps.increment();
+                return next;
+            }
+            retries.increment();
+            backOff(failures);
+        }
+    }
+
+    /** The number of successful calls to swap() so far. */
+    public long swaps() { return swaps.sum(); }
+
+    /** The number of times swap() had to try again because another thread changed the value. */
+    public long retries() { return retries.sum(); }
+
+    /**
+     Waits before trying again after the given number of failed tries in a row.  Random, so that
+     threads that failed together don't try again together.
+     */
+    private static void backOff(int failures) {
+        if (failures < SPIN_TRIES) {
+            return;
+        }
+        if (failures < YIELD_TRIES) {
+            Thread.yield();
+            return;
+        }
+        int pow2 = Math.min(failures - YIELD_TRIES, MAX_PARK_POW_2);
+        LockSupport.parkNanos(1000 * (1 + ThreadLocalRandom.current().nextLong(1L << pow2)));
+    }
+
+    /** Shows the current value. */
+    @Override public String toString() { return "Atom(" + ref.get() + ")"; }
+}
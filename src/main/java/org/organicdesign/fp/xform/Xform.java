@@ -14,17 +14,26 @@
 
 package org.organicdesign.fp.xform;
 
+import org.organicdesign.fp.collections.Equator;
+import org.organicdesign.fp.collections.MutableSet;
+import org.organicdesign.fp.collections.PersistentHashSet;
 import org.organicdesign.fp.collections.UnmodIterable;
 import org.organicdesign.fp.collections.UnmodIterator;
+import org.organicdesign.fp.function.Fn0;
 import org.organicdesign.fp.function.Fn1;
 import org.organicdesign.fp.function.Fn2;
 import org.organicdesign.fp.oneOf.Or;
+import org.organicdesign.fp.tuple.Tuple2;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.PriorityQueue;
 
 /**
  An immutable description of operations to be performed (a transformation, transform, or x-form).
@@ -84,6 +93,19 @@ public abstract class Xform<A> implements UnmodIterable<A> {
          */
         public OpStrategy take(long num) { return OpStrategy.CANNOT_HANDLE; }
 
+        /**
+         Returns an Operation to use for one run of a compiled {@link Plan}.  Operations without
+         state can be shared by all runs (and threads) so they return themselves.  Operations that
+         count or remember things while running return a fresh copy with the original settings.
+         */
+        abstract Operation copyForRun();
+
+        /**
+         True if this operation will never let another item through.  Lets a push-style
+         {@link Sink} tell its source to stop as soon as possible.
+         */
+        boolean isExhausted() { return false; }
+
         /**
          We need to model this as a separate op for when the previous op is CANNOT_HANDLE.  It is
          coded as a filter, but still needs to be modeled separately so that subsequent drops can be
@@ -106,10 +128,25 @@ public abstract class Xform<A> implements UnmodIterable<A> {
                 leftToDrop = leftToDrop + num;
                 return Or.good(num);
             }
+            @Override Operation copyForRun() { return new DropOp(leftToDrop); }
         }
 
         private static class FilterOp extends Operation {
             FilterOp(Fn1<Object,Boolean> func) { filter = func; }
+            @Override Operation copyForRun() { return this; }
+        }
+
+        /**
+         A filter that keeps track of something while it runs (like dropWhile or distinct).  The
+         factory makes a new filter function for each run.
+         */
+        private static class StatefulFilterOp extends Operation {
+            private final Fn0<Fn1<Object,Boolean>> factory;
+            StatefulFilterOp(Fn0<Fn1<Object,Boolean>> fact) {
+                factory = fact;
+                filter = fact.apply();
+            }
+            @Override Operation copyForRun() { return new StatefulFilterOp(factory); }
         }
 
         private static class MapOp extends Operation {
@@ -118,6 +155,7 @@ public abstract class Xform<A> implements UnmodIterable<A> {
                 return Or.bad(OpStrategy.ASK_SUPPLIER);
             }
             @Override public OpStrategy take(long num) { return OpStrategy.ASK_SUPPLIER; }
+            @Override Operation copyForRun() { return this; }
         }
 
         // TODO: FlatMap should drop and take internally using addition/subtraction on each output
@@ -127,6 +165,7 @@ public abstract class Xform<A> implements UnmodIterable<A> {
 //            int numToDrop = 0;
 
             FlatMapOp(Fn1<Object,Iterable> func) { flatMap = func; }
+            @Override Operation copyForRun() { return this; }
         }
 
         /**
@@ -158,6 +197,8 @@ public abstract class Xform<A> implements UnmodIterable<A> {
                 }
                 return OpStrategy.HANDLE_INTERNALLY;
             }
+            @Override Operation copyForRun() { return new TakeOp(numToTake); }
+            @Override boolean isExhausted() { return numToTake < 1; }
         }
     } // end class Operation
 
@@ -235,6 +276,86 @@ public abstract class Xform<A> implements UnmodIterable<A> {
         } // end iterator()
     }
 
+    /**
+     When iterator() is called, the SortedOp processes the previous source and operations into an
+     array, sorts it once, then yields the sorted items.  Subsequent operations are run lazily
+     against the sorted items, so sorted(comp).take(3) sorts everything, but only processes three
+     items after that.
+     */
+    private static class SortedOp extends RunList {
+        private final Comparator<Object> comp;
+        private SortedOp(RunList prv, Comparator<Object> c) { super(prv, null); comp = c; }
+
+        @SuppressWarnings("unchecked")
+        @Override public Iterator<Object> iterator() {
+            Object[] items =
+                    _fold(prev, prev.opArray(), 0, new ArrayList<>(),
+                          (Fn2<ArrayList<Object>,Object,ArrayList<Object>>) (res, item) -> {
+                              res.add(item);
+                              return res;
+                          }).toArray();
+            // Arrays.sort() on Objects is a stable merge sort.
+            Arrays.sort(items, comp);
+            return Arrays.asList(items).iterator();
+        }
+    }
+
+    /**
+     When iterator() is called, the BoundedHeapOp processes the previous source and operations,
+     keeping only the k greatest items (according to the comparator) in a heap, then yields those
+     items greatest first.  Memory use is O(k) no matter how many items the source produces.
+     */
+    private static class BoundedHeapOp extends RunList {
+        private static final int INITIAL_HEAP_SIZE = 16;
+        private final Comparator<Object> comp;
+        private final int k;
+        private BoundedHeapOp(RunList prv, Comparator<Object> c, int max) {
+            super(prv, null); comp = c; k = max;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override public Iterator<Object> iterator() {
+            if (k == 0) { return Collections.emptyIterator(); }
+            // A min-heap of the greatest items so far.  The head is the least of them, so it's the
+            // one to evict when something greater comes along.  Don't allocate k slots up front
+            // because k may be far bigger than the input.
+            PriorityQueue<Object> heap =
+                    _fold(prev, prev.opArray(), 0,
+                          new PriorityQueue<>(Math.min(k, INITIAL_HEAP_SIZE), comp),
+                          (Fn2<PriorityQueue<Object>,Object,PriorityQueue<Object>>) (h, item) -> {
+                              if (h.size() < k) {
+                                  h.add(item);
+                              } else if (comp.compare(item, h.peek()) > 0) {
+                                  h.poll();
+                                  h.add(item);
+                              }
+                              return h;
+                          });
+            Object[] items = new Object[heap.size()];
+            for (int i = items.length - 1; i >= 0; i--) {
+                items[i] = heap.poll();
+            }
+            return Arrays.asList(items).iterator();
+        }
+    }
+
+    /** Describes a sorted(), topK(), or bottomK() operation, but does not perform it. */
+    private static class SortDesc<T> extends Xform<T> {
+        private final Comparator<? super T> comp;
+        // -1 means sort everything.
+        private final int k;
+
+        SortDesc(Xform<T> prev, Comparator<? super T> c, int max) { super(prev); comp = c; k = max; }
+
+        @SuppressWarnings("unchecked")
+        @Override protected RunList toRunList() {
+            // The RunLists work on Objects, which are really Ts.
+            Comparator<Object> c = (Comparator<Object>) comp;
+            return (k < 0) ? new SortedOp(prevOp.toRunList(), c)
+                           : new BoundedHeapOp(prevOp.toRunList(), c, k);
+        }
+    }
+
     /** Describes an concat() operation, but does not perform it. */
     private static class AppendIterDesc<T> extends Xform<T> {
         final Xform<T> src;
@@ -309,7 +430,7 @@ public abstract class Xform<A> implements UnmodIterable<A> {
         @SuppressWarnings("unchecked")
         @Override protected RunList toRunList() {
             RunList ret = prevOp.toRunList();
-            ret.list.add(new Operation.FilterOp(new Fn1<Object, Boolean>() {
+            ret.list.add(new Operation.StatefulFilterOp(() -> new Fn1<Object, Boolean>() {
                 // Starts out active (meaning dropping items until the inner function returns true).
                 // Once inner function returns true, switches into passive mode in which this (outer)
                 // function always returns true.
@@ -414,6 +535,215 @@ public abstract class Xform<A> implements UnmodIterable<A> {
         }
     }
 
+    /**
+     Describes a distinct() operation (implemented as a filter), but does not perform it.  Each run
+     gets its own set of keys seen so far, so the same description can be folded many times.
+     When bloomBits is greater than zero, a fixed-size Bloom filter is used instead of a set.
+     */
+    private static class DistinctDesc<T,K> extends Xform<T> {
+        private final Fn1<? super T,? extends K> keyFn;
+        private final Equator<K> equator;
+        private final int bloomBits;
+        private final int bloomHashes;
+
+        DistinctDesc(Xform<T> prev, Fn1<? super T,? extends K> kf, Equator<K> eq,
+                     int bits, int hashes) {
+            super(prev); keyFn = kf; equator = eq; bloomBits = bits; bloomHashes = hashes;
+        }
+
+        @Override protected RunList toRunList() {
+            RunList ret = prevOp.toRunList();
+            ret.list.add(new Operation.StatefulFilterOp(this::newFilter));
+            return ret;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Fn1<Object,Boolean> newFilter() {
+            if (bloomBits > 0) {
+                BloomFilter<K> bloom = new BloomFilter<>(equator, bloomBits, bloomHashes);
+                return o -> bloom.put(keyFn.apply((T) o));
+            }
+            MutableSet<K> seen = PersistentHashSet.emptyMutable(equator);
+            return o -> {
+                // Checking the size afterward saves a second lookup in the set.
+                int prevSize = seen.size();
+                seen.put(keyFn.apply((T) o));
+                return seen.size() > prevSize;
+            };
+        }
+    }
+
+    /**
+     A fixed-size Bloom filter using double-hashing on top of an {@link Equator}'s hash.  Since
+     Equators only produce 32 bits of hash, the hash is spread to 64 bits and split into the two
+     base hashes.  This never grows, so putting more items into it than it was sized for raises the
+     false-positive rate instead of the memory used.
+     */
+    static final class BloomFilter<K> {
+        private final Equator<K> equator;
+        private final long[] bits;
+        private final int numBits;
+        private final int numHashes;
+
+        BloomFilter(Equator<K> eq, int nBits, int nHashes) {
+            equator = eq;
+            numBits = nBits;
+            numHashes = nHashes;
+            bits = new long[(nBits + 63) >>> 6];
+        }
+
+        /**
+         Computes the number of bits needed to hold the expected number of items with the given
+         false-positive rate: -n ln(p) / (ln 2)^2.
+         */
+        static int optimalBits(long expectedItems, double falsePositiveRate) {
+            double bits = -expectedItems * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+            return (int) Math.max(64, Math.min(bits, Integer.MAX_VALUE - 63));
+        }
+
+        /** Computes the number of hash functions to use: (m / n) ln 2 */
+        static int optimalHashes(long expectedItems, int numBits) {
+            return Math.max(1, (int) Math.round(((double) numBits / expectedItems) * Math.log(2)));
+        }
+
+        /** Murmur3's 64-bit finalizer. */
+        private static long mix64(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+
+        /**
+         Adds the key to this filter.
+         @return true if the key was definitely not present before, false if it might have been.
+         */
+        boolean put(K key) {
+            // Offset the hash so that a hash code of zero doesn't mix to zero.
+            long h = mix64(equator.hash(key) + 0x9e3779b97f4a7c15L);
+            int h1 = (int) h;
+            // An odd step never degenerates into probing the same bit over and over.
+            int h2 = ((int) (h >>> 32)) | 1;
+            boolean added = false;
+            for (int i = 0; i < numHashes; i++) {
+                int combined = h1 + (i * h2);
+                int idx = (combined & Integer.MAX_VALUE) % numBits;
+                long mask = 1L << idx;
+                int word = idx >>> 6;
+                if ((bits[word] & mask) == 0) {
+                    bits[word] |= mask;
+                    added = true;
+                }
+            }
+            return added;
+        }
+    }
+
+    /**
+     Pairs up items from two sources, using the given function to combine each pair.  Stops when
+     either source runs out.  Nothing is read from either source until iterator() is called.
+     */
+    private static final class ZipIterable<T,U,R> implements Iterable<R> {
+        private final Iterable<? extends T> left;
+        private final Iterable<? extends U> right;
+        private final Fn2<? super T,? super U,? extends R> zipper;
+
+        ZipIterable(Iterable<? extends T> l, Iterable<? extends U> r,
+                    Fn2<? super T,? super U,? extends R> f) {
+            left = l; right = r; zipper = f;
+        }
+
+        @Override public Iterator<R> iterator() {
+            Iterator<? extends T> ls = left.iterator();
+            Iterator<? extends U> rs = right.iterator();
+            return new Iterator<R>() {
+                @Override public boolean hasNext() { return ls.hasNext() && rs.hasNext(); }
+                @Override public R next() { return zipper.apply(ls.next(), rs.next()); }
+            };
+        }
+    }
+
+    /**
+     Alternates items from two sources.  When one source runs out, the rest of the other source
+     follows.
+     */
+    private static final class InterleaveIterable<T> implements Iterable<T> {
+        private final Iterable<? extends T> left;
+        private final Iterable<? extends T> right;
+
+        InterleaveIterable(Iterable<? extends T> l, Iterable<? extends T> r) {
+            left = l; right = r;
+        }
+
+        @Override public Iterator<T> iterator() {
+            Iterator<? extends T> ls = left.iterator();
+            Iterator<? extends T> rs = right.iterator();
+            return new Iterator<T>() {
+                private boolean leftsTurn = true;
+                @Override public boolean hasNext() { return ls.hasNext() || rs.hasNext(); }
+                @Override public T next() {
+                    Iterator<? extends T> curr = leftsTurn ? ls : rs;
+                    if (!curr.hasNext()) {
+                        curr = leftsTurn ? rs : ls;
+                    }
+                    leftsTurn = !leftsTurn;
+                    return curr.next();
+                }
+            };
+        }
+    }
+
+    /**
+     A k-way merge of already sorted sources using a heap with one entry per source, so merging
+     n total items from k sources is O(n log k) and holds only k items in memory at once.  When two
+     sources have equal items, the item from the earlier source comes first, so the merge is stable.
+     */
+    private static final class MergeSortedIterable<T> implements Iterable<T> {
+        private final Comparator<? super T> comp;
+        private final List<Iterable<? extends T>> sources;
+
+        MergeSortedIterable(Comparator<? super T> c, List<Iterable<? extends T>> srcs) {
+            comp = c; sources = srcs;
+        }
+
+        /** The next item from one source, which gets re-used for the following item. */
+        private static final class Head<T> {
+            final int srcIdx;
+            final Iterator<? extends T> iter;
+            T item;
+            Head(int i, Iterator<? extends T> it) { srcIdx = i; iter = it; item = it.next(); }
+        }
+
+        @Override public Iterator<T> iterator() {
+            PriorityQueue<Head<T>> heap =
+                    new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> {
+                        int ret = comp.compare(a.item, b.item);
+                        return (ret != 0) ? ret : Integer.compare(a.srcIdx, b.srcIdx);
+                    });
+            for (int i = 0; i < sources.size(); i++) {
+                Iterator<? extends T> iter = sources.get(i).iterator();
+                if (iter.hasNext()) {
+                    heap.add(new Head<>(i, iter));
+                }
+            }
+            return new Iterator<T>() {
+                @Override public boolean hasNext() { return !heap.isEmpty(); }
+                @Override public T next() {
+                    Head<T> head = heap.poll();
+                    if (head == null) { throw new NoSuchElementException(); }
+                    T ret = head.item;
+                    if (head.iter.hasNext()) {
+                        head.item = head.iter.next();
+                        heap.add(head);
+                    }
+                    return ret;
+                }
+            };
+        }
+    }
+
     static class SourceProviderIterableDesc<T> extends Xform<T> {
         private final Iterable<? extends T> list;
         SourceProviderIterableDesc(Iterable<? extends T> l) { super(null); list = l; }
@@ -430,6 +760,227 @@ public abstract class Xform<A> implements UnmodIterable<A> {
         }
     }
 
+    /**
+     Stands in for the real source while a {@link Plan} is compiled.  It should never be iterated
+     because building a description doesn't read from the source.
+     */
+    private enum PlanSource implements Iterable<Object> {
+        INSTANCE;
+        @Override public Iterator<Object> iterator() {
+            throw new IllegalStateException("A compiled Plan's placeholder source can't be read." +
+                                            "  Pass a real source to Plan.fold() instead.");
+        }
+    }
+
+    /**
+     An immutable, thread-safe, "compiled" transformation that can be run against many different
+     sources.  Where Xform.fold() has to walk the description and build a new list of operations
+     every time, a Plan does that once when it's created.  Each fold() then just runs the
+     operations against the given source.
+
+     Operations without state (filter, map, flatMap, takeWhile) are shared by all runs, so a plan
+     made only of those needs no allocation at all to set up a run.  Operations that keep count or
+     remember things (drop, take, dropWhile, distinct) get a fresh copy for each run.  Plans with
+     more than one source (concat, precat, zip, sorted, etc.) fall back to building the whole Xform
+     for each run, which is no worse than calling fold() on an Xform.
+
+     @param <T> the type of items in the source
+     @param <A> the type of items produced by the transformation
+     */
+    public static final class Plan<T,A> {
+        private final Fn1<? super Xform<T>,? extends Xform<A>> pipeline;
+        // Null if the plan can't run against a single source.
+        private final Operation[] ops;
+        private final boolean stateless;
+
+        private Plan(Fn1<? super Xform<T>,? extends Xform<A>> p, Operation[] os) {
+            pipeline = p;
+            ops = os;
+            boolean noState = (os != null);
+            if (noState) {
+                for (Operation op : os) {
+                    if (op.copyForRun() != op) {
+                        noState = false;
+                        break;
+                    }
+                }
+            }
+            stateless = noState;
+        }
+
+        /**
+         Runs the compiled transformation against the given source.
+         @param source the items to transform.  Null is treated as empty.
+         @param ident the accumulator and starting value.
+         @param reducer combines each transformed item with the result so far.
+         @return the eagerly evaluated result.
+         */
+        public <B> B fold(Iterable<? extends T> source, B ident, Fn2<? super B,? super A,B> reducer) {
+            if (reducer == null) {
+                throw new IllegalArgumentException("Can't fold with a null reduction function.");
+            }
+            if (source == null) { return ident; }
+            if (ops == null) {
+                return of(source).fold(ident, reducer);
+            }
+            Operation[] runOps = ops;
+            if (!stateless) {
+                runOps = new Operation[ops.length];
+                for (int i = 0; i < ops.length; i++) {
+                    runOps[i] = ops[i].copyForRun();
+                }
+            }
+            return _fold(source, runOps, 0, ident, reducer);
+        }
+
+        /**
+         Returns a (lazy) Xform of this plan applied to the given source.  Use this when you want
+         one of the to___() methods instead of fold().
+         */
+        public Xform<A> of(Iterable<? extends T> source) {
+            return pipeline.apply(Xform.of(source));
+        }
+
+        /**
+         Starts a push-style run of this plan for items that arrive one at a time, for instance
+         from a queue, a channel, or a reactive-streams publisher, instead of being pulled from an
+         Iterable.  See {@link Sink} for how to handle early termination.
+
+         @param ident the accumulator and starting value.
+         @param reducer combines each transformed item with the result so far.
+         @return a new, one-time-use, not-thread-safe Sink to push items into.
+         @throws UnsupportedOperationException if this plan has more than one source (concat,
+         sorted, zip, etc.) since those need to read all of the first source before producing
+         anything.
+         */
+        public <B> Sink<T,B> push(B ident, Fn2<? super B,? super A,B> reducer) {
+            if (reducer == null) {
+                throw new IllegalArgumentException("Can't push with a null reduction function.");
+            }
+            if (ops == null) {
+                throw new UnsupportedOperationException("Only plans with a single source can be" +
+                                                        " pushed to");
+            }
+            Operation[] runOps = ops;
+            if (!stateless) {
+                runOps = new Operation[ops.length];
+                for (int i = 0; i < ops.length; i++) {
+                    runOps[i] = ops[i].copyForRun();
+                }
+            }
+            @SuppressWarnings("unchecked")
+            Fn2<Object,Object,Object> r = (Fn2<Object,Object,Object>) (Fn2<?,?,?>) reducer;
+            return new Sink<>(runOps, ident, r);
+        }
+    }
+
+    /**
+     Runs the operations of a compiled {@link Plan} on items as they are pushed in, rather than
+     pulling them from an Iterable, so no thread has to block waiting for a source to produce the
+     next item.  Each call to {@link #accept(Object)} processes the item completely before
+     returning, so a caller that only asks its upstream for more items after accept() returns
+     gets back-pressure for free.  When a take() or takeWhile() in the plan is satisfied, accept()
+     returns false and the caller should cancel its upstream.
+
+     To use this as a java.util.concurrent.Flow.Subscriber (Java 9+), call request(1) in
+     onSubscribe().  In onNext(), call accept(), then request(1), or cancel() if accept() returned
+     false.  Read result() in onComplete().
+
+     @param <T> the type of items pushed in
+     @param <B> the type of the result
+     */
+    public static final class Sink<T,B> {
+        private final Operation[] ops;
+        private final Fn2<Object,Object,Object> reducer;
+        private Object accum;
+        private boolean done = false;
+
+        private Sink(Operation[] os, Object ident, Fn2<Object,Object,Object> r) {
+            ops = os; accum = ident; reducer = r;
+            done = anyExhausted();
+        }
+
+        private boolean anyExhausted() {
+            for (Operation op : ops) {
+                if (op.isExhausted()) { return true; }
+            }
+            return false;
+        }
+
+        /**
+         Pushes one item through the operations and into the result.
+         @param item the next item from the source
+         @return true if more items are wanted, false if the transformation has terminated early
+         and the source should be cancelled.  Items pushed after that are ignored.
+         */
+        public boolean accept(T item) {
+            if (!done) {
+                step(item, 0);
+                if (!done) {
+                    done = anyExhausted();
+                }
+            }
+            return !done;
+        }
+
+        /** True if the transformation has terminated early and will accept no more items. */
+        public boolean isDone() { return done; }
+
+        /** The result so far (or the final result once the source is complete or cancelled). */
+        @SuppressWarnings("unchecked")
+        public B result() { return (B) accum; }
+
+        // This is the push version of the inner loop of _fold().
+        @SuppressWarnings("unchecked")
+        private void step(Object o, int opIdx) {
+            for (int j = opIdx; j < ops.length; j++) {
+                Operation op = ops[j];
+                if ( (op.filter != null) && !op.filter.apply(o) ) {
+                    return;
+                }
+                if (op.map != null) {
+                    o = op.map.apply(o);
+                    if (o == TERMINATE) {
+                        done = true;
+                        return;
+                    }
+                } else if (op.flatMap != null) {
+                    for (Object inner : op.flatMap.apply(o)) {
+                        step(inner, j + 1);
+                        if (done) { return; }
+                    }
+                    return;
+                }
+            }
+            accum = reducer.apply(accum, o);
+        }
+    }
+
+    /**
+     Compiles a transformation once so that it can be run repeatedly (and concurrently) against
+     different sources.  The function you pass is given a placeholder Xform to build your
+     transformation on and must not read from it.  For example:
+
+     <pre><code>Plan&lt;String,Integer&gt; plan = Xform.compile((Xform&lt;String&gt; x) -&gt;
+                                                x.filter(s -&gt; s.length() &gt; 0)
+                                                 .map(String::length));
+int total = plan.fold(someStrings, 0, (sum, len) -&gt; sum + len);</code></pre>
+
+     @param pipeline builds the transformation from a source Xform
+     @return an immutable, thread-safe Plan.
+     */
+    public static <T,A> Plan<T,A> compile(Fn1<? super Xform<T>,? extends Xform<A>> pipeline) {
+        if (pipeline == null) { throw new IllegalArgumentException("Can't compile a null pipeline"); }
+        @SuppressWarnings("unchecked")
+        Xform<T> placeholder = new SourceProviderIterableDesc<>((Iterable<T>) (Iterable) PlanSource.INSTANCE);
+        Xform<A> xform = pipeline.apply(placeholder);
+        if (xform == null) { throw new IllegalArgumentException("Pipeline returned a null Xform"); }
+        RunList runList = xform.toRunList();
+        boolean singleSource = (runList.prev == null) && (runList.source == PlanSource.INSTANCE) &&
+                               (runList.getClass() == RunList.class);
+        return new Plan<>(pipeline, singleSource ? runList.opArray() : null);
+    }
+
 //    /** Static factory methods */
 //    @SafeVarargs
 //    public static <T> Xform<T> ofArray(T... list) {
@@ -447,6 +998,30 @@ public abstract class Xform<A> implements UnmodIterable<A> {
         return new SourceProviderIterableDesc<>(list);
     }
 
+    /**
+     Lazily merges already-sorted sources into a single sorted Xform.  This is a k-way merge
+     that only ever holds one item per source, so it's a good way to combine, for instance, several
+     key ranges of sorted maps without realizing and re-sorting them.  When items from different
+     sources compare equal, those from earlier sources come first.
+
+     @param comp the ordering all the sources are already sorted by.
+     @param sources the sorted sources to merge.
+     @return a lazy Xform of all the items from all the sources, in sorted order.
+     */
+    @SafeVarargs
+    public static <T> Xform<T> mergeSorted(Comparator<? super T> comp,
+                                           Iterable<? extends T>... sources) {
+        if (comp == null) { throw new IllegalArgumentException("Can't merge with a null comparator"); }
+        if (sources == null) { throw new IllegalArgumentException("Can't merge null sources"); }
+        // Copy the sources into a List so we don't keep (or pass on) the generic varargs array.
+        List<Iterable<? extends T>> srcs = new ArrayList<>(sources.length);
+        for (Iterable<? extends T> src : sources) {
+            if (src == null) { throw new IllegalArgumentException("Can't merge a null source"); }
+            srcs.add(src);
+        }
+        return new SourceProviderIterableDesc<>(new MergeSortedIterable<>(comp, srcs));
+    }
+
     // ========================================= Instance =========================================
 
     // Fields
@@ -472,6 +1047,24 @@ public abstract class Xform<A> implements UnmodIterable<A> {
     // than lazily evaluated and cached linked-list, Sequence model.
     @SuppressWarnings("unchecked")
     private static <H> H _fold(Iterable source, Operation[] ops, int opIdx, H ident, Fn2 reducer) {
+        Object ret = _foldInner(source, ops, opIdx, ident, reducer);
+        return (H) ((ret instanceof Terminated) ? ((Terminated) ret).result : ret);
+    }
+
+    /**
+     Returned by _foldInner() when a take() or takeWhile() ends the whole fold, so that when it
+     happens inside a flatMap, the enclosing loops stop too instead of going on to the next source
+     item.  Users can't make one of these, so it can't be mistaken for a real result.
+     */
+    private static final class Terminated {
+        final Object result;
+        Terminated(Object r) { result = r; }
+    }
+
+    // Returns the result, or the result wrapped in a Terminated.
+    @SuppressWarnings("unchecked")
+    private static Object _foldInner(Iterable<?> source, Operation[] ops, int opIdx, Object ident,
+                                     Fn2<Object,Object,Object> reducer) {
         Object ret = ident;
 
         // This is a label - the first one I have used in Java in years, or maybe ever.
@@ -490,10 +1083,13 @@ public abstract class Xform<A> implements UnmodIterable<A> {
                     // roles.  Remember, the fewer functions we have to check for, the faster this
                     // will execute.
                     if (o == TERMINATE) {
-                        return (H) ret;
+                        return new Terminated(ret);
                     }
                 } else if (op.flatMap != null) {
-                    ret = _fold(op.flatMap.apply(o), ops, j + 1, (H) ret, reducer);
+                    ret = _foldInner(op.flatMap.apply(o), ops, j + 1, ret, reducer);
+                    if (ret instanceof Terminated) {
+                        return ret;
+                    }
                     // stop processing this source item and go to the next one.
                     continue sourceLoop;
                 }
@@ -504,8 +1100,8 @@ public abstract class Xform<A> implements UnmodIterable<A> {
             // Here, the item made it through all the operations.  Combine it with the result.
             ret = reducer.apply(ret, o);
         }
-        return (H) ret;
-    } // end _fold();
+        return ret;
+    } // end _foldInner();
 
     @Override public UnmodIterator<A> iterator() {
         // TODO: I had a really fast array-list implementation that I could probably hack into this for performance (assuming it actually works).
@@ -547,6 +1143,168 @@ public abstract class Xform<A> implements UnmodIterable<A> {
 //        return precat(Arrays.asList(list));
 //    }
 
+    /**
+     Lazily removes duplicate items, keeping the first of each in the original order.  Items seen
+     so far are remembered in a {@link PersistentHashSet.MutableHashSet} which is created fresh for
+     each fold, so memory use is proportional to the number of distinct items.  For unbounded
+     streams, see {@link #distinctApprox(long, double)}.
+     */
+    public Xform<A> distinct() { return distinct(Equator.defaultEquator()); }
+
+    /**
+     Lazily removes duplicate items as determined by the given Equator, keeping the first of each
+     in the original order.
+     @param eq determines which items are duplicates.
+     */
+    public Xform<A> distinct(Equator<? super A> eq) {
+        if (eq == null) { throw new IllegalArgumentException("Can't distinct with a null equator."); }
+        @SuppressWarnings("unchecked")
+        Equator<A> e = (Equator<A>) eq;
+        return new DistinctDesc<>(this, Fn1.identity(), e, 0, 0);
+    }
+
+    /**
+     Lazily removes items whose key (as computed by the given function) has been seen before,
+     keeping the first item for each key in the original order.
+     @param keyFn computes the key to compare items by.
+     */
+    public <K> Xform<A> distinctBy(Fn1<? super A,? extends K> keyFn) {
+        return distinctBy(keyFn, Equator.defaultEquator());
+    }
+
+    /**
+     Lazily removes items whose key (as computed by the given function and compared with the given
+     Equator) has been seen before, keeping the first item for each key in the original order.
+     @param keyFn computes the key to compare items by.
+     @param eq determines which keys are duplicates.
+     */
+    public <K> Xform<A> distinctBy(Fn1<? super A,? extends K> keyFn, Equator<K> eq) {
+        if (keyFn == null) { throw new IllegalArgumentException("Can't distinctBy with a null function."); }
+        if (eq == null) { throw new IllegalArgumentException("Can't distinctBy with a null equator."); }
+        return new DistinctDesc<>(this, keyFn, eq, 0, 0);
+    }
+
+    /**
+     Like {@link #distinct()}, but uses a fixed-size Bloom filter instead of a set, so memory does
+     not grow with the number of distinct items.  The trade-off is that a small fraction of items
+     which were NOT seen before will be dropped as if they were duplicates (false positives).  No
+     duplicate is ever let through.  If more than expectedItems distinct items pass through, the
+     false-positive rate climbs above the one requested.
+
+     @param expectedItems the number of distinct items the filter is sized for.
+     @param falsePositiveRate the acceptable fraction (between 0 and 1 exclusive) of new items
+                              mistakenly dropped.
+     */
+    public Xform<A> distinctApprox(long expectedItems, double falsePositiveRate) {
+        return distinctApproxBy(Fn1.identity(), Equator.defaultEquator(), expectedItems,
+                                falsePositiveRate);
+    }
+
+    /**
+     Like {@link #distinctBy(Fn1, Equator)}, but uses a fixed-size Bloom filter of the equator's
+     hash codes.  See {@link #distinctApprox(long, double)} for the trade-offs.  Since only hash
+     codes are stored, an Equator with a poor hash function raises the false-positive rate.
+     */
+    public <K> Xform<A> distinctApproxBy(Fn1<? super A,? extends K> keyFn, Equator<K> eq,
+                                         long expectedItems, double falsePositiveRate) {
+        if (keyFn == null) { throw new IllegalArgumentException("Can't distinct with a null function."); }
+        if (eq == null) { throw new IllegalArgumentException("Can't distinct with a null equator."); }
+        if (expectedItems < 1) {
+            throw new IllegalArgumentException("Expected items must be > 0");
+        }
+        if ( !(falsePositiveRate > 0.0) || !(falsePositiveRate < 1.0) ) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1 exclusive");
+        }
+        int bits = BloomFilter.optimalBits(expectedItems, falsePositiveRate);
+        return new DistinctDesc<>(this, keyFn, eq, bits,
+                                  BloomFilter.optimalHashes(expectedItems, bits));
+    }
+
+    /**
+     The underlying source if this Xform is nothing but a source, otherwise this Xform itself.
+     Reading from the source directly lets zip and friends avoid realizing the previous
+     transformation as a list.
+     */
+    private Iterable<? extends A> lazySource() {
+        //noinspection unchecked
+        return (this instanceof SourceProviderIterableDesc)
+               ? ((SourceProviderIterableDesc<A>) this).list
+               : this;
+    }
+
+    /**
+     Pairs each item from this Xform with the corresponding item of the other Iterable, stopping
+     when either one runs out.
+     @param other the source for the second item in each pair.
+     @return a lazy Xform of pairs.
+     */
+    public <B> Xform<Tuple2<A,B>> zip(Iterable<? extends B> other) {
+        return zipWith(other, Tuple2::of);
+    }
+
+    /**
+     Combines each item from this Xform with the corresponding item of the other Iterable using the
+     given function, stopping when either one runs out.
+     @param other the source for the second argument to the function.
+     @param f combines an item from this Xform with one from the other Iterable.
+     @return a lazy Xform of the results of the function.
+     */
+    public <B,C> Xform<C> zipWith(Iterable<? extends B> other,
+                                  Fn2<? super A,? super B,? extends C> f) {
+        if (other == null) { throw new IllegalArgumentException("Can't zip with a null iterable"); }
+        if (f == null) { throw new IllegalArgumentException("Can't zip with a null function"); }
+        return new SourceProviderIterableDesc<>(new ZipIterable<>(lazySource(), other, f));
+    }
+
+    /**
+     Alternates items from this Xform with items from the other Iterable, starting with this one.
+     When one runs out, the remaining items of the other are appended.
+     @param other the items to interleave with.
+     @return a lazy Xform of the interleaved items.
+     */
+    public Xform<A> interleave(Iterable<? extends A> other) {
+        if (other == null) { throw new IllegalArgumentException("Can't interleave a null iterable"); }
+        return new SourceProviderIterableDesc<>(new InterleaveIterable<>(lazySource(), other));
+    }
+
+    /**
+     Sorts all the items once (when the transform is run) then lazily passes them to any
+     subsequent operations.  The sort is stable.  If you only need the first few sorted items, use
+     {@link #bottomK(int, Comparator)} or {@link #topK(int, Comparator)} instead.
+     @param comp determines the order of the output.
+     @return a lazy Xform of the sorted items.
+     */
+    public Xform<A> sorted(Comparator<? super A> comp) {
+        if (comp == null) { throw new IllegalArgumentException("Can't sort with a null comparator"); }
+        return new SortDesc<>(this, comp, -1);
+    }
+
+    /**
+     Returns the k greatest items (according to the comparator), greatest first.  While the
+     transform runs, only a heap of k items is kept, so this uses O(k) memory and O(n log k) time
+     no matter how big the input is.  The order of items that compare equal is not defined.
+     @param k the maximum number of items to return.
+     @param comp determines which items are greatest.
+     @return a lazy Xform of up to k items in descending order.
+     */
+    public Xform<A> topK(int k, Comparator<? super A> comp) {
+        if (k < 0) { throw new IllegalArgumentException("k must be >= 0"); }
+        if (comp == null) { throw new IllegalArgumentException("Can't topK with a null comparator"); }
+        return new SortDesc<>(this, comp, k);
+    }
+
+    /**
+     Returns the k least items (according to the comparator), least first.  Like
+     {@link #topK(int, Comparator)} this uses O(k) memory.
+     @param k the maximum number of items to return.
+     @param comp determines which items are least.
+     @return a lazy Xform of up to k items in ascending order.
+     */
+    public Xform<A> bottomK(int k, Comparator<? super A> comp) {
+        if (comp == null) { throw new IllegalArgumentException("Can't bottomK with a null comparator"); }
+        return topK(k, comp.reversed());
+    }
+
     /** The number of items to drop from the beginning of the output. */
     @Override public Xform<A> drop(long n) {
         if (n < 0) { throw new IllegalArgumentException("Can't drop less than zero items."); }
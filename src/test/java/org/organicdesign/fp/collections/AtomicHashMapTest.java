@@ -0,0 +1,167 @@
+package org.organicdesign.fp.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.organicdesign.fp.collections.PersistentHashMap.MutableHashMap;
+import org.organicdesign.fp.function.Fn1;
+
+import static org.junit.Assert.*;
+import static org.organicdesign.fp.TestUtilities.assertEx;
+
+public class AtomicHashMapTest {
+    @Test public void basics() {
+        AtomicHashMap<String,Integer> a = AtomicHashMap.of(PersistentHashMap.empty());
+        assertEquals(PersistentHashMap.empty(), a.get());
+        assertEquals(PersistentHashMap.empty().assoc("a", 1), a.assoc("a", 1));
+        assertEquals(Integer.valueOf(2), a.update(m -> m.assoc("a", m.get("a") + 1)).get("a"));
+        assertEquals(1, a.swap(m -> m.assoc("b", 3)).without("b").size());
+        assertEquals(1, a.without("b").size());
+        PersistentHashMap<String,Integer> current = a.get();
+        assertFalse(a.compareAndSet(current.assoc("c", 0), PersistentHashMap.empty()));
+        assertTrue(a.compareAndSet(current, PersistentHashMap.empty()));
+        assertEquals(0, a.apply().size());
+        assertEquals(3, a.batches());
+        assertEquals(3, a.batchedChanges());
+        assertEquals(1, a.swaps());
+        assertEquals("AtomicHashMap(PersistentHashMap())", a.toString());
+
+        assertEx(() -> AtomicHashMap.of(null), "Initial map can't be null",
+                 IllegalArgumentException.class);
+        assertEx(() -> a.swap(m -> null), "swap function returned null",
+                 IllegalArgumentException.class);
+        assertEx(() -> a.compareAndSet(a.get(), null), "New map can't be null",
+                 IllegalArgumentException.class);
+        assertEx(() -> a.update(null), "Can't update with a null function",
+                 IllegalArgumentException.class);
+    }
+
+    @Test public void failedChange() {
+        AtomicHashMap<String,Integer> a = AtomicHashMap.of(PersistentHashMap.empty());
+        a.assoc("x", 1);
+        assertEx(() -> a.update(m -> {
+                     m.assoc("partly", 0);
+                     throw new IllegalStateException("test exception");
+                 }),
+                 "test exception", IllegalStateException.class);
+        assertEquals(PersistentHashMap.empty().assoc("x", 1), a.get());
+    }
+
+    @Test(timeout = 10000)
+    public void failedBatch() throws InterruptedException {
+        AtomicHashMap<String,Integer> a = AtomicHashMap.of(PersistentHashMap.empty());
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Throwable> combinerFailure = new AtomicReference<>();
+        // Holds the combiner lock while the other two queue up behind it.
+        Thread combiner = new Thread(() -> {
+            try {
+                a.update(m -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return m.assoc("first", 1);
+                });
+            } catch (Throwable t) {
+                combinerFailure.set(t);
+            }
+        });
+        combiner.start();
+        while (!combiner.getState().equals(Thread.State.WAITING)) {
+            Thread.yield();
+        }
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> waiters = new ArrayList<>();
+        // The first change breaks its MutableHashMap, so storing the batch fails.
+        for (Fn1<MutableHashMap<String,Integer>,?> change :
+                Arrays.<Fn1<MutableHashMap<String,Integer>,?>>asList(m -> m.immutable(),
+                                                                      m -> m.assoc("x", 1))) {
+            Thread t = new Thread(() -> {
+                try {
+                    a.update(change);
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            waiters.add(t);
+            t.start();
+            while (!t.getState().equals(Thread.State.TIMED_WAITING)) {
+                Thread.yield();
+            }
+        }
+        release.countDown();
+        combiner.join();
+        for (Thread t : waiters) { t.join(); }
+
+        // The combiner's own change worked.  Both changes in the failed batch got its exception.
+        assertNull(combinerFailure.get());
+        assertEquals(2, failures.size());
+        for (Throwable t : failures) {
+            assertTrue(t instanceof IllegalAccessError);
+        }
+        assertEquals(PersistentHashMap.empty().assoc("first", 1), a.get());
+        assertEquals(Integer.valueOf(2), a.update(m -> m.assoc("y", 2)).get("y"));
+    }
+
+    private static void runAll(int threads, Runnable r) throws InterruptedException {
+        List<Thread> ts = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            ts.add(new Thread(r));
+        }
+        for (Thread t : ts) { t.start(); }
+        for (Thread t : ts) { t.join(); }
+    }
+
+    @Test public void concurrentWriters() throws InterruptedException {
+        AtomicHashMap<Integer,Integer> a = AtomicHashMap.of(PersistentHashMap.empty());
+        AtomicInteger nextKey = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        int threads = 32;
+        int each = 1000;
+        runAll(threads, () -> {
+            for (int i = 0; i < each; i++) {
+                int key = nextKey.getAndIncrement();
+                switch (i % 4) {
+                    case 0:
+                        a.assoc(key, key);
+                        break;
+                    case 1:
+                        // Mix swaps in with batches
+                        a.swap(m -> m.assoc(key, key));
+                        break;
+                    case 2:
+                        a.update(m -> m.assoc(key, key).assoc(-1, m.getOrElse(-1, 0) + 1));
+                        break;
+                    default:
+                        try {
+                            a.update(m -> {
+                                m.assoc(key, key);
+                                throw new IllegalStateException("test exception");
+                            });
+                        } catch (IllegalStateException expected) {
+                            failures.incrementAndGet();
+                        }
+                }
+            }
+        });
+        PersistentHashMap<Integer,Integer> m = a.get();
+        int n = threads * each;
+        assertEquals(n / 4, failures.get());
+        // Everything but the failed changes, plus the counter
+        assertEquals(n - (n / 4) + 1, m.size());
+        assertEquals(Integer.valueOf(n / 4), m.get(-1));
+        for (int key = 0; key < n; key++) {
+            assertEquals(m.containsKey(key) ? Integer.valueOf(key) : null, m.get(key));
+        }
+        assertEquals(n / 4, a.swaps());
+        assertEquals(3 * n / 4, a.batchedChanges());
+        assertTrue(a.batches() <= a.batchedChanges());
+    }
+}
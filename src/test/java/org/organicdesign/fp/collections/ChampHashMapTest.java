@@ -0,0 +1,152 @@
+package org.organicdesign.fp.collections;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Random;
+
+import org.junit.Test;
+import org.organicdesign.fp.oneOf.Option;
+import org.organicdesign.fp.tuple.Tuple2;
+
+import static org.junit.Assert.*;
+import static org.organicdesign.fp.StaticImports.tup;
+import static org.organicdesign.fp.TestUtilities.serializeDeserialize;
+import static org.organicdesign.fp.collections.PersistentHashMapTest.mapIterTest;
+
+public class ChampHashMapTest {
+
+    // Only looks at the low few bits of the hash so that we get lots of full-hash collisions.
+    private static final Equator<Integer> FEW_HASHES = new Equator<Integer>() {
+        @Override public int hash(Integer i) { return i % 37; }
+        @Override public boolean eq(Integer a, Integer b) { return Objects.equals(a, b); }
+    };
+
+    private static void checkSame(Map<Integer,Integer> control, BaseUnsortedMap<Integer,Integer> test) {
+        assertEquals(control.size(), test.size());
+        mapIterTest(control, test.iterator());
+        for (Map.Entry<Integer,Integer> e : control.entrySet()) {
+            assertEquals(Option.some(Tuple2.of(e.getKey(), e.getValue())), test.entry(e.getKey()));
+        }
+        int keys = 0;
+        for (Integer ignored : test.keySet()) { keys++; }
+        assertEquals(control.size(), keys);
+    }
+
+    private static void randomOps(Equator<Integer> eq, int range) {
+        Random rand = new Random(20170610L);
+        Map<Integer,Integer> control = new HashMap<>();
+        ImMap<Integer,Integer> im = ChampHashMap.empty(eq);
+        MutableMap<Integer,Integer> mu = ChampHashMap.emptyMutable(eq);
+        for (int i = 0; i < 20000; i++) {
+            Integer key = (rand.nextInt(50) == 0) ? null : rand.nextInt(range);
+            if (rand.nextInt(3) == 0) {
+                control.remove(key);
+                im = im.without(key);
+                mu.without(key);
+            } else {
+                control.put(key, i);
+                im = im.assoc(key, i);
+                mu.assoc(key, i);
+            }
+            assertEquals(control.size(), im.size());
+            assertEquals(control.size(), mu.size());
+            if ((i % 1000) == 0) {
+                checkSame(control, im);
+                checkSame(control, mu);
+            }
+        }
+        checkSame(control, im);
+        checkSame(control, mu);
+        assertEquals(im, mu.immutable());
+
+        // Remove everything and make sure the map really is empty again.
+        for (Integer key : control.keySet()) {
+            im = im.without(key);
+        }
+        assertEquals(0, im.size());
+        assertFalse(im.iterator().hasNext());
+    }
+
+    @Test public void randomOpsDefaultEquator() {
+        randomOps(Equator.defaultEquator(), 5000);
+        randomOps(Equator.defaultEquator(), 100000);
+    }
+
+    @Test public void randomOpsCollisions() { randomOps(FEW_HASHES, 2000); }
+
+    @Test public void basics() {
+        ChampHashMap<String,Integer> m = ChampHashMap.empty();
+        assertEquals(0, m.size());
+        assertFalse(m.iterator().hasNext());
+        assertEquals(Option.none(), m.entry("a"));
+        assertTrue(m == m.without("a"));
+        assertTrue(m == m.without(null));
+
+        ChampHashMap<String,Integer> m1 = m.assoc("one", 1);
+        assertTrue(m1 == m1.assoc("one", 1));
+        assertEquals(Integer.valueOf(1), m1.get("one"));
+        assertEquals(0, m.size());
+
+        ChampHashMap<String,Integer> m2 = m1.assoc(null, 2).assoc("three", 3);
+        assertEquals(3, m2.size());
+        assertEquals(Option.some(tup(null, 2)), m2.entry(null));
+        assertTrue(m2.containsKey(null));
+        assertEquals(2, m2.without("one").size());
+        assertFalse(m2.without(null).containsKey(null));
+
+        Map<String,Integer> control = new HashMap<>();
+        control.put("one", 1);
+        control.put(null, 2);
+        control.put("three", 3);
+        assertEquals(control, m2);
+        assertEquals(m2, control);
+        assertEquals(control.hashCode(), m2.hashCode());
+        assertEquals(PersistentHashMap.of(control.entrySet()), m2);
+        mapIterTest(control, m2.iterator());
+        mapIterTest(control, serializeDeserialize(m2).iterator());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void iterEx() { ChampHashMap.empty().iterator().next(); }
+
+    @Test(expected = IllegalAccessError.class)
+    public void mutableAfterImmutable() {
+        MutableMap<String,Integer> mu = ChampHashMap.emptyMutable();
+        mu.assoc("a", 1);
+        mu.immutable();
+        mu.assoc("b", 2);
+    }
+
+    @Test public void mutableDoesNotChangeOriginal() {
+        ChampHashMap<Integer,Integer> orig = ChampHashMap.empty();
+        for (int i = 0; i < 1000; i++) {
+            orig = orig.assoc(i, i);
+        }
+        MutableMap<Integer,Integer> mu = orig.mutable();
+        for (int i = 0; i < 1000; i += 2) {
+            mu.without(i);
+            mu.assoc(i + 1, -i);
+        }
+        assertEquals(1000, orig.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.valueOf(i), orig.get(i));
+        }
+        assertEquals(500, mu.size());
+    }
+
+    @Test public void engineFactory() {
+        for (HashMapEngine engine : HashMapEngine.values()) {
+            ImMap<String,Integer> m = engine.of(java.util.Arrays.asList(tup("a", 1), null,
+                                                                        tup("b", 2), tup("a", 3)));
+            assertEquals(2, m.size());
+            assertEquals(Integer.valueOf(3), m.get("a"));
+            assertEquals(0, engine.empty().size());
+            assertTrue(engine.emptyMutable().assoc("c", 4).immutable().containsKey("c"));
+        }
+        assertTrue(HashMapEngine.HAMT.empty() instanceof PersistentHashMap);
+        assertTrue(HashMapEngine.CHAMP.empty() instanceof ChampHashMap);
+        assertTrue(HashMapEngine.CHAMP.empty(FEW_HASHES).equator() == FEW_HASHES);
+    }
+}
@@ -53,6 +53,34 @@ public class EquatorTest {
         assertFalse(defaultEquator().neq(Integer.MIN_VALUE + 3, Integer.MIN_VALUE + 3));
     }
 
+    @Test public void spreadingEquatorTest() {
+        assertEquals(0, Equator.spread(0));
+        assertEquals(0, Equator.spreadingEquator().hash(null));
+        // Sequential inputs shouldn't make sequential (or equal) outputs.
+        java.util.Set<Integer> lowBits = new java.util.HashSet<>();
+        for (int i = 0; i < 1024; i++) {
+            lowBits.add(Equator.spread(i << 10) & 0x1f);
+        }
+        assertEquals(32, lowBits.size());
+
+        Equator<Object> spread = Equator.spreadingEquator();
+        assertEquals(Equator.spread("hello".hashCode()), spread.hash("hello"));
+        assertTrue(spread.eq("hello", "hello"));
+        assertFalse(spread.eq("hello", null));
+        assertTrue(spread == Equator.defaultEquator().spreading());
+        assertTrue(spread == spread.spreading());
+
+        Equator<String> caseless = new Equator<String>() {
+            @Override public int hash(String s) { return s.toLowerCase().hashCode(); }
+            @Override public boolean eq(String a, String b) { return a.equalsIgnoreCase(b); }
+        };
+        Equator<String> spreadCaseless = caseless.spreading();
+        assertTrue(spreadCaseless == spreadCaseless.spreading());
+        assertEquals(caseless.spreading(), spreadCaseless);
+        assertEquals(Equator.spread(caseless.hash("Hi")), spreadCaseless.hash("hI"));
+        assertTrue(spreadCaseless.eq("Hi", "hI"));
+    }
+
 //    @Test public void arrayEquatorTest() {
 //        assertEquals(Equat.ARRAY.hash(new Integer[] { 1, 2, 3 }),
 //                     Equat.ARRAY.hash(new Integer[] { 1, 2, 3 }));
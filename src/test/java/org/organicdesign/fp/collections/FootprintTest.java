@@ -0,0 +1,135 @@
+package org.organicdesign.fp.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.organicdesign.fp.TestUtilities;
+
+import static org.junit.Assert.*;
+
+public class FootprintTest {
+    private static int count(Footprint f, String type) {
+        return f.nodeCounts().getOrElse(type, 0);
+    }
+
+    @Test public void hashMaps() {
+        PersistentHashMap<Integer,Integer> phm = PersistentHashMap.empty();
+        ChampHashMap<Integer,Integer> champ = ChampHashMap.empty();
+        Random rand = new Random(20170610L);
+        for (int i = 0; i < 20000; i++) {
+            int k = rand.nextInt();
+            phm = phm.assoc(k, i);
+            champ = champ.assoc(k, i);
+        }
+        Footprint pf = phm.footprint();
+        assertEquals(1, count(pf, "PersistentHashMap"));
+        assertTrue(count(pf, "ArrayNode") > 0);
+        assertTrue(count(pf, "BitmapIndexedNode") > 0);
+        assertEquals(pf.nodes(), pf.nodeCounts().values().stream().mapToInt(i -> i).sum());
+        assertTrue(pf.fillRatio() > 0.0);
+        assertTrue(pf.fillRatio() <= 1.0);
+        assertTrue(pf.usedSlots() <= pf.slots());
+
+        Footprint cf = champ.footprint();
+        assertEquals(1, count(cf, "ChampHashMap"));
+        assertEquals(1.0, cf.fillRatio(), 0.0);
+        assertTrue("CHAMP: " + cf + " HAMT: " + pf, cf.estimatedBytes() < pf.estimatedBytes());
+
+        // Changing one entry copies one path from the root, so nearly everything is shared.
+        PersistentHashMap<Integer,Integer> phm2 = phm.assoc(-1, -1);
+        long shared = Footprint.sharedBytes(phm, phm2);
+        assertTrue(shared > pf.estimatedBytes() * 9 / 10);
+        assertTrue(shared < pf.estimatedBytes());
+        assertEquals(pf.estimatedBytes(), Footprint.sharedBytes(phm, phm));
+        assertEquals(0, Footprint.sharedBytes(phm, champ));
+
+        PersistentHashSet<Integer> set = PersistentHashSet.of(phm.keySet());
+        Footprint sf = set.footprint();
+        assertEquals(1, count(sf, "PersistentHashSet"));
+        assertEquals(1, count(sf, "PersistentHashMap"));
+
+        MutableMap<Integer,Integer> mutable = phm.mutable();
+        assertEquals(1, count(Footprint.of(mutable), "MutableHashMap"));
+        assertEquals(1, count(Footprint.of(champ.mutable()), "MutableChampMap"));
+    }
+
+    @Test public void trees() {
+        // One full Strict node of full leaves, plus one item in the focus, so every slot is used
+        // at any radix.
+        RrbTree.ImRrbt<Integer> strict = RrbTree.empty();
+        int bf = RrbTree.branchingFactor();
+        for (int i = 0; i <= bf * bf; i++) {
+            strict = strict.append(i);
+        }
+        assertEquals(1.0, strict.footprint().fillRatio(), 0.0);
+        Footprint sf = strict.footprint();
+        assertEquals(0, count(sf, "Relaxed"));
+        assertTrue(count(sf, "Strict") > 0);
+        assertEquals(strict.relaxationStats().leaves(), count(sf, "Leaf"));
+        // get() caches a leaf, which is counted too.
+        assertEquals(0, count(sf, "LeafCache"));
+        strict.get(0);
+        assertEquals(1, count(strict.footprint(), "LeafCache"));
+        assertEquals(sf.estimatedBytes() + 24, strict.footprint().estimatedBytes());
+
+        RrbTree.ImRrbt<Integer> relaxed = strict;
+        Random rand = new Random(20170610L);
+        for (int i = 0; i < 200; i++) {
+            relaxed = relaxed.insert(rand.nextInt(relaxed.size()), -i);
+        }
+        Footprint rf = relaxed.footprint();
+        assertTrue(count(rf, "Relaxed") > 0);
+        assertEquals(relaxed.relaxationStats().relaxedNodes(), count(rf, "Relaxed"));
+        assertEquals(relaxed.relaxationStats().leaves(), count(rf, "Leaf"));
+        assertTrue(Footprint.sharedBytes(strict, strict.insert(0, -1)) > 0);
+        // How full relaxed leaves are depends on the radix, but it can't beat a full strict tree.
+        assertTrue(rf.fillRatio() <= sf.fillRatio());
+
+        PersistentVector<Integer> pv = PersistentVector.empty();
+        for (int i = 0; i < 1000; i++) {
+            pv = pv.append(i);
+        }
+        Footprint vf = pv.footprint();
+        // 1000 / 32 = 31 full leaves with 8 items left in the tail.
+        assertEquals(31, count(vf, "Leaf"));
+        assertEquals(1, count(vf, "tail"));
+        assertTrue(Footprint.sharedBytes(pv, pv.replace(0, -1)) > vf.estimatedBytes() * 9 / 10);
+        assertEquals(1, count(Footprint.of(pv.mutable()), "MutableVector"));
+
+        PersistentTreeMap<Integer,String> ptm = PersistentTreeMap.empty();
+        for (int i = 0; i < 1000; i++) {
+            ptm = ptm.assoc(i, "");
+        }
+        Footprint tf = ptm.footprint();
+        assertEquals(1000, count(tf, "Black") + count(tf, "BlackBranch") +
+                           count(tf, "Red") + count(tf, "RedBranch"));
+        assertEquals(1, count(PersistentTreeSet.of(ptm.keySet()).footprint(),
+                              "PersistentTreeSet"));
+    }
+
+    @Test public void exactBytes() {
+        // Deque object: 12 header + 2 refs + 2 ints = 28, padded to 32.
+        // Each Cons: 12 + 2 refs = 20, padded to 24.
+        PersistentDeque<String> d = PersistentDeque.of(Arrays.asList("a", "b", "c"));
+        Footprint df = d.footprint();
+        assertEquals(4, df.nodes());
+        assertEquals(3, count(df, "Cons"));
+        assertEquals(32 + (3 * 24), df.estimatedBytes());
+        assertEquals(1.0, df.fillRatio(), 0.0);
+
+        PersistentDeque<String> d2 = d.pushFront("z");
+        // Pushing onto the front adds one Cons cell and shares all the old ones.
+        assertEquals(3 * 24, Footprint.sharedBytes(d, d2));
+        assertTrue(d2.footprint().toString().startsWith("Footprint(nodes="));
+    }
+
+    @Test public void unknown() {
+        TestUtilities.assertEx(() -> Footprint.of(new ArrayList<>()),
+                               "Don't know how to measure a java.util.ArrayList",
+                               IllegalArgumentException.class);
+        TestUtilities.assertEx(() -> Footprint.of(null), "Don't know how to measure a null",
+                               IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,197 @@
+package org.organicdesign.fp.collections;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.organicdesign.fp.oneOf.Option;
+
+import static org.junit.Assert.*;
+import static org.organicdesign.fp.StaticImports.tup;
+import static org.organicdesign.fp.TestUtilities.assertEx;
+import static org.organicdesign.fp.collections.PersistentHashMapTest.mapIterTest;
+
+public class MappedHashMapTest {
+    private Path file;
+
+    @Before public void setUp() throws IOException {
+        file = Files.createTempFile("MappedHashMapTest", ".map");
+    }
+
+    @After public void tearDown() throws IOException { Files.deleteIfExists(file); }
+
+    private static void checkSame(Map<String,String> control, MappedHashMap<String,String> m) {
+        assertEquals(control.size(), m.size());
+        for (Map.Entry<String,String> e : control.entrySet()) {
+            assertEquals(e.getValue(), m.get(e.getKey()));
+            assertTrue(m.containsKey(e.getKey()));
+        }
+        mapIterTest(control, m.iterator());
+        assertEquals(control, m);
+        assertEquals(m, control);
+        assertEquals(control.hashCode(), m.hashCode());
+    }
+
+    @Test public void strings() throws IOException {
+        Map<String,String> control = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            control.put("key" + i, (i % 100 == 0) ? null : "val" + i);
+        }
+        // "Aa" and "BB" have the same hashCode, so they end up in a collision node.
+        control.put("Aa", "x");
+        control.put("BB", "y");
+        MappedHashMap.write(file, control.entrySet(), MappedHashMap.Format.STRING,
+                            MappedHashMap.Format.STRING);
+        MappedHashMap<String,String> m = MappedHashMap.open(file, MappedHashMap.Format.STRING,
+                                                            MappedHashMap.Format.STRING);
+        checkSame(control, m);
+        assertEquals(Option.none(), m.entry("missing"));
+        assertEquals(Option.none(), m.entry(null));
+        assertEquals(Equator.defaultEquator(), m.equator());
+        assertEquals(PersistentHashMap.of(control.entrySet()), m);
+    }
+
+    @Test public void emptyAndDuplicates() throws IOException {
+        MappedHashMap.write(file, new ArrayList<>(), MappedHashMap.Format.STRING,
+                            MappedHashMap.Format.STRING);
+        MappedHashMap<String,String> m = MappedHashMap.open(file, MappedHashMap.Format.STRING,
+                                                            MappedHashMap.Format.STRING);
+        assertEquals(0, m.size());
+        assertFalse(m.iterator().hasNext());
+        assertNull(m.get("a"));
+
+        List<Map.Entry<String,String>> entries =
+                Arrays.asList(tup("a", "1"), null, tup("Aa", "2"), tup("a", "3"), tup("BB", "4"),
+                              tup("Aa", "5"));
+        MappedHashMap.write(file, entries, MappedHashMap.Format.STRING,
+                            MappedHashMap.Format.STRING);
+        m = MappedHashMap.open(file, MappedHashMap.Format.STRING, MappedHashMap.Format.STRING);
+        Map<String,String> control = new HashMap<>();
+        control.put("a", "3");
+        control.put("Aa", "5");
+        control.put("BB", "4");
+        checkSame(control, m);
+
+        assertEx(() -> {
+                     MappedHashMap.write(file, Arrays.asList(tup(null, "x")),
+                                         MappedHashMap.Format.STRING,
+                                         MappedHashMap.Format.STRING);
+                     return null;
+                 },
+                 "MappedHashMap doesn't support null keys", IllegalArgumentException.class);
+    }
+
+    @Test public void longsAndBytes() throws IOException {
+        Map<Long,byte[]> longs = new HashMap<>();
+        for (long i = -500; i < 500; i++) {
+            longs.put(i * 1000000007L, new byte[] { (byte) i, 1, 2 });
+        }
+        MappedHashMap.write(file, longs.entrySet(), MappedHashMap.Format.LONG,
+                            MappedHashMap.Format.BYTES);
+        MappedHashMap<Long,byte[]> lm = MappedHashMap.open(file, MappedHashMap.Format.LONG,
+                                                           MappedHashMap.Format.BYTES);
+        assertEquals(longs.size(), lm.size());
+        for (Map.Entry<Long,byte[]> e : longs.entrySet()) {
+            assertArrayEquals(e.getValue(), lm.get(e.getKey()));
+        }
+
+        // byte[] keys compare by contents, not identity.
+        List<Map.Entry<byte[],Long>> bytes = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            bytes.add(tup(("k" + i).getBytes("UTF-8"), (long) i));
+        }
+        MappedHashMap.write(file, bytes, MappedHashMap.Format.BYTES, MappedHashMap.Format.LONG);
+        MappedHashMap<byte[],Long> bm = MappedHashMap.open(file, MappedHashMap.Format.BYTES,
+                                                           MappedHashMap.Format.LONG);
+        assertEquals(1000, bm.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Long.valueOf(i), bm.get(("k" + i).getBytes("UTF-8")));
+        }
+        assertNull(bm.get(new byte[] { 1 }));
+    }
+
+    @Test public void smallSegments() throws IOException {
+        Map<String,String> control = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            control.put("key" + i, "value" + i);
+        }
+        MappedHashMap.write(file, control.entrySet(), MappedHashMap.Format.STRING,
+                            MappedHashMap.Format.STRING, 10);
+        assertTrue(Files.size(file) > 100 * 1024);
+        checkSame(control, MappedHashMap.open(file, MappedHashMap.Format.STRING,
+                                              MappedHashMap.Format.STRING));
+
+        char[] big = new char[2000];
+        Arrays.fill(big, 'x');
+        assertEx(() -> {
+                     MappedHashMap.write(file, Arrays.asList(tup("big", new String(big))),
+                                         MappedHashMap.Format.STRING,
+                                         MappedHashMap.Format.STRING, 10);
+                     return null;
+                 },
+                 "Entry too big for a MappedHashMap: 2015", IllegalArgumentException.class);
+    }
+
+    @Test public void changes() throws IOException {
+        Map<String,String> control = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            control.put("key" + i, "val" + i);
+        }
+        MappedHashMap.write(file, control.entrySet(), MappedHashMap.Format.STRING,
+                            MappedHashMap.Format.STRING);
+        MappedHashMap<String,String> orig = MappedHashMap.open(file, MappedHashMap.Format.STRING,
+                                                               MappedHashMap.Format.STRING);
+        MappedHashMap<String,String> m = orig;
+        for (int i = 0; i < 1000; i += 3) {
+            m = m.without("key" + i);
+            control.remove("key" + i);
+            m = m.assoc("new" + i, "n" + i);
+            control.put("new" + i, "n" + i);
+        }
+        m = m.assoc("key1", "changed");
+        control.put("key1", "changed");
+        m = m.without("new3");
+        control.remove("new3");
+        assertTrue(m == m.without("missing"));
+        checkSame(control, m);
+        assertEquals(1000, orig.size());
+        assertEquals("val0", orig.get("key0"));
+
+        MutableMap<String,String> mu = m.mutable();
+        mu.assoc("mutable", "yes");
+        assertEquals(control.size() + 1, mu.size());
+        assertEquals(control.size(), m.size());
+
+        assertEx(() -> orig.assoc(null, "x"), "MappedHashMap doesn't support null keys",
+                 IllegalArgumentException.class);
+    }
+
+    @Test public void badFiles() throws IOException {
+        Files.write(file, new byte[] { 1, 2, 3 });
+        try {
+            MappedHashMap.open(file, MappedHashMap.Format.STRING, MappedHashMap.Format.STRING);
+            fail("Should have thrown");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().startsWith("Not a MappedHashMap file"));
+        }
+
+        MappedHashMap.write(file, Arrays.asList(tup("a", "b")), MappedHashMap.Format.STRING,
+                            MappedHashMap.Format.STRING);
+        try {
+            MappedHashMap.open(file, MappedHashMap.Format.LONG, MappedHashMap.Format.STRING);
+            fail("Should have thrown");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage()
+                               .startsWith("File was written with key format STRING and value" +
+                                           " format STRING"));
+        }
+    }
+}
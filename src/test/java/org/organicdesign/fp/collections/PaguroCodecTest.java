@@ -0,0 +1,404 @@
+package org.organicdesign.fp.collections;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.organicdesign.fp.StaticImports.tup;
+
+public class PaguroCodecTest {
+
+    private static byte[] write(boolean share, Object... items) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (PaguroCodec.Writer w = new PaguroCodec.Writer(bos, share)) {
+            for (Object item : items) {
+                w.write(item);
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    private static List<Object> read(byte[] bytes, int count)
+            throws IOException, ClassNotFoundException {
+        List<Object> ret = new ArrayList<>();
+        try (PaguroCodec.Reader r = new PaguroCodec.Reader(new ByteArrayInputStream(bytes))) {
+            for (int i = 0; i < count; i++) {
+                ret.add(r.read());
+            }
+        }
+        return ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(T item) throws IOException, ClassNotFoundException {
+        for (boolean share : new boolean[] { false, true }) {
+            Object ret = read(write(share, item), 1).get(0);
+            assertEquals(item, ret);
+            if (!share) {
+                continue;
+            }
+            return (T) ret;
+        }
+        throw new IllegalStateException("unreachable");
+    }
+
+    @Test public void scalars() throws Exception {
+        List<Object> items = Arrays.asList(null, true, false, 0, -7, Integer.MAX_VALUE,
+                                           Long.MIN_VALUE, 3.5, "", "hello é中",
+                                           'c', tup("a", 1));
+        assertEquals(items, read(write(false, items.toArray()), items.size()));
+    }
+
+    @Test public void vectors() throws Exception {
+        assertTrue(PersistentVector.empty() == roundTrip(PersistentVector.empty()));
+        for (int size : new int[] { 1, 31, 32, 33, 1000, 1057, 40000 }) {
+            PersistentVector<Integer> ints = PersistentVector.empty();
+            MutableList<Object> mixed = PersistentVector.emptyMutable();
+            for (int i = 0; i < size; i++) {
+                ints = ints.append(i);
+                mixed.append((i % 3 == 0) ? null : (i % 3 == 1) ? "s" + i : (Object) (long) i);
+            }
+            PersistentVector<Integer> read = roundTrip(ints);
+            assertEquals(size, read.size());
+            // Still works as a vector.
+            assertEquals(Integer.valueOf(-1), read.replace(size - 1, -1).get(size - 1));
+            assertEquals(size + 1, read.append(5).size());
+            assertEquals(size + 1, read.mutable().append(5).immutable().size());
+            roundTrip(mixed.immutable());
+        }
+    }
+
+    @Test public void rrbTrees() throws Exception {
+        assertTrue(RrbTree.empty() == roundTrip(RrbTree.empty()));
+        Random rand = new Random(20170610L);
+        RrbTree.ImRrbt<Integer> rrb = RrbTree.empty();
+        List<Integer> control = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            int idx = rand.nextInt(rrb.size() + 1);
+            rrb = rrb.insert(idx, i);
+            control.add(idx, i);
+        }
+        assertTrue(rrb.relaxationStats().relaxedNodes() > 0);
+        RrbTree.ImRrbt<Integer> read = roundTrip(rrb);
+        read.debugValidate();
+        assertEquals(control, read);
+        assertEquals(control.size() + 1, read.insert(17, -1).size());
+        read.insert(17, -1).debugValidate();
+    }
+
+    @Test public void hashMaps() throws Exception {
+        assertEquals(PersistentHashMap.empty(), roundTrip(PersistentHashMap.empty()));
+        PersistentHashMap<String,Integer> m = PersistentHashMap.empty();
+        for (int i = 0; i < 10000; i++) {
+            m = m.assoc("k" + i, i);
+        }
+        m = m.assoc(null, -1);
+        PersistentHashMap<String,Integer> read = roundTrip(m);
+        assertEquals(Integer.valueOf(-1), read.get(null));
+        assertEquals(m.size() - 1, read.without("k7").size());
+        assertEquals(m.size() + 1, read.mutable().assoc("new", 0).immutable().size());
+
+        // Collision nodes, sorted and not, and a non-default Equator.
+        Equator<Integer> fewHashes = new FewHashes();
+        PersistentHashMap<Integer,String> c = PersistentHashMap.empty(fewHashes);
+        for (int i = 0; i < 500; i++) {
+            c = c.assoc(i, "v" + i);
+        }
+        PersistentHashMap<Integer,String> readC = roundTrip(c);
+        assertEquals(fewHashes, readC.equator());
+        assertEquals(c.trieStats().collisionNodes(), readC.trieStats().collisionNodes());
+        for (int i = 0; i < 500; i++) {
+            assertEquals("v" + i, readC.get(i));
+            assertFalse(readC.without(i).containsKey(i));
+        }
+        // Different key classes in one collision node
+        PersistentHashMap<Object,Integer> mixed = PersistentHashMap.<Object,Integer>empty()
+                .assoc("Aa", 1).assoc("BB", 2).assoc(2112, 3);
+        roundTrip(mixed);
+    }
+
+    @Test public void treeMaps() throws Exception {
+        assertEquals(PersistentTreeMap.empty(), roundTrip(PersistentTreeMap.empty()));
+        PersistentTreeMap<Integer,String> m = PersistentTreeMap.empty();
+        for (int i = 0; i < 3000; i++) {
+            m = m.assoc((i * 7919) % 3001, "v" + i);
+        }
+        PersistentTreeMap<Integer,String> read = roundTrip(m);
+        assertEquals(m.keySet(), read.keySet());
+        assertEquals(m.footprint().nodeCounts(), read.footprint().nodeCounts());
+        assertEquals(m.size() - 1, read.without(77).size());
+        assertEquals(m.size() + 1, read.assoc(-1, "").size());
+    }
+
+    @Test public void nested() throws Exception {
+        PersistentHashMap<String,Object> m = PersistentHashMap.<String,Object>empty()
+                .assoc("vec", PersistentVector.ofIter(Arrays.asList(1, 2, 3)))
+                .assoc("tree", PersistentTreeMap.<String,Integer>empty().assoc("x", 1))
+                .assoc("set", PersistentHashSet.of(Arrays.asList("a", "b")));
+        PersistentHashMap<String,Object> read = roundTrip(m);
+        assertTrue(read.get("vec") instanceof PersistentVector);
+        assertTrue(read.get("tree") instanceof PersistentTreeMap);
+    }
+
+    @Test public void structureSharing() throws Exception {
+        PersistentVector<String> v1 = PersistentVector.empty();
+        PersistentHashMap<Integer,Integer> m1 = PersistentHashMap.empty();
+        RrbTree.ImRrbt<Integer> r1 = RrbTree.empty();
+        for (int i = 0; i < 20000; i++) {
+            v1 = v1.append("item" + i);
+            m1 = m1.assoc(i, i);
+            r1 = r1.append(i);
+        }
+        PersistentVector<String> v2 = v1.replace(5, "changed").append("last");
+        PersistentHashMap<Integer,Integer> m2 = m1.assoc(-1, -1).without(3);
+        RrbTree.ImRrbt<Integer> r2 = r1.insert(7, -1);
+
+        Object[] items = { v1, v2, m1, m2, r1, r2, v1 };
+        byte[] plain = write(false, items);
+        byte[] shared = write(true, items);
+        assertTrue("plain: " + plain.length + " shared: " + shared.length,
+                   shared.length < plain.length * 2 / 3);
+
+        List<Object> read = read(shared, items.length);
+        assertEquals(Arrays.asList(items), read);
+        // The same collection written twice is read as the same object.
+        assertTrue(read.get(0) == read.get(6));
+        // Versions share nodes like the originals did.
+        for (int i = 0; i < 6; i += 2) {
+            long original = Footprint.sharedBytes(items[i], items[i + 1]);
+            long copy = Footprint.sharedBytes(read.get(i), read.get(i + 1));
+            assertTrue("original: " + original + " copy: " + copy, copy > original / 2);
+        }
+        assertEquals(0, Footprint.sharedBytes(read(plain, 2).get(0), read(plain, 2).get(1)));
+    }
+
+    @Test public void itemsWithSpareSlots() throws Exception {
+        // Like a HashCollisionNode after a mutable without().
+        Object[] array = { "a", 1, "b", 2, null, null };
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (PaguroCodec.Writer w = new PaguroCodec.Writer(bos, true)) {
+            w.writeItems(array, 4);
+            w.writeItems(array, 4);
+        }
+        try (PaguroCodec.Reader r =
+                     new PaguroCodec.Reader(new ByteArrayInputStream(bos.toByteArray()))) {
+            Object[] first = r.readItems();
+            assertArrayEquals(new Object[] { "a", 1, "b", 2 }, first);
+            // The second one is a reference to the first.
+            assertTrue(first == r.readItems());
+        }
+    }
+
+    @Test public void corrupt() throws Exception {
+        try {
+            read(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 }, 1);
+            fail("Should have thrown");
+        } catch (StreamCorruptedException expected) {
+            // good
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (java.io.ObjectOutputStream oos = new java.io.ObjectOutputStream(bos)) {
+            oos.writeInt(12345);
+        }
+        try {
+            read(bos.toByteArray(), 1);
+            fail("Should have thrown");
+        } catch (StreamCorruptedException expected) {
+            assertEquals("Not a PaguroCodec stream", expected.getMessage());
+        }
+    }
+
+    private static byte[] checkpoint(PaguroCodec.SnapshotWriter sw, Object item)
+            throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        sw.write(bos, item);
+        return bos.toByteArray();
+    }
+
+    @Test public void hashesChangedSinceWriting() throws Exception {
+        // Stands in for a JVM where enums (and identity hash codes) hash differently.
+        PersistentHashMap<Object,Integer> m = PersistentHashMap.empty(OtherJvm.INSTANCE);
+        for (int i = 0; i < 500; i++) {
+            m = m.assoc(i, i);
+        }
+        for (TimeUnit tu : TimeUnit.values()) {
+            m = m.assoc(tu, -tu.ordinal());
+        }
+        m = m.assoc(null, -100);
+        assertTrue(m.trieStats().collisionNodes() > 0);
+        PaguroCodec.SnapshotWriter sw = new PaguroCodec.SnapshotWriter();
+        byte[] base = checkpoint(sw, m);
+        byte[] delta = checkpoint(sw, m.assoc(-1, -1));
+        byte[] plain = write(true, m);
+        List<Object> keys = new ArrayList<>();
+        for (Object key : m.keySet()) {
+            keys.add(key);
+        }
+
+        OtherJvm.salt = 1000;
+        try {
+            PaguroCodec.SnapshotReader sr = new PaguroCodec.SnapshotReader();
+            PersistentHashMap<Object,Integer> fromPlain = readFirst(plain);
+            List<PersistentHashMap<Object,Integer>> reads =
+                    Arrays.asList(fromPlain, readCheckpoint(sr, base), readCheckpoint(sr, delta));
+            for (PersistentHashMap<Object,Integer> read : reads) {
+                for (Object key : keys) {
+                    assertTrue(String.valueOf(key), read.containsKey(key));
+                }
+                assertEquals(Integer.valueOf(-100), read.get(null));
+                assertEquals(Integer.valueOf(-TimeUnit.DAYS.ordinal()),
+                             read.get(TimeUnit.DAYS));
+                assertEquals(read.size() - 1, read.without(7).size());
+            }
+            assertEquals(m.size(), reads.get(1).size());
+            assertEquals(m.size() + 1, reads.get(2).size());
+            assertEquals(Integer.valueOf(-1), reads.get(2).get(-1));
+        } finally {
+            OtherJvm.salt = 0;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T readFirst(byte[] bytes) throws IOException, ClassNotFoundException {
+        return (T) read(bytes, 1).get(0);
+    }
+
+    private static <T> T readCheckpoint(PaguroCodec.SnapshotReader sr, byte[] bytes)
+            throws IOException, ClassNotFoundException {
+        return sr.read(new ByteArrayInputStream(bytes));
+    }
+
+    @Test public void snapshots() throws Exception {
+        PersistentHashMap<String,Integer> hm = PersistentHashMap.empty();
+        PersistentTreeMap<Integer,String> tm = PersistentTreeMap.empty();
+        for (int i = 0; i < 50000; i++) {
+            hm = hm.assoc("k" + i, i);
+            tm = tm.assoc(i, "v" + i);
+        }
+        List<Object> versions = new ArrayList<>();
+        List<byte[]> checkpoints = new ArrayList<>();
+        PaguroCodec.SnapshotWriter sw = new PaguroCodec.SnapshotWriter();
+        for (int c = 0; c < 5; c++) {
+            Object version = PersistentVector.ofIter(Arrays.asList(hm, tm));
+            versions.add(version);
+            checkpoints.add(checkpoint(sw, version));
+            for (int i = 0; i < 10; i++) {
+                hm = hm.assoc("k" + (c * 1000 + i), -i).without("k" + (c * 7 + i + 40000));
+                tm = tm.assoc(-(c * 1000 + i), "new").without(c * 7 + i + 40000);
+            }
+        }
+        assertEquals(5, sw.checkpoints());
+        int base = checkpoints.get(0).length;
+        for (int c = 1; c < 5; c++) {
+            int delta = checkpoints.get(c).length;
+            assertTrue("base: " + base + " delta: " + delta, delta < base / 50);
+        }
+
+        PaguroCodec.SnapshotReader sr = new PaguroCodec.SnapshotReader();
+        List<Object> read = new ArrayList<>();
+        for (byte[] bytes : checkpoints) {
+            read.add(readCheckpoint(sr, bytes));
+        }
+        assertEquals(versions, read);
+        // Versions share nodes like the originals did.
+        for (int i = 0; i < 2; i++) {
+            long original = Footprint.sharedBytes(((ImList<?>) versions.get(0)).get(i),
+                                                  ((ImList<?>) versions.get(4)).get(i));
+            long copy = Footprint.sharedBytes(((ImList<?>) read.get(0)).get(i),
+                                              ((ImList<?>) read.get(4)).get(i));
+            assertTrue(original > 0);
+            assertTrue("original: " + original + " copy: " + copy, copy > original / 2);
+        }
+    }
+
+    @Test public void snapshotErrors() throws Exception {
+        PersistentHashMap<Integer,Integer> m = PersistentHashMap.empty();
+        for (int i = 0; i < 1000; i++) {
+            m = m.assoc(i, i);
+        }
+        PaguroCodec.SnapshotWriter sw = new PaguroCodec.SnapshotWriter();
+        byte[] base = checkpoint(sw, m);
+        byte[] delta1 = checkpoint(sw, m.assoc(-1, -1));
+
+        // A failed checkpoint doesn't count, and its nodes aren't referred to later.
+        PersistentHashMap<Integer,Integer> m2 = m.assoc(-2, -2);
+        try {
+            sw.write(new OutputStream() {
+                @Override public void write(int b) throws IOException {
+                    throw new IOException("disk full");
+                }
+            }, m2);
+            fail("Should have thrown");
+        } catch (IOException expected) {
+            assertEquals("disk full", expected.getMessage());
+        }
+        assertEquals(2, sw.checkpoints());
+        byte[] delta2 = checkpoint(sw, m2);
+
+        try {
+            read(base, 1);
+            fail("Should have thrown");
+        } catch (StreamCorruptedException expected) {
+            assertEquals("A snapshot must be read with a SnapshotReader", expected.getMessage());
+        }
+
+        PaguroCodec.SnapshotReader sr = new PaguroCodec.SnapshotReader();
+        try {
+            readCheckpoint(sr, delta1);
+            fail("Should have thrown");
+        } catch (StreamCorruptedException expected) {
+            assertEquals("Expected checkpoint 0 but got 1", expected.getMessage());
+        }
+        assertEquals(m, readCheckpoint(sr, base));
+        PaguroCodec.SnapshotWriter other = new PaguroCodec.SnapshotWriter();
+        checkpoint(other, m);
+        try {
+            readCheckpoint(sr, checkpoint(other, m));
+            fail("Should have thrown");
+        } catch (StreamCorruptedException expected) {
+            assertEquals("Checkpoint is from a different SnapshotWriter", expected.getMessage());
+        }
+        // A truncated checkpoint is forgotten, so the whole one can be read after it.
+        try {
+            readCheckpoint(sr, Arrays.copyOf(delta1, delta1.length - 5));
+            fail("Should have thrown");
+        } catch (IOException expected) {
+            // good
+        }
+        assertEquals(m.assoc(-1, -1), readCheckpoint(sr, delta1));
+        assertEquals(m2, readCheckpoint(sr, delta2));
+        try {
+            readCheckpoint(sr, write(true, m));
+            fail("Should have thrown");
+        } catch (StreamCorruptedException expected) {
+            assertEquals("Not a PaguroCodec snapshot", expected.getMessage());
+        }
+    }
+
+    private enum OtherJvm implements Equator<Object> {
+        INSTANCE;
+        static volatile int salt = 0;
+        // Few enough hashes to make collision nodes.
+        @Override public int hash(Object o) { return ((o == null) ? 0 : o.hashCode() % 37) + salt; }
+        @Override public boolean eq(Object a, Object b) { return Objects.equals(a, b); }
+    }
+
+    private static class FewHashes implements Equator<Integer>, java.io.Serializable {
+        private static final long serialVersionUID = 20261019031800L;
+        @Override public int hash(Integer i) { return i % 37; }
+        @Override public boolean eq(Integer a, Integer b) { return a.equals(b); }
+        @Override public boolean equals(Object other) { return other instanceof FewHashes; }
+        @Override public int hashCode() { return 37; }
+    }
+}
@@ -0,0 +1,114 @@
+package org.organicdesign.fp.collections;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Test;
+import org.organicdesign.fp.TestUtilities;
+import org.organicdesign.fp.oneOf.Option;
+
+import static org.junit.Assert.*;
+import static org.organicdesign.fp.TestUtilities.compareIterators;
+import static org.organicdesign.fp.TestUtilities.serializeDeserialize;
+import static org.organicdesign.testUtils.EqualsContract.equalsDistinctHashCode;
+
+public class PersistentDequeTest {
+    @Test public void empty() {
+        PersistentDeque<String> d = PersistentDeque.empty();
+        assertEquals(0, d.size());
+        assertTrue(d.isEmpty());
+        assertEquals(Option.none(), d.peekFront());
+        assertEquals(Option.none(), d.peekBack());
+        assertEquals(Option.none(), d.head());
+        assertFalse(d.iterator().hasNext());
+        TestUtilities.assertEx(d::popFront, "popFront()", NoSuchElementException.class);
+        TestUtilities.assertEx(d::popBack, "popBack()", NoSuchElementException.class);
+        assertTrue(d == d.pushFront("a").popBack());
+        assertTrue(d == d.pushBack("a").popFront());
+        assertEquals("PersistentDeque()", d.toString());
+    }
+
+    @Test public void randomOps() {
+        Random rand = new Random(20170610L);
+        Deque<Integer> control = new ArrayDeque<>();
+        PersistentDeque<Integer> test = PersistentDeque.empty();
+        for (int i = 0; i < 100000; i++) {
+            int op = rand.nextInt(4);
+            if (op == 0) {
+                control.addFirst(i);
+                test = test.pushFront(i);
+            } else if (op == 1) {
+                control.addLast(i);
+                test = test.pushBack(i);
+            } else if (control.isEmpty()) {
+                continue;
+            } else if (op == 2) {
+                assertEquals(Option.some(control.removeFirst()), test.peekFront());
+                test = test.popFront();
+            } else {
+                assertEquals(Option.some(control.removeLast()), test.peekBack());
+                test = test.popBack();
+            }
+            assertEquals(control.size(), test.size());
+            if (!control.isEmpty()) {
+                assertEquals(Option.some(control.getFirst()), test.peekFront());
+                assertEquals(Option.some(control.getLast()), test.peekBack());
+            }
+            if (i % 10000 == 0) {
+                compareIterators(control.iterator(), test.iterator());
+            }
+        }
+        compareIterators(control.iterator(), test.iterator());
+    }
+
+    @Test public void queueAndStack() {
+        // Used only as a queue, or only as a stack from either end.
+        PersistentDeque<Integer> q = PersistentDeque.empty();
+        for (int i = 0; i < 1000; i++) {
+            q = q.pushBack(i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Option.some(i), q.peekFront());
+            q = q.popFront();
+        }
+        assertTrue(q.isEmpty());
+
+        PersistentDeque<Integer> s = PersistentDeque.empty();
+        for (int i = 0; i < 1000; i++) {
+            s = s.pushFront(i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Option.some(i), s.peekBack());
+            s = s.popBack();
+        }
+        assertTrue(s.isEmpty());
+    }
+
+    @Test public void persistence() {
+        PersistentDeque<Integer> d = PersistentDeque.of(Arrays.asList(1, 2, 3, 4, 5));
+        PersistentDeque<Integer> d2 = d.popFront().pushBack(6);
+        compareIterators(Arrays.asList(1, 2, 3, 4, 5).iterator(), d.iterator());
+        compareIterators(Arrays.asList(2, 3, 4, 5, 6).iterator(), d2.iterator());
+        assertEquals(Integer.valueOf(20), d2.fold(0, (a, b) -> a + b));
+        assertEquals(Arrays.asList(2, 4, 6), d2.filter(i -> i % 2 == 0).toImList());
+    }
+
+    @Test public void equalsHashSerialize() {
+        PersistentDeque<Integer> a = PersistentDeque.of(Arrays.asList(1, 2, 3));
+        PersistentDeque<Integer> b = PersistentDeque.<Integer>empty().pushFront(3).pushFront(2)
+                                                                     .pushFront(1);
+        PersistentDeque<Integer> c = PersistentDeque.<Integer>empty().pushBack(2).pushBack(3)
+                                                                     .pushFront(1);
+        PersistentDeque<Integer> other = PersistentDeque.of(Arrays.asList(1, 3, 2));
+        equalsDistinctHashCode(a, b, c, other);
+        assertEquals("PersistentDeque(1,2,3)", a.toString());
+
+        PersistentDeque<Integer> big = PersistentDeque.of(new ArrayList<>(RangeOfInt.of(0, 500)));
+        assertEquals(big, serializeDeserialize(big));
+        assertEquals(PersistentDeque.empty(), serializeDeserialize(PersistentDeque.empty()));
+    }
+}
@@ -1600,4 +1600,198 @@ public class PersistentHashMapTest {
         assertNotEquals(h2, h2.assoc(null, "nada"));
         assertEquals(h2.size() + 1, h2.assoc(null, "nada").size());
     }
+    @Test public void iteratorsOverDeepAndCollidingTrees() {
+        // A few hash codes means lots of HashCollisionNodes, many means ArrayNodes at every level.
+        for (int mod : new int[] { 7, 1 << 30 }) {
+            Equator<Integer> eq = new Equator<Integer>() {
+                @Override public int hash(Integer i) { return (i * 0x9E3779B9) % mod; }
+                @Override public boolean eq(Integer a, Integer b) { return Objects.equals(a, b); }
+            };
+            // Collision nodes are searched linearly, so keep those ones small.
+            int max = (mod < 100) ? 2000 : 50000;
+            Map<Integer,Integer> control = new HashMap<>();
+            PersistentHashMap.MutableHashMap<Integer,Integer> test =
+                    PersistentHashMap.emptyMutable(eq);
+            for (int i = 0; i < max; i++) {
+                control.put(i, -i);
+                test.assoc(i, -i);
+            }
+            // Leave some holes
+            for (int i = 0; i < max; i += 3) {
+                control.remove(i);
+                test.without(i);
+            }
+            PersistentHashMap<Integer,Integer> im = test.immutable();
+            mapIterTest(control, im.iterator());
+
+            Set<Integer> keys = new HashSet<>();
+            im.keyIterator().forEachRemaining(keys::add);
+            assertEquals(control.keySet(), keys);
+
+            long valSum = 0;
+            int valCount = 0;
+            for (UnmodIterator<Integer> iter = im.valIterator(); iter.hasNext(); ) {
+                valSum += iter.next();
+                valCount++;
+            }
+            assertEquals(control.size(), valCount);
+            assertEquals(control.values().stream().mapToLong(Integer::longValue).sum(), valSum);
+        }
+    }
+    @Test public void trieStatsAndSpreading() {
+        PersistentHashMap<Integer,Integer> empty = PersistentHashMap.empty();
+        assertEquals(0, empty.trieStats().entries());
+        assertEquals(0, empty.trieStats().maxDepth());
+        assertEquals(0.0, empty.trieStats().averageDepth(), 0.0);
+
+        // Only the high bits of these hash codes differ, so the trie is a long, narrow chain.
+        Equator<Integer> weak = new Equator<Integer>() {
+            @Override public int hash(Integer i) { return i << 16; }
+            @Override public boolean eq(Integer a, Integer b) { return Objects.equals(a, b); }
+        };
+        PersistentHashMap.MutableHashMap<Integer,Integer> weakMap =
+                PersistentHashMap.emptyMutable(weak);
+        PersistentHashMap.MutableHashMap<Integer,Integer> spreadMap =
+                PersistentHashMap.emptyMutable(weak.spreading());
+        for (int i = 0; i < 2000; i++) {
+            weakMap.assoc(i, i);
+            spreadMap.assoc(i, i);
+        }
+        weakMap.assoc(null, -1);
+        PersistentHashMap.TrieStats weakStats = weakMap.trieStats();
+        PersistentHashMap<Integer,Integer> spreadIm = spreadMap.immutable();
+        PersistentHashMap.TrieStats spreadStats = spreadIm.trieStats();
+        assertEquals(2001, weakStats.entries());
+        assertEquals(2000, spreadStats.entries());
+        assertEquals(0, weakStats.collisionNodes());
+        assertEquals(0, spreadStats.collisionNodes());
+        assertTrue(weakStats.maxDepth() > spreadStats.maxDepth());
+        assertTrue(weakStats.averageDepth() > spreadStats.averageDepth() + 1);
+        assertTrue(spreadStats.maxDepth() <= 5);
+        assertTrue(spreadStats.toString().startsWith("TrieStats(entries=2000 maxDepth="));
+
+        // Spreading can't help keys whose hash codes are exactly the same.
+        Equator<Integer> colliding = new Equator<Integer>() {
+            @Override public int hash(Integer i) { return i % 500; }
+            @Override public boolean eq(Integer a, Integer b) { return Objects.equals(a, b); }
+        };
+        MutableMap<Integer,Integer> collMap = PersistentHashMap.emptyMutable(colliding.spreading());
+        for (int i = 0; i < 2000; i++) {
+            collMap.assoc(i, i);
+        }
+        PersistentHashMap.TrieStats collStats =
+                ((PersistentHashMap<Integer,Integer>) collMap.immutable()).trieStats();
+        assertEquals(500, collStats.collisionNodes());
+        assertEquals(2000, collStats.collisionEntries());
+
+        assertEquals(weakMap.immutable(), spreadIm.assoc(null, -1));
+    }
+
+    // Comparable, but they all have the same hash code (the same as Integer.valueOf(42)).
+    private static final class Collider implements Comparable<Collider> {
+        final int id;
+        Collider(int i) { id = i; }
+        @Override public int hashCode() { return 42; }
+        @Override public boolean equals(Object o) {
+            return (o instanceof Collider) && (((Collider) o).id == id);
+        }
+        @Override public int compareTo(Collider that) { return Integer.compare(id, that.id); }
+        @Override public String toString() { return "Collider(" + id + ")"; }
+    }
+
+    @Test public void sortedCollisionNodes() {
+        Random rand = new Random(20170610L);
+        Map<Object,Integer> control = new HashMap<>();
+        ImMap<Object,Integer> im = PersistentHashMap.empty();
+        MutableMap<Object,Integer> mu = PersistentHashMap.emptyMutable();
+        for (int i = 0; i < 6000; i++) {
+            // Integer 42 collides with all the Colliders, but can't be compared to them.  Adding
+            // and removing it makes the collision nodes switch between sorted and unsorted.
+            Object key = (rand.nextInt(200) == 0) ? Integer.valueOf(42)
+                                                  : new Collider(rand.nextInt(1000));
+            if (rand.nextInt(3) == 0) {
+                control.remove(key);
+                im = im.without(key);
+                mu.without(key);
+            } else {
+                control.put(key, i);
+                im = im.assoc(key, i);
+                mu.assoc(key, i);
+            }
+            assertEquals(control.size(), im.size());
+            assertEquals(control.size(), mu.size());
+            if ((i % 500) == 0) {
+                for (Map.Entry<Object,Integer> e : control.entrySet()) {
+                    assertEquals(e.getValue(), im.get(e.getKey()));
+                    assertEquals(e.getValue(), mu.get(e.getKey()));
+                }
+                assertNull(im.get(new Collider(-1)));
+            }
+        }
+        mapIterTest(control, im.iterator());
+        assertEquals(im, mu.immutable());
+    }
+
+    // Comparable to something other than itself, and they all have the same hash code.
+    private static final class OtherComparable implements Comparable<Collider> {
+        final int id;
+        OtherComparable(int i) { id = i; }
+        @Override public int hashCode() { return 7; }
+        @Override public boolean equals(Object o) {
+            return (o instanceof OtherComparable) && (((OtherComparable) o).id == id);
+        }
+        @Override public int compareTo(Collider that) { return Integer.compare(id, that.id); }
+    }
+
+    @Test public void unsortedWhenNotSelfComparable() {
+        ImMap<Object,String> im = PersistentHashMap.empty();
+        MutableMap<Object,String> mu = PersistentHashMap.emptyMutable();
+        for (int i = 0; i < 50; i++) {
+            im = im.assoc(new OtherComparable(i), "v" + i);
+            mu.assoc(new OtherComparable(i), "v" + i);
+        }
+        assertEquals(50, im.size());
+        assertEquals(1, ((PersistentHashMap<Object,String>) im).trieStats().collisionNodes());
+        for (int i = 0; i < 50; i++) {
+            assertEquals("v" + i, im.get(new OtherComparable(i)));
+            assertEquals("v" + i, mu.get(new OtherComparable(i)));
+        }
+        assertEquals(49, im.without(new OtherComparable(3)).size());
+        assertEquals(im, mu.immutable());
+    }
+
+    @Test public void sortedCollisionNodesBinarySearch() {
+        // Counts calls to eq() so we can tell a binary search from a linear one.
+        final int[] eqCalls = new int[1];
+        ComparisonContext<Integer> allCollide = new ComparisonContext<Integer>() {
+            @Override public int hash(Integer i) { return 7; }
+            @Override public int compare(Integer a, Integer b) { return Integer.compare(a, b); }
+            @Override public boolean eq(Integer a, Integer b) {
+                eqCalls[0]++;
+                return Objects.equals(a, b);
+            }
+        };
+        MutableMap<Integer,String> mu = PersistentHashMap.emptyMutable(allCollide);
+        for (int i = 4095; i >= 0; i--) {
+            mu.assoc(i, String.valueOf(i));
+        }
+        ImMap<Integer,String> im = mu.immutable().without(100).assoc(5000, "5000");
+        assertEquals(4096, im.size());
+        eqCalls[0] = 0;
+        for (int i = 0; i < 4096; i++) {
+            assertEquals((i == 100) ? null : String.valueOf(i), im.get(i));
+        }
+        assertEquals("5000", im.get(5000));
+        // A linear search would average 2048 calls per lookup.
+        assertTrue("eq() called " + eqCalls[0] + " times", eqCalls[0] < 3 * 4097);
+        assertEquals(1, ((PersistentHashMap<Integer,String>) im).trieStats().collisionNodes());
+
+        // Iteration order for a single collision node is sorted.
+        int prev = -1;
+        for (UnmodIterator<Integer> iter = im.keyIterator(); iter.hasNext(); ) {
+            int key = iter.next();
+            assertTrue(key > prev);
+            prev = key;
+        }
+    }
 }
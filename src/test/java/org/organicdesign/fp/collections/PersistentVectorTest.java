@@ -394,6 +394,46 @@ public class PersistentVectorTest {
 
         TestUtilities.listIteratorTest(control, test);
         TestUtilities.listIteratorTest(control, serTest);
+
+        List<Integer> reversed = new ArrayList<>(control);
+        Collections.reverse(reversed);
+        compareIterators(reversed.iterator(), test.reverseIterator());
+        assertFalse(PersistentVector.empty().reverseIterator().hasNext());
+    }
+
+    @Test public void take() {
+        List<Integer> control = new ArrayList<>();
+        PersistentVector<Integer> test = PersistentVector.empty();
+        // Big enough for a three-level tree.
+        final int SOME = 40000;
+        for (int i = 0; i < SOME; i++) {
+            control.add(i);
+            test = test.append(i);
+        }
+        int[] ns = new int[] { 0, 1, 31, 32, 33, 63, 64, 65, 1023, 1024, 1025, 1056, 1057, 2047,
+                               2048, 32767, 32768, 32769, 33792, 33793, SOME - 1 };
+        for (int n : ns) {
+            PersistentVector<Integer> taken = test.take(n);
+            assertEquals(n, taken.size());
+            compareIterators(control.subList(0, n).iterator(), taken.iterator());
+            // Make sure the trimmed tree is still a valid vector.
+            PersistentVector<Integer> grown = taken;
+            List<Integer> grownControl = new ArrayList<>(control.subList(0, n));
+            for (int i = 0; i < 1100; i++) {
+                grown = grown.append(-i);
+                grownControl.add(-i);
+            }
+            compareIterators(grownControl.iterator(), grown.iterator());
+            for (int i = 0; i < grownControl.size(); i += 7) {
+                assertEquals(grownControl.get(i), grown.get(i));
+            }
+            // The original is unchanged.
+            assertEquals(Integer.valueOf(SOME - 1), test.get(SOME - 1));
+        }
+        assertTrue(test == test.take(SOME));
+        assertTrue(test == test.take(Long.MAX_VALUE));
+        final PersistentVector<Integer> pv = test;
+        TestUtilities.assertEx(() -> pv.take(-1), "take(-1)", IllegalArgumentException.class);
     }
 
     @Test public void testConcat() throws Exception {
@@ -0,0 +1,207 @@
+package org.organicdesign.fp.collections;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.organicdesign.fp.collections.RrbTree.ImRrbt;
+
+import static org.junit.Assert.*;
+import static org.organicdesign.fp.TestUtilities.assertEx;
+
+public class RrbTreeChunksTest {
+    private Path file;
+
+    @Before public void setUp() throws IOException {
+        file = Files.createTempFile("RrbTreeChunksTest", ".rrb");
+    }
+
+    @After public void tearDown() throws IOException { Files.deleteIfExists(file); }
+
+    private <T> ImRrbt<T> roundTrip(ImRrbt<T> list, RrbTreeChunks.ElementCodec<T> codec)
+            throws IOException {
+        RrbTreeChunks.write(list, file, codec);
+        ImRrbt<T> read = RrbTreeChunks.read(file, codec);
+        read.debugValidate();
+        assertEquals(list, read);
+        assertEquals(0, read.relaxationStats().relaxedNodes());
+        return read;
+    }
+
+    @Test public void longs() throws IOException {
+        int bf = RrbTree.branchingFactor();
+        ImRrbt<Long> empty = RrbTree.empty();
+        assertTrue(empty == roundTrip(empty, RrbTreeChunks.ElementCodec.LONG));
+        for (int size : new int[] { 1, bf - 1, bf, bf + 1, bf * bf, (bf * bf) + 1,
+                                    (bf * bf * bf) + 5, 100000 }) {
+            RrbTree.MutableRrbt<Long> mu = RrbTree.emptyMutable();
+            for (long i = 0; i < size; i++) {
+                mu.append(i * 31);
+            }
+            ImRrbt<Long> read = roundTrip(mu.immutable(), RrbTreeChunks.ElementCodec.LONG);
+            // Still works as a list.
+            ImRrbt<Long> appended = read.append(-1L);
+            appended.debugValidate();
+            assertEquals(Long.valueOf(-1), appended.get(size));
+            ImRrbt<Long> inserted = read.insert(size / 2, -2L);
+            inserted.debugValidate();
+            assertEquals(Long.valueOf(-2), inserted.get(size / 2));
+        }
+    }
+
+    @Test public void relaxedBecomesStrict() throws IOException {
+        Random rand = new Random(20170610L);
+        ImRrbt<Integer> list = RrbTree.empty();
+        for (int i = 0; i < 10000; i++) {
+            list = list.insert(rand.nextInt(list.size() + 1), i);
+        }
+        assertTrue(list.relaxationStats().relaxedNodes() > 0);
+        roundTrip(list, RrbTreeChunks.ElementCodec.INT);
+        roundTrip(list.map(Integer::doubleValue).toImRrbt(), RrbTreeChunks.ElementCodec.DOUBLE);
+    }
+
+    @Test public void strings() throws IOException {
+        List<String> tricky = Arrays.asList(null, "", "ascii", "café", "中文",
+                                            "😀", "unpaired \ud83d", "\ude00 low");
+        for (String s : tricky) {
+            if (s != null) {
+                assertEquals(s, s.getBytes(StandardCharsets.UTF_8).length,
+                             RrbTreeChunks.utf8Length(s));
+            }
+        }
+        RrbTree.MutableRrbt<String> mu = RrbTree.emptyMutable();
+        for (int i = 0; i < 3000; i++) {
+            String s = tricky.get(i % tricky.size());
+            mu.append((s == null) ? null : s + i);
+        }
+        // Some chunks bigger than the buffer.
+        char[] big = new char[5000];
+        Arrays.fill(big, 'é');
+        for (int i = 0; i < 100; i++) {
+            mu.append(new String(big));
+        }
+        ImRrbt<String> list = mu.immutable();
+        RrbTreeChunks.write(list, file, RrbTreeChunks.ElementCodec.STRING);
+        ImRrbt<String> read = RrbTreeChunks.read(file, RrbTreeChunks.ElementCodec.STRING);
+        List<String> control = new ArrayList<>(list);
+        // Unpaired surrogates don't survive UTF-8.
+        for (int i = 0; i < control.size(); i++) {
+            String s = control.get(i);
+            if (s != null) {
+                control.set(i, new String(s.getBytes(StandardCharsets.UTF_8),
+                                          StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(control, read);
+        read.debugValidate();
+    }
+
+    @Test public void checkpointWhileReading() throws Exception {
+        RrbTree.MutableRrbt<Integer> mu = RrbTree.emptyMutable();
+        for (int i = 0; i < 200000; i++) {
+            mu.append(i);
+        }
+        ImRrbt<Integer> list = mu.immutable();
+        Thread writer = new Thread(() -> {
+            try {
+                RrbTreeChunks.write(list, file, RrbTreeChunks.ElementCodec.INT);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        writer.start();
+        long sum = 0;
+        for (int i = 0; i < list.size(); i += 7) {
+            sum += list.get(i);
+        }
+        ImRrbt<Integer> changed = list.replace(0, -1);
+        writer.join();
+        assertTrue(sum > 0);
+        assertEquals(Integer.valueOf(-1), changed.get(0));
+        assertEquals(list, RrbTreeChunks.read(file, RrbTreeChunks.ElementCodec.INT));
+    }
+
+    @Test public void backToBack() throws IOException {
+        RrbTree.MutableRrbt<Integer> mu = RrbTree.emptyMutable();
+        for (int i = 0; i < 50000; i++) {
+            mu.append(i);
+        }
+        ImRrbt<Integer> first = mu.immutable();
+        ImRrbt<String> second = first.map(i -> "s" + i).take(1234).toImRrbt();
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            RrbTreeChunks.write(first, out, RrbTreeChunks.ElementCodec.INT);
+            RrbTreeChunks.write(second, out, RrbTreeChunks.ElementCodec.STRING);
+            RrbTreeChunks.write(RrbTree.<Integer>empty(), out, RrbTreeChunks.ElementCodec.INT);
+            out.write(ByteBuffer.wrap(new byte[] { 42 }));
+        }
+        // Seekable, so it reads ahead and then goes back.
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertEquals(first, RrbTreeChunks.read(in, RrbTreeChunks.ElementCodec.INT));
+            assertEquals(second, RrbTreeChunks.read(in, RrbTreeChunks.ElementCodec.STRING));
+            assertEquals(0, RrbTreeChunks.read(in, RrbTreeChunks.ElementCodec.INT).size());
+            assertEquals(in.size() - 1, in.position());
+        }
+        // Not seekable, so it only reads what it needs.
+        try (ReadableByteChannel in = Channels.newChannel(Files.newInputStream(file))) {
+            assertEquals(first, RrbTreeChunks.read(in, RrbTreeChunks.ElementCodec.INT));
+            assertEquals(second, RrbTreeChunks.read(in, RrbTreeChunks.ElementCodec.STRING));
+            assertEquals(0, RrbTreeChunks.read(in, RrbTreeChunks.ElementCodec.INT).size());
+            ByteBuffer rest = ByteBuffer.allocate(10);
+            assertEquals(1, in.read(rest));
+            assertEquals(42, rest.get(0));
+        }
+    }
+
+    @Test public void badData() throws IOException {
+        Files.write(file, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17,
+                                       18, 19, 20 });
+        try {
+            RrbTreeChunks.read(file, RrbTreeChunks.ElementCodec.INT);
+            fail("Should have thrown");
+        } catch (StreamCorruptedException expected) {
+            assertEquals("Not an RrbTreeChunks stream", expected.getMessage());
+        }
+
+        ImRrbt<Integer> list = RrbTree.empty();
+        for (int i = 0; i < 100; i++) {
+            list = list.append(i);
+        }
+        RrbTreeChunks.write(list, file, RrbTreeChunks.ElementCodec.INT);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 10));
+        try {
+            RrbTreeChunks.read(file, RrbTreeChunks.ElementCodec.INT);
+            fail("Should have thrown");
+        } catch (EOFException expected) {
+            // good
+        }
+
+        ImRrbt<Integer> hundred = list;
+        RrbTreeChunks.ElementCodec<Integer> liar = new RrbTreeChunks.ElementCodec<Integer>() {
+            @Override public int encodedSize(Integer item) { return 2; }
+            @Override public void encode(Integer item, ByteBuffer buf) { buf.putInt(item); }
+            @Override public Integer decode(ByteBuffer buf) { return buf.getInt(); }
+        };
+        assertEx(() -> {
+                     RrbTreeChunks.write(hundred, file, liar);
+                     return null;
+                 },
+                 "Codec wrote 4 bytes for 0 but said it would write 2",
+                 IllegalStateException.class);
+    }
+}
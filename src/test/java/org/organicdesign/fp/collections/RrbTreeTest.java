@@ -373,6 +373,375 @@ public class RrbTreeTest {
         test.debugValidate();
     }
 
+    @Test public void iteratorWithFocusInMiddle() {
+        // Random inserts leave the focus somewhere in the middle of the tree where the iterator
+        // has to splice it in without pushing it.
+        for (int size : new int[] { 1, 5, 40, 1000, 5000 }) {
+            List<Integer> control = new ArrayList<>();
+            ImRrbt<Integer> im = RrbTree.empty();
+            MutableRrbt<Integer> mu = RrbTree.emptyMutable();
+            for (int j = 0; j < size; j++) {
+                int idx = rand.nextInt(control.size() + 1);
+                control.add(idx, j);
+                im = im.insert(idx, j);
+                mu.insert(idx, j);
+            }
+            compareIterators(control.iterator(), im.iterator());
+            compareIterators(control.iterator(), mu.iterator());
+            // A fresh focus in the middle of a big strict tree
+            ImRrbt<Integer> mid = im.insert(size / 2, -1);
+            control.add(size / 2, -1);
+            compareIterators(control.iterator(), mid.iterator());
+            // Iterating must not change the original.
+            compareIterators(control.iterator(), mid.iterator());
+        }
+    }
+
+    @Test public void listIteratorWithFocus() {
+        // Random inserts make relaxed nodes and leave the focus in the middle of a leaf.
+        for (int size : new int[] { 1, 2, 33, 150, 400 }) {
+            List<Integer> control = new ArrayList<>();
+            ImRrbt<Integer> im = RrbTree.empty();
+            MutableRrbt<Integer> mu = RrbTree.emptyMutable();
+            for (int j = 0; j < size; j++) {
+                int idx = rand.nextInt(control.size() + 1);
+                control.add(idx, j);
+                im = im.insert(idx, j);
+                mu.insert(idx, j);
+            }
+            TestUtilities.listIteratorTest(control, im);
+            TestUtilities.listIteratorTest(control, mu);
+
+            List<Integer> reversed = new ArrayList<>(control);
+            Collections.reverse(reversed);
+            compareIterators(reversed.iterator(), im.reverseIterator());
+            compareIterators(reversed.iterator(), mu.reverseIterator());
+        }
+
+        // Big enough for a few levels of strict nodes.
+        ImRrbt<Integer> big = RrbTree.empty();
+        List<Integer> control = new ArrayList<>();
+        for (int j = 0; j < 40000; j++) {
+            big = big.append(j);
+            control.add(j);
+        }
+        big = big.insert(12345, -1);
+        control.add(12345, -1);
+        List<Integer> reversed = new ArrayList<>(control);
+        Collections.reverse(reversed);
+        compareIterators(reversed.iterator(), big.reverseIterator());
+    }
+
+    @Test public void slice() {
+        List<Integer> control = new ArrayList<>();
+        ImRrbt<Integer> im = RrbTree.empty();
+        for (int j = 0; j < 3000; j++) {
+            int idx = rand.nextInt(control.size() + 1);
+            control.add(idx, j);
+            im = im.insert(idx, j);
+        }
+        final ImRrbt<Integer> tree = im;
+        for (int k = 0; k < 200; k++) {
+            int from = rand.nextInt(control.size() + 1);
+            int to = from + rand.nextInt(control.size() - from + 1);
+            ImRrbt<Integer> s = im.slice(from, to);
+            s.debugValidate();
+            assertEquals(to - from, s.size());
+            compareIterators(control.subList(from, to).iterator(), s.iterator());
+            assertEquals(control.subList(from, to), im.subList(from, to));
+            // A slice is a real tree, so we can keep building on it.
+            assertEquals(Integer.valueOf(-7), s.append(-7).get(to - from));
+        }
+        assertTrue(im == im.slice(0, im.size()));
+        assertEquals(0, im.slice(7, 7).size());
+
+        TestUtilities.assertEx(() -> tree.slice(5, 4), "slice(5, 4)",
+                               IllegalArgumentException.class);
+        TestUtilities.assertEx(() -> tree.slice(-1, 4), "slice(-1, 4)",
+                               IndexOutOfBoundsException.class);
+        TestUtilities.assertEx(() -> tree.slice(0, tree.size() + 1), "slice(0, size + 1)",
+                               IndexOutOfBoundsException.class);
+    }
+
+    // join() can leave an empty focus at index 0.  append() used to add to that focus, which put
+    // the appended item at the front of the list.
+    @Test public void appendAfterJoin() {
+        ImRrbt<Integer> left = RrbTree.empty();
+        ImRrbt<Integer> right = RrbTree.empty();
+        for (int i = 0; i < 44; i++) {
+            left = left.append(i);
+            right = right.append(i + 44);
+        }
+        ImRrbt<Integer> joined = ((ImRrbt<Integer>) left.join(right)).append(88);
+        MutableRrbt<Integer> mu = ((ImRrbt<Integer>) left.join(right)).mutable();
+        mu.append(88);
+        compareIterators(xform(RangeOfInt.of(89)).toImList().iterator(), joined.iterator());
+        compareIterators(xform(RangeOfInt.of(89)).toImList().iterator(), mu.iterator());
+    }
+
+    @Test public void insertAllAndReplaceRange() {
+        List<Integer> control = new ArrayList<>();
+        ImRrbt<Integer> im = RrbTree.empty();
+        int next = 0;
+        for (int k = 0; k < 300; k++) {
+            List<Integer> batch = new ArrayList<>();
+            int batchSize = rand.nextInt(100);
+            for (int j = 0; j < batchSize; j++) {
+                batch.add(next++);
+            }
+            int from = rand.nextInt(control.size() + 1);
+            if (rand.nextBoolean()) {
+                control.addAll(from, batch);
+                im = im.insertAll(from, batch);
+            } else {
+                int to = from + rand.nextInt(Math.min(60, control.size() - from) + 1);
+                control.subList(from, to).clear();
+                control.addAll(from, batch);
+                im = im.replaceRange(from, to, batch);
+            }
+            im.debugValidate();
+            assertEquals(control.size(), im.size());
+            compareIterators(control.iterator(), im.iterator());
+        }
+        for (int i = 0; i < control.size(); i++) {
+            assertEquals(control.get(i), im.get(i));
+        }
+
+        final ImRrbt<Integer> tree = im;
+        assertTrue(tree == tree.insertAll(3, Collections.emptyList()));
+        TestUtilities.assertEx(() -> tree.insertAll(-1, Arrays.asList(1, 2)), "insertAll(-1...)",
+                               IndexOutOfBoundsException.class);
+        TestUtilities.assertEx(() -> tree.insertAll(0, null), "insertAll(0, null)",
+                               IllegalArgumentException.class);
+        TestUtilities.assertEx(() -> tree.replaceRange(3, 2, Arrays.asList(1, 2)),
+                               "replaceRange(3, 2...)", IllegalArgumentException.class);
+        TestUtilities.assertEx(() -> tree.replaceRange(0, tree.size() + 1, Arrays.asList(1)),
+                               "replaceRange(0, size + 1...)", IndexOutOfBoundsException.class);
+    }
+
+    // Moving the cursor when the gap is full used to copy an item into a slot, then null it.
+    @Test public void cursorMoveWithEmptyGap() {
+        List<Integer> control = new ArrayList<>();
+        ImRrbt<Integer> im = RrbTree.empty();
+        for (int j = 0; j < 100; j++) {
+            control.add(j);
+            im = im.append(j);
+        }
+        RrbTree.Cursor<Integer> c = im.cursor(50);
+        // Fill the gap completely.
+        for (int j = 0; j < RrbTree.branchingFactor(); j++) {
+            control.add(50 + j, -j);
+            c.insert(-j);
+        }
+        int idx = 50 + RrbTree.branchingFactor();
+        assertEquals(idx, c.index());
+        c.moveTo(idx - 3);
+        assertEquals(control.get(idx - 3), c.get());
+        c.moveTo(idx + 2);
+        assertEquals(control.get(idx + 2), c.get());
+        ImRrbt<Integer> committed = c.commit();
+        committed.debugValidate();
+        assertEquals(control, committed);
+    }
+
+    @Test public void cursor() {
+        List<Integer> control = new ArrayList<>();
+        ImRrbt<Integer> im = RrbTree.empty();
+        for (int j = 0; j < 2000; j++) {
+            control.add(j);
+            im = im.append(j);
+        }
+        final ImRrbt<Integer> orig = im;
+        RrbTree.Cursor<Integer> c = im.cursor(1000);
+        int next = 10000;
+        for (int k = 0; k < 5000; k++) {
+            // Mostly small moves with the odd big jump.
+            int pos = (k % 500 == 0) ? rand.nextInt(control.size() + 1)
+                                     : Math.max(0, Math.min(control.size(),
+                                                            c.index() + rand.nextInt(11) - 5));
+            c.moveTo(pos);
+            assertEquals(pos, c.index());
+            int op = rand.nextInt(4);
+            if ( (op == 0) || (pos == control.size()) ) {
+                control.add(pos, next);
+                c.insert(next++);
+                assertEquals(pos + 1, c.index());
+            } else if (op == 1) {
+                control.remove(pos);
+                c.delete();
+            } else if (op == 2) {
+                control.set(pos, next);
+                c.replace(next++);
+            } else {
+                assertEquals(control.get(pos), c.get());
+            }
+            assertEquals(control.size(), c.size());
+            if (k % 1000 == 0) {
+                ImRrbt<Integer> committed = c.commit();
+                committed.debugValidate();
+                compareIterators(control.iterator(), committed.iterator());
+            }
+        }
+        ImRrbt<Integer> result = c.commit();
+        result.debugValidate();
+        compareIterators(control.iterator(), result.iterator());
+        // The original didn't change
+        compareIterators(xform(RangeOfInt.of(2000)).toImList().iterator(), orig.iterator());
+
+        RrbTree.Cursor<Integer> end = orig.cursor(orig.size());
+        TestUtilities.assertEx(end::get, "get() at end", IndexOutOfBoundsException.class);
+        TestUtilities.assertEx(end::delete, "delete() at end", IndexOutOfBoundsException.class);
+        TestUtilities.assertEx(() -> end.moveTo(orig.size() + 1), "moveTo(size + 1)",
+                               IndexOutOfBoundsException.class);
+        TestUtilities.assertEx(() -> orig.cursor(-1), "cursor(-1)", IndexOutOfBoundsException.class);
+
+        RrbTree.Cursor<String> fromEmpty = RrbTree.<String>empty().cursor(0);
+        fromEmpty.insert("b").insert("c").moveTo(0).insert("a");
+        assertEquals(Arrays.asList("a", "b", "c"), fromEmpty.commit());
+    }
+
+    @Test public void getWithLeafCache() throws InterruptedException {
+        List<Integer> control = new ArrayList<>();
+        ImRrbt<Integer> im = RrbTree.empty();
+        for (int j = 0; j < 5000; j++) {
+            int idx = rand.nextInt(control.size() + 1);
+            control.add(idx, j);
+            im = im.insert(idx, j);
+        }
+        // Forwards, backwards, and random, so the cache gets hits and misses.
+        for (int i = 0; i < control.size(); i++) {
+            assertEquals(control.get(i), im.get(i));
+        }
+        for (int i = control.size() - 1; i >= 0; i--) {
+            assertEquals(control.get(i), im.get(i));
+        }
+        for (int k = 0; k < 5000; k++) {
+            int i = rand.nextInt(control.size());
+            assertEquals(control.get(i), im.get(i));
+        }
+        // Clustered: small random steps, with the odd jump.
+        int pos = control.size() / 2;
+        for (int k = 0; k < 5000; k++) {
+            pos = (k % 100 == 0) ? rand.nextInt(control.size())
+                                 : Math.max(0, Math.min(control.size() - 1,
+                                                        pos + rand.nextInt(41) - 20));
+            assertEquals(control.get(pos), im.get(pos));
+        }
+
+        final ImRrbt<Integer> tree = im;
+        TestUtilities.assertEx(() -> tree.get(tree.size()), "get(size)",
+                               IndexOutOfBoundsException.class);
+        TestUtilities.assertEx(() -> tree.get(-1), "get(-1)", IndexOutOfBoundsException.class);
+
+        // Several threads sharing one tree (and its cache).
+        final boolean[] ok = new boolean[] { true, true, true, true };
+        Thread[] threads = new Thread[ok.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int tIdx = t;
+            threads[t] = new Thread(() -> {
+                Random r = new Random(tIdx);
+                for (int k = 0; k < 20000; k++) {
+                    int i = r.nextInt(control.size());
+                    if (!control.get(i).equals(tree.get(i))) {
+                        ok[tIdx] = false;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (boolean b : ok) {
+            assertTrue(b);
+        }
+    }
+
+    @Test public void compactAndStats() {
+        List<Integer> control = new ArrayList<>();
+        ImRrbt<Integer> im = RrbTree.empty();
+        MutableRrbt<Integer> mu = RrbTree.emptyMutable();
+        for (int j = 0; j < 20000; j++) {
+            int idx = rand.nextInt(control.size() + 1);
+            control.add(idx, j);
+            im = im.insert(idx, j);
+            mu.insert(idx, j);
+        }
+        RrbTree.RelaxationStats before = im.relaxationStats();
+        assertTrue(before.relaxedNodes() > 0);
+        assertTrue(before.relaxedRatio() > 0.0);
+        assertTrue(before.averageLeafFill() < 1.0);
+
+        ImRrbt<Integer> compacted = im.compact();
+        compacted.debugValidate();
+        compareIterators(control.iterator(), compacted.iterator());
+        RrbTree.RelaxationStats after = compacted.relaxationStats();
+        assertEquals(0, after.relaxedNodes());
+        assertEquals(0.0, after.relaxedRatio(), 0.0);
+        assertTrue(after.averageLeafFill() > 0.99);
+        assertTrue(after.leaves() < before.leaves());
+        assertTrue(after.height() <= before.height());
+        assertTrue(compacted == compacted.compact());
+        // Still works like any other tree.
+        compacted = compacted.insert(5, -1);
+        control.add(5, -1);
+        compareIterators(control.iterator(), compacted.iterator());
+        control.remove(5);
+
+        assertTrue(mu == mu.compact());
+        mu.debugValidate();
+        assertEquals(0, mu.relaxationStats().relaxedNodes());
+        compareIterators(control.iterator(), mu.iterator());
+
+        RrbTree.RelaxationStats empty = RrbTree.empty().relaxationStats();
+        assertEquals(0, empty.leaves());
+        assertEquals(0.0, empty.averageLeafFill(), 0.0);
+        assertTrue(empty.toString().startsWith("RelaxationStats("));
+    }
+
+    @Test public void takeDropRemoveRange() {
+        List<Integer> control = new ArrayList<>();
+        ImRrbt<Integer> im = RrbTree.empty();
+        for (int j = 0; j < 3000; j++) {
+            int idx = rand.nextInt(control.size() + 1);
+            control.add(idx, j);
+            im = im.insert(idx, j);
+        }
+        for (int k = 0; k < 100; k++) {
+            int n = rand.nextInt(control.size() + 1);
+            ImRrbt<Integer> taken = im.take(n);
+            taken.debugValidate();
+            compareIterators(control.subList(0, n).iterator(), taken.iterator());
+            ImRrbt<Integer> dropped = im.drop(n);
+            dropped.debugValidate();
+            compareIterators(control.subList(n, control.size()).iterator(), dropped.iterator());
+
+            int to = n + rand.nextInt(control.size() - n + 1);
+            List<Integer> removed = new ArrayList<>(control);
+            removed.subList(n, to).clear();
+            ImRrbt<Integer> rr = im.removeRange(n, to);
+            rr.debugValidate();
+            compareIterators(removed.iterator(), rr.iterator());
+        }
+        // A sliding window
+        ImRrbt<Integer> window = im.take(500);
+        for (int k = 0; k < 50; k++) {
+            window = window.drop(100).concat(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10));
+        }
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), window);
+
+        assertTrue(im == im.take(im.size() + 1));
+        assertEquals(0, im.drop(im.size()).size());
+        assertTrue(im == im.removeRange(5, 5));
+        final ImRrbt<Integer> tree = im;
+        TestUtilities.assertEx(() -> tree.take(-1), "take(-1)", IllegalArgumentException.class);
+        TestUtilities.assertEx(() -> tree.drop(-1), "drop(-1)", IllegalArgumentException.class);
+        TestUtilities.assertEx(() -> tree.removeRange(2, 1), "removeRange(2, 1)",
+                               IllegalArgumentException.class);
+        TestUtilities.assertEx(() -> tree.removeRange(0, tree.size() + 1), "removeRange(0, size+1)",
+                               IndexOutOfBoundsException.class);
+    }
+
     @Test public void emptyListIterator() {
         TestUtilities.listIteratorTest(Collections.emptyList(), RrbTree.empty());
     }
@@ -741,17 +1110,32 @@ public class RrbTreeTest {
 
         ImRrbt<Integer> im = RrbTree.empty();
         MutableRrbt<Integer> mu = RrbTree.emptyMutable();
-        for (int j = 1; j < SEVERAL; j++) {
+        // Three full leaves in a Strict root, and a few items in the focus, at any radix.
+        int bf = RrbTree.branchingFactor();
+        int n = (3 * bf) + 3;
+        for (int j = 1; j <= n; j++) {
             im = im.append(j);
             mu.append(j);
         }
-        assertTrue(im.indentedStr(7).startsWith("RrbTree(size=99 fsi=96 focus="));
+        String start = "RrbTree(size=" + n + " fsi=" + (3 * bf) + " focus=";
+        assertTrue(im.indentedStr(7).startsWith(start));
         assertTrue(im.indentedStr(7).contains("               root=Strict"));
 
-        assertTrue(mu.indentedStr(7).startsWith("RrbTree(size=99 fsi=96 focus="));
+        assertTrue(mu.indentedStr(7).startsWith(start));
         assertTrue(mu.indentedStr(7).contains("               root=Strict"));
     }
 
+    @Test public void nodeLengthPow2Property() {
+        assertEquals(5, RrbTree.nodeLengthPow2(null));
+        assertEquals(4, RrbTree.nodeLengthPow2("4"));
+        assertEquals(6, RrbTree.nodeLengthPow2(" 6 "));
+        // Bad values fall back to the default instead of breaking the class initializer.
+        assertEquals(5, RrbTree.nodeLengthPow2("abc"));
+        assertEquals(5, RrbTree.nodeLengthPow2(""));
+        assertEquals(5, RrbTree.nodeLengthPow2("3"));
+        assertEquals(5, RrbTree.nodeLengthPow2("7"));
+    }
+
     @SafeVarargs
     private static <T> RrbTree<T> rrb(T... ts) {
         RrbTree<T> ret = RrbTree.empty();
@@ -0,0 +1,62 @@
+package org.organicdesign.fp.function;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.organicdesign.fp.collections.ImMap;
+import org.organicdesign.fp.collections.PersistentHashMap;
+
+import static org.junit.Assert.*;
+
+public class AtomTest {
+    @Test public void basics() {
+        Atom<String> a = Atom.of("a");
+        assertEquals("a", a.get());
+        assertEquals("Atom(a)", a.toString());
+        assertFalse(a.compareAndSet(new String("a"), "b"));
+        assertTrue(a.compareAndSet(a.get(), "b"));
+        assertEquals("b", a.reset("c"));
+        assertEquals("cd", a.swap(s -> s + "d"));
+        assertEquals("cd", a.apply());
+        assertEquals(1, a.swaps());
+        assertEquals(0, a.retries());
+
+        Atom<String> n = Atom.of(null);
+        assertNull(n.get());
+        assertEquals("x", n.swap(s -> (s == null) ? "x" : s));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void swapException() {
+        Atom<Integer> a = Atom.of(1);
+        try {
+            a.swap(i -> { throw new IllegalStateException("test exception"); });
+        } finally {
+            assertEquals(Integer.valueOf(1), a.get());
+        }
+    }
+
+    @Test public void concurrentSwaps() throws InterruptedException {
+        Atom<ImMap<Integer,Integer>> a = Atom.of(PersistentHashMap.empty());
+        int threads = 16;
+        int each = 2000;
+        List<Thread> ts = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int start = t * each;
+            ts.add(new Thread(() -> {
+                for (int i = start; i < start + each; i++) {
+                    int key = i;
+                    a.swap(m -> m.assoc(key, key)
+                                 .assoc(-1, m.getOrElse(-1, 0) + 1));
+                }
+            }));
+        }
+        for (Thread t : ts) { t.start(); }
+        for (Thread t : ts) { t.join(); }
+        ImMap<Integer,Integer> m = a.get();
+        assertEquals((threads * each) + 1, m.size());
+        assertEquals(Integer.valueOf(threads * each), m.get(-1));
+        assertEquals(threads * each, a.swaps());
+    }
+}
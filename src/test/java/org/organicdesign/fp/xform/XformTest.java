@@ -18,7 +18,10 @@ import junit.framework.TestCase;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import org.organicdesign.fp.collections.Equator;
+import org.organicdesign.fp.function.Fn2;
 import org.organicdesign.fp.oneOf.Option;
+import org.organicdesign.fp.tuple.Tuple2;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -907,4 +910,290 @@ public class XformTest extends TestCase {
                           new Integer[]{4, 5, 6});
     }
     // Above here taken from SequenceTest.
-}
\ No newline at end of file
+
+    @Test public void distinct() {
+        Xform<Integer> xf = Xform.of(Arrays.asList(3, 1, 3, 2, 1, 4, 2, 5));
+        assertEquals(Arrays.asList(3, 1, 2, 4, 5), xf.distinct().toMutableList());
+        // Each fold gets its own set of seen items.
+        assertEquals(Arrays.asList(3, 1, 2, 4, 5), xf.distinct().toMutableList());
+        assertEquals(Arrays.asList(3, 1), xf.distinct().take(2).toMutableList());
+        assertEquals(Arrays.asList(2, 4, 5), xf.distinct().drop(2).toMutableList());
+        assertEquals(Arrays.asList(3, 2), xf.distinctBy(i -> i % 2).toMutableList());
+        assertEquals(Collections.emptyList(), Xform.<Integer>empty().distinct().toMutableList());
+
+        // Equator that considers strings equal ignoring case
+        Equator<String> caseless = new Equator<String>() {
+            @Override public int hash(String s) { return s.toLowerCase().hashCode(); }
+            @Override public boolean eq(String a, String b) { return a.equalsIgnoreCase(b); }
+        };
+        assertEquals(Arrays.asList("a", "B", "c"),
+                     Xform.of(Arrays.asList("a", "A", "B", "b", "c", "a"))
+                          .distinct(caseless).toMutableList());
+        assertEquals(Arrays.asList("ab", "b"),
+                     Xform.of(Arrays.asList("ab", "AC", "b", "Bc"))
+                          .distinctBy(s -> s.substring(0, 1), caseless).toMutableList());
+    }
+
+    @Test public void distinctApprox() {
+        Xform<Integer> xf = Xform.of(Arrays.asList(3, 1, 3, 2, 1, 4, 2, 5));
+        assertEquals(Arrays.asList(3, 1, 2, 4, 5), xf.distinctApprox(100, 0.001).toMutableList());
+
+        // No duplicate ever gets through, and with a reasonably sized filter few unique items are
+        // dropped.
+        List<Integer> ints = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            ints.add(i);
+            ints.add(i / 2);
+        }
+        List<Integer> approx = Xform.of(ints).distinctApprox(10000, 0.01).toMutableList();
+        assertEquals(approx.size(), Xform.of(approx).toImSet().size());
+        assertTrue(approx.size() > 9800);
+        assertTrue(approx.size() <= 10000);
+        assertEquals(Arrays.asList(3, 2),
+                     xf.distinctApproxBy(i -> i % 2, Equator.defaultEquator(), 10, 0.01)
+                       .toMutableList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void distinctApproxBadRate() { Xform.of(Arrays.asList(1, 2)).distinctApprox(10, 1.0); }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void distinctApproxBadSize() { Xform.of(Arrays.asList(1, 2)).distinctApprox(0, 0.1); }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void distinctNullEquator() { Xform.of(Arrays.asList(1, 2)).distinct(null); }
+
+    @Test public void zip() {
+        Xform<Integer> xf = Xform.of(Arrays.asList(1, 2, 3));
+        assertEquals(Arrays.asList(Tuple2.of(1, "a"), Tuple2.of(2, "b")),
+                     xf.zip(Arrays.asList("a", "b")).toMutableList());
+        assertEquals(Arrays.asList(11, 22, 33),
+                     xf.zipWith(Arrays.asList(10, 20, 30, 40), (a, b) -> a + b).toMutableList());
+        assertEquals(Arrays.asList(12, 23),
+                     xf.map(i -> i + 1).zipWith(Arrays.asList(10, 20), (a, b) -> a + b)
+                       .toMutableList());
+        assertEquals(Collections.emptyList(),
+                     xf.zip(Collections.emptyList()).toMutableList());
+        // Still lazy and reusable
+        Xform<Integer> zipped = xf.zipWith(xf, (a, b) -> a * b).filter(i -> i > 1);
+        assertEquals(Arrays.asList(4, 9), zipped.toMutableList());
+        assertEquals(Arrays.asList(4, 9), zipped.toMutableList());
+    }
+
+    @Test public void interleave() {
+        Xform<Integer> xf = Xform.of(Arrays.asList(1, 3, 5));
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6),
+                     xf.interleave(Arrays.asList(2, 4, 6)).toMutableList());
+        assertEquals(Arrays.asList(1, 2, 3, 5),
+                     xf.interleave(Collections.singletonList(2)).toMutableList());
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 8),
+                     xf.interleave(Arrays.asList(2, 4, 6, 8)).toMutableList());
+        assertEquals(Arrays.asList(2, 4),
+                     Xform.<Integer>empty().interleave(Arrays.asList(2, 4)).toMutableList());
+    }
+
+    @Test public void mergeSorted() {
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10),
+                     Xform.mergeSorted(Integer::compare,
+                                       Arrays.asList(1, 4, 7, 10),
+                                       Collections.emptyList(),
+                                       Arrays.asList(2, 5, 8),
+                                       Arrays.asList(3, 6, 9)).toMutableList());
+        assertEquals(Collections.emptyList(),
+                     Xform.mergeSorted(Integer::compare).toMutableList());
+
+        // Stable: equal items come out in source order.
+        List<Tuple2<Integer,String>> merged =
+                Xform.mergeSorted((a, b) -> Integer.compare(a._1(), b._1()),
+                                  Arrays.asList(Tuple2.of(1, "a"), Tuple2.of(2, "a")),
+                                  Arrays.asList(Tuple2.of(1, "b"), Tuple2.of(2, "b")))
+                     .toMutableList();
+        assertEquals(Arrays.asList(Tuple2.of(1, "a"), Tuple2.of(1, "b"),
+                                   Tuple2.of(2, "a"), Tuple2.of(2, "b")),
+                     merged);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeSortedNullSource() {
+        Xform.mergeSorted(Integer::compare, Arrays.asList(1, 2), null);
+    }
+
+    @Test public void sorted() {
+        Xform<Integer> xf = Xform.of(Arrays.asList(5, 3, 9, 1, 7, 3));
+        assertEquals(Arrays.asList(1, 3, 3, 5, 7, 9), xf.sorted(Integer::compare).toMutableList());
+        assertEquals(Arrays.asList(9, 7, 5), xf.sorted((a, b) -> b - a).take(3).toMutableList());
+        assertEquals(Arrays.asList(4, 6, 8),
+                     xf.filter(i -> i > 2).sorted(Integer::compare).drop(1).take(3)
+                       .map(i -> i + 1).toMutableList());
+        assertEquals(Collections.emptyList(),
+                     Xform.<Integer>empty().sorted(Integer::compare).toMutableList());
+
+        // Stable
+        assertEquals(Arrays.asList("a", "c", "bb", "dd"),
+                     Xform.of(Arrays.asList("bb", "a", "dd", "c"))
+                          .sorted((a, b) -> a.length() - b.length()).toMutableList());
+    }
+
+    @Test public void topAndBottomK() {
+        Xform<Integer> xf = Xform.of(Arrays.asList(5, 3, 9, 1, 7, 3));
+        assertEquals(Arrays.asList(9, 7, 5), xf.topK(3, Integer::compare).toMutableList());
+        assertEquals(Arrays.asList(1, 3, 3), xf.bottomK(3, Integer::compare).toMutableList());
+        assertEquals(Arrays.asList(9, 7, 5, 3, 3, 1), xf.topK(99, Integer::compare).toMutableList());
+        assertEquals(Collections.emptyList(), xf.topK(0, Integer::compare).toMutableList());
+        // A huge k must not allocate k slots up front.
+        assertEquals(Arrays.asList(9, 7, 5, 3, 3, 1),
+                     xf.topK(Integer.MAX_VALUE, Integer::compare).toMutableList());
+        assertEquals(Arrays.asList(1, 3, 3, 5, 7, 9),
+                     xf.bottomK(Integer.MAX_VALUE, Integer::compare).toMutableList());
+        assertEquals(Arrays.asList(7),
+                     xf.topK(2, Integer::compare).drop(1).toMutableList());
+
+        List<Integer> ints = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            ints.add((i * 7919) % 10007);
+        }
+        assertEquals(Xform.of(ints).sorted(Integer::compare).take(10).toMutableList(),
+                     Xform.of(ints).bottomK(10, Integer::compare).toMutableList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void topKNegative() { Xform.of(Arrays.asList(1, 2)).topK(-1, Integer::compare); }
+
+    @Test public void compiledPlan() {
+        Xform.Plan<String,Integer> plan = Xform.compile((Xform<String> x) ->
+                                                                x.filter(s -> s.length() > 1)
+                                                                 .map(String::length));
+        assertEquals(Integer.valueOf(5),
+                     plan.fold(Arrays.asList("a", "bb", "ccc"), 0, (sum, len) -> sum + len));
+        assertEquals(Integer.valueOf(4),
+                     plan.fold(Arrays.asList("dddd", "e"), 0, (sum, len) -> sum + len));
+        assertEquals(Integer.valueOf(0), plan.fold(null, 0, (sum, len) -> sum + len));
+        assertEquals(Arrays.asList(2, 3), plan.of(Arrays.asList("a", "bb", "ccc")).toMutableList());
+
+        // Stateful operations get fresh state on each run.
+        Xform.Plan<Integer,Integer> stateful =
+                Xform.compile((Xform<Integer> x) -> x.drop(1).take(2).dropWhile(i -> i < 3)
+                                                     .distinct());
+        List<Integer> src = Arrays.asList(1, 2, 3, 3, 4);
+        assertEquals(Collections.singletonList(3),
+                     stateful.fold(src, new ArrayList<>(), (List<Integer> accum, Integer i) -> {
+                         accum.add(i);
+                         return accum;
+                     }));
+        assertEquals(Collections.singletonList(3),
+                     stateful.fold(src, new ArrayList<>(), (List<Integer> accum, Integer i) -> {
+                         accum.add(i);
+                         return accum;
+                     }));
+
+        // Plans with more than one source still work.
+        Xform.Plan<Integer,Integer> multi =
+                Xform.compile((Xform<Integer> x) -> x.concat(Arrays.asList(9, 8))
+                                                     .sorted(Integer::compare)
+                                                     .take(3));
+        assertEquals(Arrays.asList(1, 2, 3), multi.of(Arrays.asList(3, 2, 1)).toMutableList());
+        assertEquals(Arrays.asList(5, 8, 9), multi.of(Collections.singletonList(5)).toMutableList());
+    }
+
+    @Test public void compiledPlanThreads() throws InterruptedException {
+        Xform.Plan<Integer,Integer> plan =
+                Xform.compile((Xform<Integer> x) -> x.map(i -> i * 2).take(1000));
+        List<Integer> src = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) { src.add(i); }
+        final int expected = plan.fold(src, 0, (a, b) -> a + b);
+        assertEquals(999000, expected);
+        AtomicInteger failures = new AtomicInteger(0);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int j = 0; j < 200; j++) {
+                    if (plan.fold(src, 0, (a, b) -> a + b) != expected) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) { thread.join(); }
+        assertEquals(0, failures.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compileNull() { Xform.compile(null); }
+
+    @Test public void pushToSink() {
+        Xform.Plan<Integer,Integer> plan =
+                Xform.compile((Xform<Integer> x) -> x.filter(i -> i % 2 == 1)
+                                                     .flatMap(i -> Arrays.asList(i, i * 10))
+                                                     .take(5));
+        Xform.Sink<Integer,List<Integer>> sink =
+                plan.push(new ArrayList<>(), (List<Integer> accum, Integer i) -> {
+                    accum.add(i);
+                    return accum;
+                });
+        assertFalse(sink.isDone());
+        int pushed = 0;
+        for (int i = 1; i < 100; i++) {
+            pushed++;
+            if (!sink.accept(i)) { break; }
+        }
+        // Stops as soon as the take(5) is satisfied, not one item later.
+        assertEquals(5, pushed);
+        assertTrue(sink.isDone());
+        assertFalse(sink.accept(99));
+        assertEquals(Arrays.asList(1, 10, 3, 30, 5), sink.result());
+
+        // Each push gets its own state.
+        Xform.Sink<Integer,Integer> sum = plan.push(0, (a, b) -> a + b);
+        sum.accept(1);
+        sum.accept(2);
+        assertFalse(sum.isDone());
+        assertEquals(Integer.valueOf(11), sum.result());
+
+        Xform.Sink<Integer,Integer> none =
+                Xform.compile((Xform<Integer> x) -> x.take(0)).push(0, (a, b) -> a + b);
+        assertTrue(none.isDone());
+
+        Xform.Sink<Integer,Integer> tw =
+                Xform.compile((Xform<Integer> x) -> x.takeWhile(i -> i < 3)).push(0, (a, b) -> a + b);
+        assertTrue(tw.accept(1));
+        assertTrue(tw.accept(2));
+        assertFalse(tw.accept(3));
+        assertEquals(Integer.valueOf(3), tw.result());
+    }
+
+    @Test(timeout = 10000)
+    public void terminateInsideFlatMap() {
+        Fn2<List<Integer>,Integer,List<Integer>> add = (accum, i) -> {
+            accum.add(i);
+            return accum;
+        };
+        Xform.Plan<Integer,Integer> plan =
+                Xform.compile((Xform<Integer> x) -> x.flatMap(i -> Arrays.asList(i, i + 10))
+                                                     .takeWhile(i -> i < 10));
+        List<Integer> src = Arrays.asList(1, 2, 3);
+        // takeWhile() stops at 11, not just the rest of the items that 1 was flat-mapped to.
+        assertEquals(Collections.singletonList(1), plan.fold(src, new ArrayList<>(), add));
+        assertEquals(Collections.singletonList(1), plan.of(src).toMutableList());
+        Xform.Sink<Integer,List<Integer>> sink = plan.push(new ArrayList<>(), add);
+        assertFalse(sink.accept(1));
+        assertEquals(Collections.singletonList(1), sink.result());
+
+        // A take() inside a flatMap stops reading an endless source.
+        Iterable<Integer> endless = () -> new Iterator<Integer>() {
+            int i = 0;
+            @Override public boolean hasNext() { return true; }
+            @Override public Integer next() { return i++; }
+        };
+        assertEquals(Arrays.asList(0, 0, 1),
+                     Xform.of(endless)
+                          .flatMap(i -> Arrays.asList(i, i))
+                          .take(3)
+                          .toMutableList());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void pushMultiSource() {
+        Xform.compile((Xform<Integer> x) -> x.concat(Arrays.asList(1, 2))).push(0, (a, b) -> a + b);
+    }
+}